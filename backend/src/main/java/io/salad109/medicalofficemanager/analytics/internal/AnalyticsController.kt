@@ -0,0 +1,39 @@
+package io.salad109.medicalofficemanager.analytics.internal
+
+import io.salad109.medicalofficemanager.analytics.internal.dto.ScheduleStatsResponse
+import io.salad109.medicalofficemanager.analytics.internal.dto.StatsBackfillResponse
+import org.springframework.format.annotation.DateTimeFormat
+import org.springframework.http.ResponseEntity
+import org.springframework.security.access.prepost.PreAuthorize
+import org.springframework.web.bind.annotation.*
+import java.time.LocalDate
+
+@RestController
+@RequestMapping("/api/analytics")
+class AnalyticsController(
+    private val scheduleStatsService: ScheduleStatsService,
+    private val scheduleStatsBackfill: ScheduleStatsBackfill
+) {
+
+    @GetMapping("/schedule")
+    @PreAuthorize("hasRole('RECEPTIONIST')")
+    fun getScheduleStats(
+        @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) from: LocalDate,
+        @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) to: LocalDate,
+        @RequestParam(defaultValue = "DAY") granularity: StatsGranularity,
+        @RequestParam(required = false) doctorId: Long?
+    ): ResponseEntity<List<ScheduleStatsResponse>> {
+        val stats = scheduleStatsService.getStats(from, to, granularity, doctorId)
+        return ResponseEntity.ok(stats)
+    }
+
+    @PostMapping("/schedule/backfill")
+    @PreAuthorize("hasRole('RECEPTIONIST')")
+    fun backfillScheduleStats(
+        @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) from: LocalDate,
+        @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) to: LocalDate
+    ): ResponseEntity<StatsBackfillResponse> {
+        val result = scheduleStatsBackfill.backfill(from, to)
+        return ResponseEntity.ok(result)
+    }
+}
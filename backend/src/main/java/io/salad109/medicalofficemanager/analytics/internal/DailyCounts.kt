@@ -0,0 +1,11 @@
+package io.salad109.medicalofficemanager.analytics.internal
+
+import java.time.LocalDate
+
+data class DailyCounts(
+    val date: LocalDate,
+    val booked: Int,
+    val cancelled: Int,
+    val noShows: Int,
+    val completed: Int
+)
@@ -0,0 +1,39 @@
+package io.salad109.medicalofficemanager.analytics.internal
+
+import io.salad109.medicalofficemanager.analytics.internal.dto.StatsBackfillResponse
+import org.slf4j.LoggerFactory
+import org.springframework.stereotype.Component
+import org.springframework.transaction.support.TransactionTemplate
+import java.time.Duration
+import java.time.LocalDate
+
+/**
+ * One-off rebuild of the daily rollups for history recorded before they were maintained. Each month
+ * is replaced in its own short transaction, so the job can be rerun over any range at any time.
+ */
+@Component
+class ScheduleStatsBackfill(
+    private val scheduleStatsRepository: ScheduleStatsRepository,
+    private val transactionTemplate: TransactionTemplate
+) {
+    private val log = LoggerFactory.getLogger(ScheduleStatsBackfill::class.java)
+
+    fun backfill(from: LocalDate, to: LocalDate): StatsBackfillResponse {
+        if (to.isBefore(from)) {
+            throw IllegalArgumentException("Backfill range end must not be before its start")
+        }
+        val startedAt = System.nanoTime()
+        var rows = 0
+
+        var chunkStart = from
+        while (!chunkStart.isAfter(to)) {
+            val chunkEnd = minOf(chunkStart.withDayOfMonth(chunkStart.lengthOfMonth()), to)
+            rows += transactionTemplate.execute { scheduleStatsRepository.rebuild(chunkStart, chunkEnd) }!!
+            chunkStart = chunkEnd.plusDays(1)
+        }
+
+        val durationMs = Duration.ofNanos(System.nanoTime() - startedAt).toMillis()
+        log.info("Schedule statistics rebuilt from {} to {}: {} rows in {} ms", from, to, rows, durationMs)
+        return StatsBackfillResponse(rows, durationMs)
+    }
+}
@@ -0,0 +1,89 @@
+package io.salad109.medicalofficemanager.analytics.internal
+
+import org.springframework.jdbc.core.JdbcTemplate
+import org.springframework.jdbc.core.RowMapper
+import org.springframework.stereotype.Repository
+import java.time.LocalDate
+
+/**
+ * Per-day, per-doctor appointment counters. Live changes are applied as single-row upserts;
+ * [rebuild] recomputes a date range from the appointment tables and the delete audit.
+ */
+@Repository
+class ScheduleStatsRepository(
+    private val jdbcTemplate: JdbcTemplate
+) {
+
+    fun add(date: LocalDate, doctorId: Long, booked: Int, cancelled: Int, noShows: Int, completed: Int) {
+        jdbcTemplate.update(
+            """
+            INSERT INTO schedule_daily_stats (stat_date, doctor_id, booked, cancelled, no_shows, completed)
+            VALUES (?, ?, ?, ?, ?, ?)
+            ON DUPLICATE KEY UPDATE booked    = booked + VALUES(booked),
+                                    cancelled = cancelled + VALUES(cancelled),
+                                    no_shows  = no_shows + VALUES(no_shows),
+                                    completed = completed + VALUES(completed)
+            """.trimIndent(),
+            date, doctorId, booked, cancelled, noShows, completed
+        )
+    }
+
+    /**
+     * Counters summed per date, for one doctor or the whole office when [doctorId] is null.
+     */
+    fun findBetween(from: LocalDate, to: LocalDate, doctorId: Long?): List<DailyCounts> {
+        return jdbcTemplate.query(
+            """
+            SELECT stat_date, SUM(booked) AS booked, SUM(cancelled) AS cancelled,
+                   SUM(no_shows) AS no_shows, SUM(completed) AS completed
+            FROM schedule_daily_stats
+            WHERE stat_date BETWEEN ? AND ?
+              AND (? IS NULL OR doctor_id = ?)
+            GROUP BY stat_date
+            ORDER BY stat_date
+            """.trimIndent(),
+            RowMapper { rs, _ ->
+                DailyCounts(
+                    date = rs.getDate("stat_date").toLocalDate(),
+                    booked = rs.getInt("booked"),
+                    cancelled = rs.getInt("cancelled"),
+                    noShows = rs.getInt("no_shows"),
+                    completed = rs.getInt("completed")
+                )
+            },
+            from, to, doctorId, doctorId
+        )
+    }
+
+    /**
+     * Replaces the counters between [from] and [to] with figures recomputed from live and archived
+     * appointments. Cancelled appointments only survive in the delete audit; those deleted before the
+     * audit recorded the doctor are counted under doctor 0, so they only show up in office-wide figures.
+     */
+    fun rebuild(from: LocalDate, to: LocalDate): Int {
+        jdbcTemplate.update("DELETE FROM schedule_daily_stats WHERE stat_date BETWEEN ? AND ?", from, to)
+        return jdbcTemplate.update(
+            """
+            INSERT INTO schedule_daily_stats (stat_date, doctor_id, booked, cancelled, no_shows, completed)
+            SELECT stat_date, doctor_id, SUM(booked), SUM(cancelled), SUM(no_shows), SUM(completed)
+            FROM (SELECT appointment_date AS stat_date, doctor_id, 1 AS booked, 0 AS cancelled,
+                         status = 'NO_SHOW' AS no_shows, status = 'COMPLETED' AS completed
+                  FROM appointments
+                  WHERE appointment_date BETWEEN ? AND ?
+                  UNION ALL
+                  SELECT appointment_date, doctor_id, 1, 0, status = 'NO_SHOW', status = 'COMPLETED'
+                  FROM appointments_archive
+                  WHERE appointment_date BETWEEN ? AND ?
+                  UNION ALL
+                  SELECT CAST(old_values ->> '$.appointment_date' AS DATE),
+                         COALESCE(CAST(old_values ->> '$.doctor_id' AS UNSIGNED), 0), 0, 1, 0, 0
+                  FROM audit_log
+                  WHERE entity_type = 'APPOINTMENT'
+                    AND action = 'DELETE'
+                    AND CAST(old_values ->> '$.appointment_date' AS DATE) BETWEEN ? AND ?) counts
+            GROUP BY stat_date, doctor_id
+            """.trimIndent(),
+            from, to, from, to, from, to
+        )
+    }
+}
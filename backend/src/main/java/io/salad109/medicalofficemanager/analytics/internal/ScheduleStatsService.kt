@@ -0,0 +1,71 @@
+package io.salad109.medicalofficemanager.analytics.internal
+
+import io.salad109.medicalofficemanager.analytics.internal.dto.ScheduleStatsResponse
+import io.salad109.medicalofficemanager.appointments.ScheduleCapacity
+import org.slf4j.LoggerFactory
+import org.springframework.stereotype.Service
+import java.time.DayOfWeek
+import java.time.LocalDate
+import java.time.temporal.ChronoUnit
+import java.time.temporal.TemporalAdjusters
+
+/**
+ * Utilization, no-show and cancellation rates read from the daily rollups only. Capacity comes from
+ * the current weekday templates, so past periods are measured against today's schedule.
+ */
+@Service
+class ScheduleStatsService(
+    private val scheduleStatsRepository: ScheduleStatsRepository,
+    private val scheduleCapacity: ScheduleCapacity
+) {
+    private val log = LoggerFactory.getLogger(ScheduleStatsService::class.java)
+
+    companion object {
+        private const val MAX_RANGE_DAYS = 366L
+    }
+
+    fun getStats(
+        from: LocalDate,
+        to: LocalDate,
+        granularity: StatsGranularity,
+        doctorId: Long? = null
+    ): List<ScheduleStatsResponse> {
+        if (to.isBefore(from)) {
+            throw IllegalArgumentException("Statistics range end must not be before its start")
+        }
+        if (ChronoUnit.DAYS.between(from, to) >= MAX_RANGE_DAYS) {
+            throw IllegalArgumentException("Statistics range cannot exceed $MAX_RANGE_DAYS days")
+        }
+
+        val countsByDate = scheduleStatsRepository.findBetween(from, to, doctorId).associateBy { it.date }
+        val periods = from.datesUntil(to.plusDays(1)).toList().groupBy { periodStartOf(it, granularity) }
+
+        return periods.values.map { dates ->
+            val counts = dates.mapNotNull { countsByDate[it] }
+            val capacity = dates.sumOf { scheduleCapacity.slotCount(it, doctorId) }
+            val booked = counts.sumOf { it.booked }
+            val cancelled = counts.sumOf { it.cancelled }
+            val noShows = counts.sumOf { it.noShows }
+            ScheduleStatsResponse(
+                dates.first(),
+                dates.last(),
+                capacity,
+                booked,
+                cancelled,
+                noShows,
+                counts.sumOf { it.completed },
+                ratio(booked, capacity),
+                ratio(noShows, booked),
+                ratio(cancelled, booked + cancelled)
+            )
+        }.also { log.debug("Computed {} {} statistics periods from {} to {}", it.size, granularity, from, to) }
+    }
+
+    private fun periodStartOf(date: LocalDate, granularity: StatsGranularity): LocalDate = when (granularity) {
+        StatsGranularity.DAY -> date
+        StatsGranularity.WEEK -> date.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY))
+        StatsGranularity.MONTH -> date.withDayOfMonth(1)
+    }
+
+    private fun ratio(part: Int, whole: Int): Double = if (whole > 0) part.toDouble() / whole else 0.0
+}
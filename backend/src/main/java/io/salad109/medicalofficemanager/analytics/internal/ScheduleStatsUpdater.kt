@@ -0,0 +1,56 @@
+package io.salad109.medicalofficemanager.analytics.internal
+
+import io.salad109.medicalofficemanager.appointments.AppointmentActivity
+import io.salad109.medicalofficemanager.appointments.AppointmentActivityEvent
+import org.slf4j.LoggerFactory
+import org.springframework.stereotype.Component
+import org.springframework.transaction.annotation.Propagation
+import org.springframework.transaction.annotation.Transactional
+import org.springframework.transaction.event.TransactionPhase
+import org.springframework.transaction.event.TransactionalEventListener
+
+/**
+ * Applies each committed appointment change to its day's counters in a transaction of its own, so
+ * bookings never wait on the busy counter row. An update lost to a crash or a failed upsert leaves the
+ * rollups behind until [ScheduleStatsBackfill] rebuilds the affected range.
+ */
+@Component
+class ScheduleStatsUpdater(
+    private val scheduleStatsRepository: ScheduleStatsRepository
+) {
+    private val log = LoggerFactory.getLogger(ScheduleStatsUpdater::class.java)
+
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    fun onAppointmentActivity(event: AppointmentActivityEvent) {
+        var booked = 0
+        var cancelled = 0
+        var noShows = 0
+        var completed = 0
+
+        // Booked counts every appointment still on the day, whatever its outcome
+        when (event.activity) {
+            AppointmentActivity.BOOKED -> booked++
+            AppointmentActivity.CANCELLED -> {
+                booked--
+                cancelled++
+            }
+
+            AppointmentActivity.MOVED_AWAY -> booked--
+            AppointmentActivity.NO_SHOW -> noShows++
+            AppointmentActivity.COMPLETED -> completed++
+        }
+        when (event.previousOutcome) {
+            AppointmentActivity.NO_SHOW -> noShows--
+            AppointmentActivity.COMPLETED -> completed--
+            else -> {}
+        }
+
+        // The appointment is already committed, so a failure here must not reach its caller
+        try {
+            scheduleStatsRepository.add(event.date, event.doctorId, booked, cancelled, noShows, completed)
+        } catch (ex: Exception) {
+            log.warn("Rollup of {} for doctor {} on {} lost, rerun the backfill", event.activity, event.doctorId, event.date, ex)
+        }
+    }
+}
@@ -0,0 +1,7 @@
+package io.salad109.medicalofficemanager.analytics.internal;
+
+public enum StatsGranularity {
+    DAY,
+    WEEK,
+    MONTH
+}
@@ -0,0 +1,17 @@
+package io.salad109.medicalofficemanager.analytics.internal.dto;
+
+import java.time.LocalDate;
+
+public record ScheduleStatsResponse(
+        LocalDate periodStart,
+        LocalDate periodEnd,
+        int capacity,
+        int booked,
+        int cancelled,
+        int noShows,
+        int completed,
+        double utilization,
+        double noShowRate,
+        double cancellationRate
+) {
+}
@@ -0,0 +1,7 @@
+package io.salad109.medicalofficemanager.analytics.internal.dto;
+
+public record StatsBackfillResponse(
+        int rows,
+        long durationMs
+) {
+}
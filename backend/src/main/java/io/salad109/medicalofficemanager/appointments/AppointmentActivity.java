@@ -0,0 +1,9 @@
+package io.salad109.medicalofficemanager.appointments;
+
+public enum AppointmentActivity {
+    BOOKED,
+    CANCELLED,
+    MOVED_AWAY,
+    NO_SHOW,
+    COMPLETED
+}
@@ -0,0 +1,16 @@
+package io.salad109.medicalofficemanager.appointments
+
+import java.time.LocalDate
+
+/**
+ * Published inside the transaction of every appointment write that changes a day's figures; listeners
+ * act on it once that transaction commits. [previousOutcome] names the NO_SHOW or COMPLETED outcome the
+ * change undoes, if any.
+ */
+data class AppointmentActivityEvent(
+    val activity: AppointmentActivity,
+    val appointmentId: Long,
+    val doctorId: Long,
+    val date: LocalDate,
+    val previousOutcome: AppointmentActivity? = null
+)
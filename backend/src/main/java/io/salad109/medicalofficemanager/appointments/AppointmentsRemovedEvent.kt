@@ -0,0 +1,10 @@
+package io.salad109.medicalofficemanager.appointments
+
+/**
+ * Published synchronously inside the transaction that removes appointments from the live table, whether
+ * cancelled or archived. Nothing references appointments through a foreign key any more, so rows keyed
+ * by them are removed here.
+ */
+data class AppointmentsRemovedEvent(
+    val appointmentIds: List<Long>
+)
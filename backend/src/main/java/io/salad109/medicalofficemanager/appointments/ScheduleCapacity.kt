@@ -0,0 +1,10 @@
+package io.salad109.medicalofficemanager.appointments
+
+import java.time.LocalDate
+
+/**
+ * Bookable slots on a date under the current weekday templates.
+ */
+interface ScheduleCapacity {
+    fun slotCount(date: LocalDate, doctorId: Long? = null): Int
+}
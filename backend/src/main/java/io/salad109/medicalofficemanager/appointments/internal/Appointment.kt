@@ -9,13 +9,25 @@ import java.time.LocalTime
 @Table(name = "appointments")
 class Appointment(
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.TABLE, generator = "appointment_id_generator")
+    @TableGenerator(
+        name = "appointment_id_generator",
+        table = "id_generators",
+        pkColumnName = "generator_name",
+        valueColumnName = "next_val",
+        pkColumnValue = "appointments",
+        allocationSize = 50
+    )
     var id: Long? = null,
 
     @field:NotNull
     @Column(name = "patient_id")
     var patientId: Long,
 
+    @field:NotNull
+    @Column(name = "doctor_id")
+    var doctorId: Long,
+
     @field:NotNull
     @Column(name = "appointment_date")
     var appointmentDate: LocalDate,
@@ -26,5 +38,8 @@ class Appointment(
 
     @field:NotNull
     @Enumerated(EnumType.STRING)
-    var status: AppointmentStatus
+    var status: AppointmentStatus,
+
+    @Version
+    var version: Long? = null
 )
\ No newline at end of file
@@ -0,0 +1,108 @@
+package io.salad109.medicalofficemanager.appointments.internal
+
+import io.salad109.medicalofficemanager.appointments.AppointmentsRemovedEvent
+import io.salad109.medicalofficemanager.visits.VisitArchive
+import org.slf4j.LoggerFactory
+import org.springframework.boot.context.event.ApplicationReadyEvent
+import org.springframework.context.ApplicationEventPublisher
+import org.springframework.context.event.EventListener
+import org.springframework.data.domain.PageRequest
+import org.springframework.jdbc.core.JdbcTemplate
+import org.springframework.scheduling.annotation.Scheduled
+import org.springframework.stereotype.Component
+import org.springframework.transaction.support.TransactionTemplate
+import java.time.LocalDate
+
+/**
+ * Moves appointments of closed years, with their visits, from the partitioned live tables into the
+ * archive tables one short transaction per chunk, and keeps a partition ready for next year.
+ */
+@Component
+class AppointmentArchiver(
+    private val appointmentRepository: AppointmentRepository,
+    private val archivedAppointmentRepository: ArchivedAppointmentRepository,
+    private val visitArchive: VisitArchive,
+    private val jdbcTemplate: JdbcTemplate,
+    private val transactionTemplate: TransactionTemplate,
+    private val archiveProperties: ArchiveProperties,
+    private val applicationEventPublisher: ApplicationEventPublisher
+) {
+    private val log = LoggerFactory.getLogger(AppointmentArchiver::class.java)
+
+    companion object {
+        private const val FUTURE_PARTITION = "p_future"
+    }
+
+    // V12 creates a fixed set of yearly partitions, so a schema migrated years later starts out stale
+    @EventListener(ApplicationReadyEvent::class)
+    fun ensureCurrentPartitions() {
+        ensurePartitionsThrough(LocalDate.now().year + 1)
+    }
+
+    @Scheduled(cron = "\${appointments.archive.cron:0 30 2 * * *}")
+    fun scheduledArchive() {
+        ensurePartitionsThrough(LocalDate.now().year + 1)
+        if (archiveProperties.enabled) {
+            archiveClosedYears()
+        }
+    }
+
+    /**
+     * Archives everything before January 1st of the oldest retained year and returns the number of
+     * appointments moved.
+     */
+    fun archiveClosedYears(): Int {
+        val cutoff = LocalDate.now().withDayOfYear(1).minusYears(archiveProperties.retainYears)
+        var archived = 0
+        do {
+            val moved = transactionTemplate.execute { archiveChunk(cutoff) }!!
+            archived += moved
+        } while (moved == archiveProperties.chunkSize)
+
+        log.info("Archived {} appointments dated before {}", archived, cutoff)
+        return archived
+    }
+
+    /**
+     * Splits yearly partitions off `p_future` up to and including [year], so bookings never pile up
+     * in the catch-all partition.
+     */
+    fun ensurePartitionsThrough(year: Int) {
+        val existing = jdbcTemplate.queryForList(
+            "SELECT PARTITION_NAME FROM information_schema.PARTITIONS " +
+                    "WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = 'appointments'",
+            String::class.java
+        ).toHashSet()
+        val lastYear = existing.mapNotNull { it.removePrefix("p").toIntOrNull() }.maxOrNull() ?: return
+
+        for (next in lastYear + 1..year) {
+            jdbcTemplate.execute(
+                "ALTER TABLE appointments REORGANIZE PARTITION $FUTURE_PARTITION INTO (" +
+                        "PARTITION p$next VALUES LESS THAN ('${next + 1}-01-01'), " +
+                        "PARTITION $FUTURE_PARTITION VALUES LESS THAN (MAXVALUE))"
+            )
+            log.info("Added appointments partition p{}", next)
+        }
+    }
+
+    private fun archiveChunk(cutoff: LocalDate): Int {
+        val ids = appointmentRepository.findIdsBefore(cutoff, PageRequest.ofSize(archiveProperties.chunkSize))
+        if (ids.isEmpty()) {
+            return 0
+        }
+
+        // Suppresses the audit trigger's DELETE entries for rows that are only being moved
+        jdbcTemplate.update("SET @archiving = 1")
+        try {
+            val visits = visitArchive.archiveForAppointments(ids)
+            val copied = archivedAppointmentRepository.copyFromLive(ids, cutoff)
+            val deleted = appointmentRepository.deleteArchived(ids, cutoff)
+            check(copied == deleted) { "Archived $copied appointments but removed $deleted" }
+            applicationEventPublisher.publishEvent(AppointmentsRemovedEvent(ids))
+            log.debug("Archived chunk of {} appointments and {} visits", copied, visits)
+            return copied
+        } finally {
+            jdbcTemplate.update("SET @archiving = NULL")
+        }
+    }
+}
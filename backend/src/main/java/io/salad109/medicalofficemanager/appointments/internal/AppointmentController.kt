@@ -1,54 +1,151 @@
 package io.salad109.medicalofficemanager.appointments.internal
 
+import io.salad109.medicalofficemanager.appointments.internal.dto.AppointmentPageResponse
 import io.salad109.medicalofficemanager.appointments.internal.dto.AppointmentResponse
+import io.salad109.medicalofficemanager.appointments.internal.dto.AppointmentSeriesResponse
 import io.salad109.medicalofficemanager.appointments.internal.dto.AppointmentWithDetailsResponse
+import io.salad109.medicalofficemanager.appointments.internal.dto.AvailableSlotResponse
 import io.salad109.medicalofficemanager.appointments.internal.dto.BookAppointmentRequest
+import io.salad109.medicalofficemanager.appointments.internal.dto.BookAppointmentSeriesRequest
+import io.salad109.medicalofficemanager.appointments.internal.dto.CalendarDayResponse
+import io.salad109.medicalofficemanager.appointments.internal.dto.NoShowSweepResponse
+import io.salad109.medicalofficemanager.appointments.internal.dto.RescheduleAppointmentRequest
+import io.salad109.medicalofficemanager.idempotency.IdempotentRequests
 import io.salad109.medicalofficemanager.users.CustomUserDetails
 import jakarta.validation.Valid
 import org.springframework.format.annotation.DateTimeFormat
+import org.springframework.http.CacheControl
 import org.springframework.http.HttpStatus
+import org.springframework.http.MediaType
 import org.springframework.http.ResponseEntity
 import org.springframework.security.access.prepost.PreAuthorize
 import org.springframework.security.core.annotation.AuthenticationPrincipal
 import org.springframework.web.bind.annotation.*
+import org.springframework.web.context.request.WebRequest
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter
+import java.time.DayOfWeek
 import java.time.LocalDate
+import java.time.LocalTime
 
 @RestController
 @RequestMapping("/api/appointments")
 class AppointmentController(
-    private val appointmentService: AppointmentService
+    private val appointmentService: AppointmentService,
+    private val scheduleEventBroadcaster: ScheduleEventBroadcaster,
+    private val scheduleVersions: ScheduleVersions,
+    private val noShowSweeper: NoShowSweeper,
+    private val slotSearchService: SlotSearchService,
+    private val idempotentRequests: IdempotentRequests
 ) {
 
     @GetMapping("/available")
     @PreAuthorize("hasRole('RECEPTIONIST') or hasRole('PATIENT')")
     fun getAvailableSlots(
-        @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) date: LocalDate
-    ): ResponseEntity<List<String>> {
-        val availableSlots = appointmentService.getAvailableSlots(date)
-        return ResponseEntity.ok(availableSlots)
+        @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) date: LocalDate,
+        @RequestParam(required = false) doctorId: Long?,
+        webRequest: WebRequest
+    ): ResponseEntity<List<String>>? {
+        return conditionalOnSchedule(date, webRequest, CacheControl.noCache()) {
+            appointmentService.getAvailableSlots(date, doctorId)
+        }
+    }
+
+    @GetMapping("/available/earliest")
+    @PreAuthorize("hasRole('RECEPTIONIST') or hasRole('PATIENT')")
+    fun findEarliestSlots(
+        @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) from: LocalDate?,
+        @RequestParam(required = false) weekdays: Set<DayOfWeek>?,
+        @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.TIME) after: LocalTime?,
+        @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.TIME) before: LocalTime?,
+        @RequestParam(required = false) doctorId: Long?,
+        @RequestParam(defaultValue = "5") limit: Int
+    ): ResponseEntity<List<AvailableSlotResponse>> {
+        val slots = slotSearchService.findEarliestSlots(from, weekdays, after, before, doctorId, limit)
+        return ResponseEntity.ok(slots)
     }
 
     @GetMapping("/existing")
     @PreAuthorize("hasRole('RECEPTIONIST') or hasRole('DOCTOR')")
     fun getAppointmentsByDate(
+        @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) date: LocalDate,
+        @RequestParam(required = false) doctorId: Long?,
+        webRequest: WebRequest
+    ): ResponseEntity<List<AppointmentWithDetailsResponse>>? {
+        return conditionalOnSchedule(date, webRequest, CacheControl.noCache().cachePrivate()) {
+            appointmentService.getAppointmentsWithDetailsByDate(date, doctorId)
+        }
+    }
+
+    @GetMapping("/stream", produces = [MediaType.TEXT_EVENT_STREAM_VALUE])
+    @PreAuthorize("hasRole('RECEPTIONIST') or hasRole('DOCTOR')")
+    fun streamScheduleChanges(
         @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) date: LocalDate
-    ): ResponseEntity<List<AppointmentWithDetailsResponse>> {
-        val appointments = appointmentService.getAppointmentsWithDetailsByDate(date)
-        return ResponseEntity.ok(appointments)
+    ): ResponseEntity<SseEmitter> {
+        return ResponseEntity.ok()
+            .header("X-Accel-Buffering", "no")
+            .body(scheduleEventBroadcaster.subscribe(date))
+    }
+
+    @GetMapping("/calendar")
+    @PreAuthorize("hasRole('RECEPTIONIST') or hasRole('DOCTOR') or hasRole('PATIENT')")
+    fun getCalendar(
+        @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) from: LocalDate,
+        @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) to: LocalDate,
+        @RequestParam(required = false) doctorId: Long?,
+        @AuthenticationPrincipal principal: CustomUserDetails
+    ): ResponseEntity<List<CalendarDayResponse>> {
+        val calendar = appointmentService.getCalendar(
+            from = from,
+            to = to,
+            currentUserId = principal.userId,
+            currentUserRole = principal.role,
+            doctorId = doctorId
+        )
+        return ResponseEntity.ok(calendar)
     }
 
     @GetMapping("/patient/{id}")
     @PreAuthorize("hasRole('RECEPTIONIST') or (#id == authentication.principal.userId)")
-    fun getAppointmentsByPatient(@PathVariable id: Long): ResponseEntity<List<AppointmentWithDetailsResponse>> {
-        val appointments = appointmentService.getAppointmentsByPatientId(id)
+    fun getAppointmentsByPatient(
+        @PathVariable id: Long,
+        @RequestParam(defaultValue = "false") fullHistory: Boolean
+    ): ResponseEntity<List<AppointmentWithDetailsResponse>> {
+        val appointments = appointmentService.getAppointmentsByPatientId(id, fullHistory)
         return ResponseEntity.ok(appointments)
     }
 
+    @GetMapping("/patient/{id}/page")
+    @PreAuthorize("hasRole('RECEPTIONIST') or (#id == authentication.principal.userId)")
+    fun getAppointmentsPageByPatient(
+        @PathVariable id: Long,
+        @RequestParam(required = false) cursor: String?,
+        @RequestParam(defaultValue = "20") size: Int,
+        @RequestParam(defaultValue = "false") fullHistory: Boolean
+    ): ResponseEntity<AppointmentPageResponse> {
+        val page = appointmentService.getAppointmentsPageByPatientId(id, cursor, size, fullHistory)
+        return ResponseEntity.ok(page)
+    }
+
     @PostMapping
     @PreAuthorize("hasRole('RECEPTIONIST') or (hasRole('PATIENT') and #request.patientId == authentication.principal.userId)")
-    fun bookAppointment(@Valid @RequestBody request: BookAppointmentRequest): ResponseEntity<AppointmentResponse> {
-        val response = appointmentService.bookAppointment(request = request)
-        return ResponseEntity.status(HttpStatus.CREATED).body(response)
+    fun bookAppointment(
+        @Valid @RequestBody request: BookAppointmentRequest,
+        @RequestHeader("Idempotency-Key", required = false) idempotencyKey: String?
+    ): ResponseEntity<AppointmentResponse> {
+        return idempotentRequests.execute(idempotencyKey, "appointments.book", request, AppointmentResponse::class.java) {
+            val response = appointmentService.bookAppointment(request = request)
+            ResponseEntity.status(HttpStatus.CREATED).body(response)
+        }
+    }
+
+    @PostMapping("/series")
+    @PreAuthorize("hasRole('RECEPTIONIST') or (hasRole('PATIENT') and #request.patientId == authentication.principal.userId)")
+    fun bookAppointmentSeries(
+        @Valid @RequestBody request: BookAppointmentSeriesRequest
+    ): ResponseEntity<AppointmentSeriesResponse> {
+        val response = appointmentService.bookAppointmentSeries(request = request)
+        val status = if (response.booked > 0) HttpStatus.CREATED else HttpStatus.OK
+        return ResponseEntity.status(status).body(response)
     }
 
     @PostMapping("/{id}/mark-no-show")
@@ -58,6 +155,29 @@ class AppointmentController(
         return ResponseEntity.ok(appointment)
     }
 
+    @PostMapping("/{id}/reschedule")
+    @PreAuthorize("hasRole('RECEPTIONIST') or hasRole('PATIENT')")
+    fun rescheduleAppointment(
+        @PathVariable id: Long,
+        @Valid @RequestBody request: RescheduleAppointmentRequest,
+        @AuthenticationPrincipal principal: CustomUserDetails
+    ): ResponseEntity<AppointmentResponse> {
+        val appointment = appointmentService.rescheduleAppointment(
+            appointmentId = id,
+            request = request,
+            currentUserId = principal.userId,
+            currentUserRole = principal.role
+        )
+        return ResponseEntity.ok(appointment)
+    }
+
+    @PostMapping("/mark-no-shows")
+    @PreAuthorize("hasRole('RECEPTIONIST')")
+    fun markPastAppointmentsAsNoShow(): ResponseEntity<NoShowSweepResponse> {
+        val result = noShowSweeper.sweep()
+        return ResponseEntity.ok(result)
+    }
+
     @DeleteMapping("/{id}")
     fun cancelAppointment(
         @PathVariable id: Long,
@@ -70,4 +190,24 @@ class AppointmentController(
         )
         return ResponseEntity.noContent().build()
     }
+
+    /**
+     * Answers 304 from the date's version alone; the body is only computed when the client's ETag is stale.
+     * The version is read before the body so a concurrent write can only make the tag older, never newer.
+     */
+    private fun <T> conditionalOnSchedule(
+        date: LocalDate,
+        webRequest: WebRequest,
+        cacheControl: CacheControl,
+        body: () -> T
+    ): ResponseEntity<T>? {
+        val etag = scheduleVersions.etag(date)
+        if (webRequest.checkNotModified(etag)) {
+            return null
+        }
+        return ResponseEntity.ok()
+            .eTag(etag)
+            .cacheControl(cacheControl)
+            .body(body())
+    }
 }
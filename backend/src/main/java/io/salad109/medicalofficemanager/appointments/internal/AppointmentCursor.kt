@@ -0,0 +1,39 @@
+package io.salad109.medicalofficemanager.appointments.internal
+
+import io.salad109.medicalofficemanager.appointments.internal.dto.AppointmentWithDetailsResponse
+import java.time.LocalDate
+import java.time.LocalTime
+import java.time.format.DateTimeParseException
+import java.util.*
+
+/**
+ * Keyset position in a patient's appointment history, ordered by date, time and id descending.
+ */
+data class AppointmentCursor(
+    val date: LocalDate,
+    val time: LocalTime,
+    val id: Long
+) {
+    fun encode(): String {
+        return Base64.getUrlEncoder().withoutPadding()
+            .encodeToString("$date|$time|$id".toByteArray(Charsets.UTF_8))
+    }
+
+    companion object {
+        fun of(appointment: AppointmentWithDetailsResponse): AppointmentCursor {
+            return AppointmentCursor(appointment.date, appointment.time, appointment.id)
+        }
+
+        fun decode(token: String): AppointmentCursor {
+            try {
+                val parts = String(Base64.getUrlDecoder().decode(token), Charsets.UTF_8).split("|")
+                require(parts.size == 3)
+                return AppointmentCursor(LocalDate.parse(parts[0]), LocalTime.parse(parts[1]), parts[2].toLong())
+            } catch (ex: IllegalArgumentException) {
+                throw IllegalArgumentException("Invalid pagination cursor")
+            } catch (ex: DateTimeParseException) {
+                throw IllegalArgumentException("Invalid pagination cursor")
+            }
+        }
+    }
+}
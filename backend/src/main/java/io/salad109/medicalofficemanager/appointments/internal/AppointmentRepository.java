@@ -1,20 +1,38 @@
 package io.salad109.medicalofficemanager.appointments.internal;
 
+import io.salad109.medicalofficemanager.appointments.internal.dto.AppointmentSlot;
 import io.salad109.medicalofficemanager.appointments.internal.dto.AppointmentWithDetailsResponse;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDate;
+import java.time.LocalTime;
 import java.util.List;
 
 @Repository
 public interface AppointmentRepository extends JpaRepository<Appointment, Long> {
-    List<Appointment> findByAppointmentDate(LocalDate appointmentDate);
+    @Query("SELECT a.appointmentTime FROM Appointment a WHERE a.doctorId = :doctorId AND a.appointmentDate = :date")
+    List<LocalTime> findBookedTimesByDoctorAndDate(@Param("doctorId") Long doctorId, @Param("date") LocalDate date);
+
+    @Query("SELECT a.appointmentDate FROM Appointment a " +
+            "WHERE a.doctorId = :doctorId AND a.appointmentTime = :time AND a.appointmentDate BETWEEN :from AND :to")
+    List<LocalDate> findBookedDatesAtTime(@Param("doctorId") Long doctorId,
+                                          @Param("time") LocalTime time,
+                                          @Param("from") LocalDate from,
+                                          @Param("to") LocalDate to);
+
+    @Query("SELECT new io.salad109.medicalofficemanager.appointments.internal.dto.AppointmentSlot(" +
+            "a.id, a.doctorId, a.appointmentDate, a.appointmentTime) " +
+            "FROM Appointment a " +
+            "WHERE a.appointmentDate BETWEEN :from AND :to")
+    List<AppointmentSlot> findBookedSlotsBetween(@Param("from") LocalDate from, @Param("to") LocalDate to);
 
     @Query("SELECT new io.salad109.medicalofficemanager.appointments.internal.dto.AppointmentWithDetailsResponse(" +
-            "a.id, a.patientId, p.firstName, p.lastName, p.phoneNumber, a.appointmentDate, a.appointmentTime, a.status) " +
+            "a.id, a.patientId, p.firstName, p.lastName, p.phoneNumber, a.appointmentDate, a.appointmentTime, a.status, a.doctorId) " +
             "FROM Appointment a " +
             "JOIN User p ON a.patientId = p.id " +
             "WHERE a.appointmentDate = :date " +
@@ -22,10 +40,103 @@ public interface AppointmentRepository extends JpaRepository<Appointment, Long>
     List<AppointmentWithDetailsResponse> findAppointmentsWithDetailsByDate(@Param("date") LocalDate date);
 
     @Query("SELECT new io.salad109.medicalofficemanager.appointments.internal.dto.AppointmentWithDetailsResponse(" +
-            "a.id, a.patientId, p.firstName, p.lastName, p.phoneNumber, a.appointmentDate, a.appointmentTime, a.status) " +
+            "a.id, a.patientId, p.firstName, p.lastName, p.phoneNumber, a.appointmentDate, a.appointmentTime, a.status, a.doctorId) " +
+            "FROM Appointment a " +
+            "JOIN User p ON a.patientId = p.id " +
+            "WHERE a.appointmentDate BETWEEN :from AND :to " +
+            "ORDER BY a.appointmentDate ASC, a.appointmentTime ASC")
+    List<AppointmentWithDetailsResponse> findAppointmentsWithDetailsBetween(@Param("from") LocalDate from,
+                                                                            @Param("to") LocalDate to);
+
+    @Query("SELECT new io.salad109.medicalofficemanager.appointments.internal.dto.AppointmentWithDetailsResponse(" +
+            "a.id, a.patientId, p.firstName, p.lastName, p.phoneNumber, a.appointmentDate, a.appointmentTime, a.status, a.doctorId) " +
             "FROM Appointment a " +
             "JOIN User p ON a.patientId = p.id " +
             "WHERE a.patientId = :patientId " +
             "ORDER BY a.appointmentDate DESC, a.appointmentTime DESC")
     List<AppointmentWithDetailsResponse> findAppointmentsByPatientId(@Param("patientId") Long patientId);
+
+    @Query("SELECT new io.salad109.medicalofficemanager.appointments.internal.dto.AppointmentWithDetailsResponse(" +
+            "a.id, a.patientId, p.firstName, p.lastName, p.phoneNumber, a.appointmentDate, a.appointmentTime, a.status, a.doctorId) " +
+            "FROM Appointment a " +
+            "JOIN User p ON a.patientId = p.id " +
+            "WHERE a.patientId = :patientId " +
+            "ORDER BY a.appointmentDate DESC, a.appointmentTime DESC, a.id DESC")
+    List<AppointmentWithDetailsResponse> findPatientAppointmentsFirstPage(@Param("patientId") Long patientId,
+                                                                          Pageable pageable);
+
+    @Query("SELECT new io.salad109.medicalofficemanager.appointments.internal.dto.AppointmentWithDetailsResponse(" +
+            "a.id, a.patientId, p.firstName, p.lastName, p.phoneNumber, a.appointmentDate, a.appointmentTime, a.status, a.doctorId) " +
+            "FROM Appointment a " +
+            "JOIN User p ON a.patientId = p.id " +
+            "WHERE a.patientId = :patientId " +
+            "AND (a.appointmentDate < :date " +
+            "OR (a.appointmentDate = :date AND a.appointmentTime < :time) " +
+            "OR (a.appointmentDate = :date AND a.appointmentTime = :time AND a.id < :id)) " +
+            "ORDER BY a.appointmentDate DESC, a.appointmentTime DESC, a.id DESC")
+    List<AppointmentWithDetailsResponse> findPatientAppointmentsAfter(@Param("patientId") Long patientId,
+                                                                      @Param("date") LocalDate date,
+                                                                      @Param("time") LocalTime time,
+                                                                      @Param("id") Long id,
+                                                                      Pageable pageable);
+
+    @Query("SELECT new io.salad109.medicalofficemanager.appointments.internal.dto.AppointmentSlot(" +
+            "a.id, a.doctorId, a.appointmentDate, a.appointmentTime) " +
+            "FROM Appointment a " +
+            "WHERE a.status = io.salad109.medicalofficemanager.appointments.internal.AppointmentStatus.SCHEDULED " +
+            "AND (a.appointmentDate < :date OR (a.appointmentDate = :date AND a.appointmentTime < :time)) " +
+            "AND NOT EXISTS (SELECT v.id FROM Visit v WHERE v.appointmentId = a.id) " +
+            "ORDER BY a.appointmentDate ASC, a.appointmentTime ASC, a.id ASC")
+    List<AppointmentSlot> findNoShowCandidatesFirstPage(@Param("date") LocalDate date,
+                                                        @Param("time") LocalTime time,
+                                                        Pageable pageable);
+
+    @Query("SELECT new io.salad109.medicalofficemanager.appointments.internal.dto.AppointmentSlot(" +
+            "a.id, a.doctorId, a.appointmentDate, a.appointmentTime) " +
+            "FROM Appointment a " +
+            "WHERE a.status = io.salad109.medicalofficemanager.appointments.internal.AppointmentStatus.SCHEDULED " +
+            "AND (a.appointmentDate < :date OR (a.appointmentDate = :date AND a.appointmentTime < :time)) " +
+            "AND (a.appointmentDate > :afterDate " +
+            "OR (a.appointmentDate = :afterDate AND a.appointmentTime > :afterTime) " +
+            "OR (a.appointmentDate = :afterDate AND a.appointmentTime = :afterTime AND a.id > :afterId)) " +
+            "AND NOT EXISTS (SELECT v.id FROM Visit v WHERE v.appointmentId = a.id) " +
+            "ORDER BY a.appointmentDate ASC, a.appointmentTime ASC, a.id ASC")
+    List<AppointmentSlot> findNoShowCandidatesAfter(@Param("date") LocalDate date,
+                                                    @Param("time") LocalTime time,
+                                                    @Param("afterDate") LocalDate afterDate,
+                                                    @Param("afterTime") LocalTime afterTime,
+                                                    @Param("afterId") Long afterId,
+                                                    Pageable pageable);
+
+    @Modifying
+    @Query("UPDATE Appointment a " +
+            "SET a.status = io.salad109.medicalofficemanager.appointments.internal.AppointmentStatus.NO_SHOW, " +
+            "a.version = a.version + 1 " +
+            "WHERE a.id IN :ids " +
+            "AND a.status = io.salad109.medicalofficemanager.appointments.internal.AppointmentStatus.SCHEDULED")
+    int markScheduledAsNoShow(@Param("ids") List<Long> ids);
+
+    // The current date prunes the lookup to one partition; the unique slot key rejects a taken target
+    @Modifying(clearAutomatically = true)
+    @Query("UPDATE Appointment a " +
+            "SET a.doctorId = :doctorId, a.appointmentDate = :date, a.appointmentTime = :time, " +
+            "a.version = a.version + 1 " +
+            "WHERE a.id = :id AND a.appointmentDate = :currentDate AND a.version = :version " +
+            "AND a.status = io.salad109.medicalofficemanager.appointments.internal.AppointmentStatus.SCHEDULED")
+    int reschedule(@Param("id") Long id,
+                   @Param("currentDate") LocalDate currentDate,
+                   @Param("version") Long version,
+                   @Param("doctorId") Long doctorId,
+                   @Param("date") LocalDate date,
+                   @Param("time") LocalTime time);
+
+    @Query("SELECT a.id FROM Appointment a WHERE a.appointmentDate < :cutoff ORDER BY a.appointmentDate ASC, a.id ASC")
+    List<Long> findIdsBefore(@Param("cutoff") LocalDate cutoff, Pageable pageable);
+
+    @Modifying
+    @Query("DELETE FROM Appointment a WHERE a.id IN :ids AND a.appointmentDate < :cutoff")
+    int deleteArchived(@Param("ids") List<Long> ids, @Param("cutoff") LocalDate cutoff);
+
+    @Query("SELECT a.id FROM Appointment a WHERE a.id IN :ids AND a.status = :status")
+    List<Long> findIdsByStatus(@Param("ids") List<Long> ids, @Param("status") AppointmentStatus status);
 }
@@ -1,16 +1,33 @@
 package io.salad109.medicalofficemanager.appointments.internal
 
+import io.salad109.medicalofficemanager.appointments.AppointmentActivity
+import io.salad109.medicalofficemanager.appointments.AppointmentActivityEvent
+import io.salad109.medicalofficemanager.appointments.AppointmentsRemovedEvent
+import io.salad109.medicalofficemanager.appointments.internal.dto.AppointmentPageResponse
 import io.salad109.medicalofficemanager.appointments.internal.dto.AppointmentResponse
+import io.salad109.medicalofficemanager.appointments.internal.dto.AppointmentSeriesResponse
 import io.salad109.medicalofficemanager.appointments.internal.dto.AppointmentWithDetailsResponse
 import io.salad109.medicalofficemanager.appointments.internal.dto.BookAppointmentRequest
+import io.salad109.medicalofficemanager.appointments.internal.dto.BookAppointmentSeriesRequest
+import io.salad109.medicalofficemanager.appointments.internal.dto.CalendarDayResponse
+import io.salad109.medicalofficemanager.appointments.internal.dto.HoldSlotRequest
+import io.salad109.medicalofficemanager.appointments.internal.dto.RescheduleAppointmentRequest
+import io.salad109.medicalofficemanager.appointments.internal.dto.SeriesOccurrenceResponse
+import io.salad109.medicalofficemanager.appointments.internal.dto.SlotHoldResponse
 import io.salad109.medicalofficemanager.exception.InvalidAppointmentStatusException
 import io.salad109.medicalofficemanager.exception.InvalidTimeSlotException
 import io.salad109.medicalofficemanager.exception.ResourceAlreadyExistsException
 import io.salad109.medicalofficemanager.exception.ResourceNotFoundException
+import io.salad109.medicalofficemanager.infrastructure.OptimisticLockRetry
+import io.salad109.medicalofficemanager.infrastructure.SingleFlight
 import io.salad109.medicalofficemanager.users.Role
 import io.salad109.medicalofficemanager.users.UserManagement
 import io.salad109.medicalofficemanager.visits.VisitCompletedEvent
 import org.slf4j.LoggerFactory
+import org.springframework.context.ApplicationEventPublisher
+import org.springframework.dao.DataIntegrityViolationException
+import org.springframework.orm.ObjectOptimisticLockingFailureException
+import org.springframework.data.domain.PageRequest
 import org.springframework.security.access.AccessDeniedException
 import org.springframework.stereotype.Service
 import org.springframework.transaction.annotation.Transactional
@@ -19,90 +36,218 @@ import org.springframework.transaction.event.TransactionalEventListener
 import java.time.Duration
 import java.time.LocalDate
 import java.time.LocalTime
+import java.time.temporal.ChronoUnit
 
 @Service
 class AppointmentService(
     private val appointmentRepository: AppointmentRepository,
+    private val archivedAppointmentRepository: ArchivedAppointmentRepository,
     private val userManagement: UserManagement,
+    private val slotAvailabilityIndex: SlotAvailabilityIndex,
+    private val doctorScheduleRegistry: DoctorScheduleRegistry,
+    private val applicationEventPublisher: ApplicationEventPublisher,
+    private val optimisticLockRetry: OptimisticLockRetry,
+    private val singleFlight: SingleFlight,
+    private val scheduleVersions: ScheduleVersions,
+    private val slotHolds: SlotHolds
 ) {
     private val log = LoggerFactory.getLogger(AppointmentService::class.java)
 
     companion object {
-        private val OFFICE_START = LocalTime.of(9, 0)
-        private val OFFICE_END = LocalTime.of(17, 0)
-        private const val SLOT_DURATION_MINUTES = 30L
-    }
+        private const val MAX_CALENDAR_DAYS = 28L
+        private const val MAX_PAGE_SIZE = 100
 
-    fun getAvailableSlots(date: LocalDate): List<String> {
-        // Get existing appointments
-        val existingAppointments: List<Appointment> = appointmentRepository.findByAppointmentDate(date)
-        val bookedTimes = existingAppointments.map { it.appointmentTime }.toSet()
+        // Schedule reads are keyed by the dates' versions, so a shared result never outlives a write
+        private val SCHEDULE_READ_TTL = Duration.ofSeconds(1)
 
-        // Generate all possible slots
-        val allSlots = mutableListOf<LocalTime>()
-        var currentTime = OFFICE_START
-        while (currentTime.isBefore(OFFICE_END)) {
-            allSlots.add(currentTime)
-            currentTime = currentTime.plusMinutes(SLOT_DURATION_MINUTES)
-        }
+        private val HISTORY_ORDER = compareByDescending<AppointmentWithDetailsResponse> { it.date }
+            .thenByDescending { it.time }
+            .thenByDescending { it.id }
+    }
 
-        // Subtract booked times from all slots
-        return allSlots
-            .filterNot { it in bookedTimes }
-            .map { it.toString() }
-            .also { log.debug("Available slots on {}: {}", date, it) }
+    fun getAvailableSlots(date: LocalDate, doctorId: Long? = null): List<String> {
+        return slotAvailabilityIndex.availableSlots(date, doctorId)
+            .also { log.debug("Available slots on {} for doctor {}: {}", date, doctorId ?: "any", it) }
     }
 
-    fun getAppointmentsWithDetailsByDate(date: LocalDate): List<AppointmentWithDetailsResponse> {
-        return appointmentRepository.findAppointmentsWithDetailsByDate(date)
+    fun getAppointmentsWithDetailsByDate(date: LocalDate, doctorId: Long? = null): List<AppointmentWithDetailsResponse> {
+        // Every screen asks for the same date at once; doctor filtering happens after the shared load
+        val key = listOf(date, scheduleVersions.etag(date))
+        return singleFlight.execute("appointments.by-date", key, SCHEDULE_READ_TTL) {
+            appointmentRepository.findAppointmentsWithDetailsByDate(date)
+        }
+            .filter { doctorId == null || it.doctorId == doctorId }
             .also { log.debug("Fetched {} appointments with details for date {}", it.size, date) }
     }
 
-    fun getAppointmentsByPatientId(patientId: Long): List<AppointmentWithDetailsResponse> {
-        return appointmentRepository.findAppointmentsByPatientId(patientId)
-            .also { log.debug("Fetched {} appointments for patient {}", it.size, patientId) }
+    fun getCalendar(
+        from: LocalDate,
+        to: LocalDate,
+        currentUserId: Long,
+        currentUserRole: Role,
+        doctorId: Long? = null
+    ): List<CalendarDayResponse> {
+        if (to.isBefore(from)) {
+            throw IllegalArgumentException("Calendar range end must not be before its start")
+        }
+        if (ChronoUnit.DAYS.between(from, to) >= MAX_CALENDAR_DAYS) {
+            throw IllegalArgumentException("Calendar range cannot exceed $MAX_CALENDAR_DAYS days")
+        }
+
+        val key = listOf(from, to) + from.datesUntil(to.plusDays(1)).map { scheduleVersions.etag(it) }.toList()
+        val appointmentsByDate = singleFlight.execute("appointments.calendar", key, SCHEDULE_READ_TTL) {
+            appointmentRepository.findAppointmentsWithDetailsBetween(from, to)
+        }
+            .filter { doctorId == null || it.doctorId == doctorId }
+            .groupBy { it.date }
+
+        // Patients see every free slot but only their own bookings
+        return from.datesUntil(to.plusDays(1)).map { date ->
+            val appointments = appointmentsByDate[date].orEmpty()
+            val appointmentsByDoctor = appointments.groupBy { it.doctorId }
+            val availableSlots = doctorScheduleRegistry.freeSlots(date, doctorId) { id ->
+                val grid = doctorScheduleRegistry.gridFor(id, date)!!
+                appointmentsByDoctor[id].orEmpty().fold(slotHolds.heldMask(id, date)) { acc, appointment ->
+                    acc or grid.bitOf(appointment.time)
+                }
+            }
+            CalendarDayResponse(
+                date,
+                availableSlots,
+                if (currentUserRole == Role.PATIENT) appointments.filter { it.patientId == currentUserId } else appointments
+            )
+        }.toList()
+            .also { log.debug("Fetched calendar from {} to {}", from, to) }
     }
 
-    @Transactional
-    fun bookAppointment(request: BookAppointmentRequest): AppointmentResponse {
-        userManagement.validatePatient(request.patientId)
+    /**
+     * Live appointments only, unless [fullHistory] also asks for the archived closed years.
+     */
+    fun getAppointmentsByPatientId(patientId: Long, fullHistory: Boolean = false): List<AppointmentWithDetailsResponse> {
+        val live = appointmentRepository.findAppointmentsByPatientId(patientId)
+        val appointments = if (fullHistory) {
+            (live + archivedAppointmentRepository.findAppointmentsByPatientId(patientId)).sortedWith(HISTORY_ORDER)
+        } else {
+            live
+        }
+        log.debug("Fetched {} appointments for patient {}", appointments.size, patientId)
+        return appointments
+    }
 
-        val now = LocalDate.now()
-        val currentTime = LocalTime.now()
+    fun getAppointmentsPageByPatientId(
+        patientId: Long,
+        cursor: String?,
+        size: Int,
+        fullHistory: Boolean = false
+    ): AppointmentPageResponse {
+        val pageSize = size.coerceIn(1, MAX_PAGE_SIZE)
+        // One extra row tells whether another page exists without a count query
+        val limit = PageRequest.ofSize(pageSize + 1)
 
-        if (request.date.isBefore(now) || (request.date.isEqual(now) && request.time.isBefore(currentTime))) {
-            throw InvalidTimeSlotException("Cannot book appointment in the past")
+        val position = cursor?.let { AppointmentCursor.decode(it) }
+        val live = if (position == null) {
+            appointmentRepository.findPatientAppointmentsFirstPage(patientId, limit)
+        } else {
+            appointmentRepository.findPatientAppointmentsAfter(patientId, position.date, position.time, position.id, limit)
+        }
+        // Archived ids are unique across both tables, so one cursor keysets through the merged order
+        val rows = if (!fullHistory) {
+            live
+        } else {
+            val archived = if (position == null) {
+                archivedAppointmentRepository.findPatientAppointmentsFirstPage(patientId, limit)
+            } else {
+                archivedAppointmentRepository.findPatientAppointmentsAfter(
+                    patientId, position.date, position.time, position.id, limit
+                )
+            }
+            (live + archived).sortedWith(HISTORY_ORDER).take(pageSize + 1)
         }
 
-        if (!request.isValidTimeSlot()) {
-            throw InvalidTimeSlotException(
-                "Invalid time slot. Must be ${SLOT_DURATION_MINUTES}-minute interval between $OFFICE_START and $OFFICE_END"
-            )
+        val items = rows.take(pageSize)
+        val nextCursor = if (rows.size > pageSize) AppointmentCursor.of(items.last()).encode() else null
+        log.debug("Fetched page of {} appointments for patient {}", items.size, patientId)
+        return AppointmentPageResponse(items, nextCursor)
+    }
+
+    /**
+     * Reserves a free slot for a few minutes while the patient confirms. Holding another slot gives up
+     * the patient's previous hold.
+     */
+    fun holdSlot(request: HoldSlotRequest): SlotHoldResponse {
+        userManagement.validatePatient(request.patientId)
+        validateNotInPast(request.date, request.time)
+
+        val doctorId = request.doctorId
+        val candidates = if (doctorId != null) {
+            validateDoctorSlot(doctorId, request.date, request.time)
+            listOf(doctorId)
+        } else {
+            doctorScheduleRegistry.doctorsWorkingAt(request.date, request.time).ifEmpty {
+                throw InvalidTimeSlotException("Invalid time slot. No doctor has a slot at ${request.time} on ${request.date.dayOfWeek}")
+            }
+        }
+        val unbooked = candidates.filterNot { slotAvailabilityIndex.isBooked(it, request.date, request.time) }
+        if (unbooked.isEmpty()) {
+            throw ResourceAlreadyExistsException("Time slot ${request.time} on ${request.date} is already booked")
         }
 
-        // Check slot availability
-        val existingAppointments: List<Appointment> = appointmentRepository.findByAppointmentDate(request.date)
-        val bookedTimes = existingAppointments.map { it.appointmentTime }.toSet()
-        if (request.time in bookedTimes) {
-            throw ResourceAlreadyExistsException(
-                "Time slot ${request.time} on ${request.date} is already booked"
-            )
+        val hold = unbooked.firstNotNullOfOrNull { slotHolds.tryHold(request.patientId, it, request.date, request.time) }
+            ?: throw ResourceAlreadyExistsException("Time slot ${request.time} on ${request.date} is held by another patient")
+        log.info("Slot held: ID=${hold.id}, Patient=${hold.patientId}, Doctor=${hold.doctorId}, Date=${hold.date}, Time=${hold.time}")
+        return hold.toResponse()
+    }
+
+    fun releaseHold(holdId: String, currentUserId: Long, currentUserRole: Role) {
+        val hold = slotHolds.find(holdId)
+            ?: throw ResourceNotFoundException("Slot hold not found with ID: $holdId")
+
+        if (currentUserRole != Role.RECEPTIONIST && hold.patientId != currentUserId) {
+            throw AccessDeniedException("Patients can only release their own slot holds")
         }
 
-        // Create appointment
+        slotHolds.release(holdId)
+        log.info("Slot hold released: ID=$holdId by user $currentUserId")
+    }
+
+    @Transactional
+    fun bookAppointment(request: BookAppointmentRequest): AppointmentResponse {
+        userManagement.validatePatient(request.patientId)
+        validateNotInPast(request.date, request.time)
+        // An expired hold is no error, the booking just competes for the slot like any other
+        val hold = request.holdId?.let { slotHolds.find(it) }?.also { validateHold(it, request) }
+        val doctorId = hold?.doctorId
+            ?: request.doctorId?.also { validateDoctorSlot(it, request.date, request.time) }
+            ?: pickDoctor(request.date, request.time)
+
+        // The hold itself is consumed once the booking commits
+        slotHolds.heldBy(doctorId, request.date, request.time)
+            ?.takeIf { it.patientId != request.patientId }
+            ?.let { throw ResourceAlreadyExistsException("Time slot ${request.time} on ${request.date} is held by another patient") }
+
         val appointment = Appointment(
             patientId = request.patientId,
+            doctorId = doctorId,
             appointmentDate = request.date,
             appointmentTime = request.time,
             status = AppointmentStatus.SCHEDULED
         )
 
-        val savedAppointment = appointmentRepository.save(appointment)
-        log.info("Appointment booked: ID=${savedAppointment.id}, Patient=${request.patientId}, Date=${request.date}, Time=${request.time}")
+        // The unique (doctor_id, appointment_date, appointment_time) key decides which concurrent booking wins
+        val savedAppointment = try {
+            appointmentRepository.saveAndFlush(appointment)
+        } catch (ex: DataIntegrityViolationException) {
+            if (!ex.isDuplicateKey()) throw ex
+            throw ResourceAlreadyExistsException("Time slot ${request.time} on ${request.date} is already booked")
+        }
+        log.info("Appointment booked: ID=${savedAppointment.id}, Patient=${request.patientId}, Doctor=$doctorId, Date=${request.date}, Time=${request.time}")
+        publishScheduleChange(ScheduleChangeType.SLOT_BOOKED, savedAppointment)
+        publishActivity(AppointmentActivity.BOOKED, savedAppointment)
 
         return AppointmentResponse(
             savedAppointment.id,
             savedAppointment.patientId,
+            savedAppointment.doctorId,
             savedAppointment.appointmentDate,
             savedAppointment.appointmentTime,
             savedAppointment.status
@@ -110,7 +255,66 @@ class AppointmentService(
     }
 
     @Transactional
-    fun markAsNoShow(appointmentId: Long): AppointmentResponse {
+    fun bookAppointmentSeries(request: BookAppointmentSeriesRequest): AppointmentSeriesResponse {
+        userManagement.validatePatient(request.patientId)
+        userManagement.validateDoctor(request.doctorId)
+        validateNotInPast(request.startDate, request.time)
+        validateDoctorSlot(request.doctorId, request.startDate, request.time)
+
+        val dates = (0 until request.occurrences).map { request.frequency.occurrence(request.startDate, it) }
+        val workingDates = dates.filterTo(HashSet()) { date ->
+            val grid = doctorScheduleRegistry.gridFor(request.doctorId, date)
+            grid != null && grid.indexOf(request.time) >= 0
+        }
+        val bookedDates = appointmentRepository.findBookedDatesAtTime(request.doctorId, request.time, dates.first(), dates.last())
+            .toHashSet()
+        // Occurrences held by other patients are reported as conflicts
+        dates.filterTo(bookedDates) { date ->
+            slotHolds.heldBy(request.doctorId, date, request.time)?.let { it.patientId != request.patientId } ?: false
+        }
+
+        val appointments = dates.filter { it in workingDates && it !in bookedDates }.map { date ->
+            Appointment(
+                patientId = request.patientId,
+                doctorId = request.doctorId,
+                appointmentDate = date,
+                appointmentTime = request.time,
+                status = AppointmentStatus.SCHEDULED
+            )
+        }
+
+        // Pooled table-generated ids let Hibernate send these as one JDBC batch
+        val savedAppointments = try {
+            appointmentRepository.saveAllAndFlush(appointments)
+        } catch (ex: DataIntegrityViolationException) {
+            if (!ex.isDuplicateKey()) throw ex
+            throw ResourceAlreadyExistsException("A slot in the series was booked concurrently, please retry")
+        }
+        savedAppointments.forEach {
+            publishScheduleChange(ScheduleChangeType.SLOT_BOOKED, it)
+            publishActivity(AppointmentActivity.BOOKED, it)
+        }
+
+        val savedByDate = savedAppointments.associateBy { it.appointmentDate }
+        val occurrences = dates.map { date ->
+            val saved = savedByDate[date]
+            val status = when {
+                saved != null -> SeriesOccurrenceStatus.BOOKED
+                date !in workingDates -> SeriesOccurrenceStatus.OUTSIDE_SCHEDULE
+                else -> SeriesOccurrenceStatus.CONFLICT
+            }
+            SeriesOccurrenceResponse(date, request.time, status, saved?.id)
+        }
+        log.info(
+            "Appointment series booked: Patient=${request.patientId}, Doctor=${request.doctorId}, Start=${request.startDate}, Time=${request.time}, " +
+                    "Frequency=${request.frequency}, Booked=${savedAppointments.size}/${dates.size}"
+        )
+
+        return AppointmentSeriesResponse(savedAppointments.size, dates.size - savedAppointments.size, occurrences)
+    }
+
+    // Setting NO_SHOW twice is harmless, so a version conflict reruns the whole read-check-write
+    fun markAsNoShow(appointmentId: Long): AppointmentResponse = optimisticLockRetry.execute("appointment.no-show") {
         val appointment = appointmentRepository.findById(appointmentId)
             .orElseThrow { ResourceNotFoundException("Appointment not found with ID: $appointmentId") }
 
@@ -118,13 +322,19 @@ class AppointmentService(
             throw InvalidAppointmentStatusException("Cannot mark completed appointment as no-show")
         }
 
+        val alreadyNoShow = appointment.status == AppointmentStatus.NO_SHOW
         appointment.status = AppointmentStatus.NO_SHOW
         val updatedAppointment = appointmentRepository.save(appointment)
         log.info("Appointment marked as NO_SHOW: ID=$appointmentId")
+        publishScheduleChange(ScheduleChangeType.STATUS_CHANGED, updatedAppointment)
+        if (!alreadyNoShow) {
+            publishActivity(AppointmentActivity.NO_SHOW, updatedAppointment)
+        }
 
-        return AppointmentResponse(
+        AppointmentResponse(
             updatedAppointment.id,
             updatedAppointment.patientId,
+            updatedAppointment.doctorId,
             updatedAppointment.appointmentDate,
             updatedAppointment.appointmentTime,
             updatedAppointment.status
@@ -151,18 +361,181 @@ class AppointmentService(
             }
         }
 
-        appointmentRepository.delete(appointment)
+        // A visit is a medical record; the RESTRICT key on visits never let its appointment be deleted
+        if (appointment.status == AppointmentStatus.COMPLETED) {
+            throw InvalidAppointmentStatusException("Cannot cancel completed appointment")
+        }
+
+        removeAppointment(appointment)
         log.info("Appointment cancelled: ID=$appointmentId by user $currentUserId")
     }
 
-    private fun BookAppointmentRequest.isValidTimeSlot(): Boolean {
-        val time = this.time
-        if (time.isBefore(OFFICE_START) || !time.isBefore(OFFICE_END)) {
-            return false
+    // Reminders no longer reference appointments through a foreign key, so their rows are dropped here
+    private fun removeAppointment(appointment: Appointment) {
+        val appointmentId = appointment.id!!
+        appointmentRepository.delete(appointment)
+        applicationEventPublisher.publishEvent(AppointmentsRemovedEvent(listOf(appointmentId)))
+        publishScheduleChange(ScheduleChangeType.SLOT_FREED, appointment)
+        publishActivity(AppointmentActivity.CANCELLED, appointment, outcomeOf(appointment.status))
+    }
+
+    /**
+     * Moves a scheduled appointment to another slot with one conditional UPDATE, so the ID stays the same,
+     * the audit log gets a single UPDATE row and the old slot is only released once the new one is taken.
+     * The doctor stays the same unless the request names another one.
+     */
+    @Transactional
+    fun rescheduleAppointment(
+        appointmentId: Long,
+        request: RescheduleAppointmentRequest,
+        currentUserId: Long,
+        currentUserRole: Role
+    ): AppointmentResponse {
+        val appointment = appointmentRepository.findById(appointmentId)
+            .orElseThrow { ResourceNotFoundException("Appointment not found with ID: $appointmentId") }
+
+        when (currentUserRole) {
+            Role.RECEPTIONIST -> {
+                // Receptionists can reschedule any appointment
+            }
+
+            Role.DOCTOR -> throw AccessDeniedException("Doctors cannot reschedule appointments")
+
+            Role.PATIENT -> {
+                if (appointment.patientId != currentUserId) {
+                    throw AccessDeniedException("Patients can only reschedule their own appointments")
+                }
+            }
+        }
+
+        if (appointment.status != AppointmentStatus.SCHEDULED) {
+            throw InvalidAppointmentStatusException("Only scheduled appointments can be rescheduled")
+        }
+        validateNotInPast(request.date, request.time)
+        val doctorId = request.doctorId ?: appointment.doctorId
+        validateDoctorSlot(doctorId, request.date, request.time)
+
+        val unchanged = doctorId == appointment.doctorId &&
+                request.date == appointment.appointmentDate &&
+                request.time == appointment.appointmentTime
+        if (unchanged) {
+            return appointment.toResponse()
+        }
+
+        slotHolds.heldBy(doctorId, request.date, request.time)
+            ?.takeIf { it.patientId != appointment.patientId }
+            ?.let { throw ResourceAlreadyExistsException("Time slot ${request.time} on ${request.date} is held by another patient") }
+
+        val updated = try {
+            appointmentRepository.reschedule(
+                appointmentId, appointment.appointmentDate, appointment.version, doctorId, request.date, request.time
+            )
+        } catch (ex: DataIntegrityViolationException) {
+            if (!ex.isDuplicateKey()) throw ex
+            throw ResourceAlreadyExistsException("Time slot ${request.time} on ${request.date} is already booked")
+        }
+        if (updated == 0) {
+            // Cancelled, completed or moved by somebody else since it was read
+            throw ObjectOptimisticLockingFailureException(Appointment::class.java, appointmentId)
+        }
+
+        // The update cleared the persistence context, so the detached copy can describe both slots
+        publishScheduleChange(ScheduleChangeType.SLOT_FREED, appointment)
+        publishActivity(AppointmentActivity.MOVED_AWAY, appointment)
+        appointment.doctorId = doctorId
+        appointment.appointmentDate = request.date
+        appointment.appointmentTime = request.time
+        publishScheduleChange(ScheduleChangeType.SLOT_BOOKED, appointment)
+        publishActivity(AppointmentActivity.BOOKED, appointment)
+        log.info("Appointment rescheduled: ID=$appointmentId, Doctor=$doctorId, Date=${request.date}, Time=${request.time} by user $currentUserId")
+
+        return appointment.toResponse()
+    }
+
+    private fun validateNotInPast(date: LocalDate, time: LocalTime) {
+        val now = LocalDate.now()
+        val currentTime = LocalTime.now()
+
+        if (date.isBefore(now) || (date.isEqual(now) && time.isBefore(currentTime))) {
+            throw InvalidTimeSlotException("Cannot book appointment in the past")
+        }
+    }
+
+    private fun validateDoctorSlot(doctorId: Long, date: LocalDate, time: LocalTime) {
+        val grid = doctorScheduleRegistry.gridFor(doctorId, date)
+            ?: throw InvalidTimeSlotException("Invalid time slot. Doctor $doctorId does not work on ${date.dayOfWeek}")
+
+        if (grid.indexOf(time) < 0) {
+            throw InvalidTimeSlotException(
+                "Invalid time slot. Must be ${grid.slotMinutes}-minute interval between ${grid.start} and ${grid.end}"
+            )
+        }
+    }
+
+    private fun validateHold(hold: SlotHold, request: BookAppointmentRequest) {
+        val matches = hold.patientId == request.patientId &&
+                hold.date == request.date &&
+                hold.time == request.time &&
+                (request.doctorId == null || request.doctorId == hold.doctorId)
+        if (!matches) {
+            throw IllegalArgumentException("Slot hold ${hold.id} does not cover this booking")
         }
+    }
 
-        val minutesSinceStart = Duration.between(OFFICE_START, time).toMinutes()
-        return minutesSinceStart % SLOT_DURATION_MINUTES == 0L
+    /**
+     * Picks the first doctor whose grid has [time] free according to the index. The insert is still
+     * arbitrated by the unique key, so a stale pick only costs the caller a 409.
+     */
+    private fun pickDoctor(date: LocalDate, time: LocalTime): Long {
+        val candidates = doctorScheduleRegistry.doctorsWorkingAt(date, time)
+        if (candidates.isEmpty()) {
+            throw InvalidTimeSlotException("Invalid time slot. No doctor has a slot at $time on ${date.dayOfWeek}")
+        }
+        return candidates.firstOrNull { slotAvailabilityIndex.isFree(it, date, time) }
+            ?: throw ResourceAlreadyExistsException("Time slot $time on $date is already booked")
+    }
+
+    private fun Appointment.toResponse(): AppointmentResponse {
+        return AppointmentResponse(id, patientId, doctorId, appointmentDate, appointmentTime, status)
+    }
+
+    private fun SlotHold.toResponse(): SlotHoldResponse {
+        return SlotHoldResponse(id, patientId, doctorId, date, time, expiresAt)
+    }
+
+    private fun publishScheduleChange(type: ScheduleChangeType, appointment: Appointment) {
+        applicationEventPublisher.publishEvent(
+            ScheduleChangedEvent(
+                type = type,
+                appointmentId = appointment.id!!,
+                doctorId = appointment.doctorId,
+                date = appointment.appointmentDate,
+                time = appointment.appointmentTime,
+                status = if (type == ScheduleChangeType.SLOT_FREED) null else appointment.status
+            )
+        )
+    }
+
+    private fun publishActivity(
+        activity: AppointmentActivity,
+        appointment: Appointment,
+        previousOutcome: AppointmentActivity? = null
+    ) {
+        applicationEventPublisher.publishEvent(
+            AppointmentActivityEvent(
+                activity = activity,
+                appointmentId = appointment.id!!,
+                doctorId = appointment.doctorId,
+                date = appointment.appointmentDate,
+                previousOutcome = previousOutcome
+            )
+        )
+    }
+
+    private fun outcomeOf(status: AppointmentStatus): AppointmentActivity? = when (status) {
+        AppointmentStatus.NO_SHOW -> AppointmentActivity.NO_SHOW
+        AppointmentStatus.COMPLETED -> AppointmentActivity.COMPLETED
+        AppointmentStatus.SCHEDULED -> null
     }
 
     @TransactionalEventListener(phase = TransactionPhase.BEFORE_COMMIT)
@@ -174,8 +547,11 @@ class AppointmentService(
             throw InvalidAppointmentStatusException("Appointment is already marked as COMPLETED")
         }
 
+        val previousOutcome = outcomeOf(appointment.status)
         appointment.status = AppointmentStatus.COMPLETED
-        appointmentRepository.save(appointment)
+        val updatedAppointment = appointmentRepository.save(appointment)
+        publishScheduleChange(ScheduleChangeType.STATUS_CHANGED, updatedAppointment)
+        publishActivity(AppointmentActivity.COMPLETED, updatedAppointment, previousOutcome)
         log.info("Appointment marked as completed due to completion of visit ID=${event.appointmentId}")
     }
 }
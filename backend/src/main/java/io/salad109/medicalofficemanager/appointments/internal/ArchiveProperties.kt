@@ -0,0 +1,12 @@
+package io.salad109.medicalofficemanager.appointments.internal
+
+import org.springframework.boot.context.properties.ConfigurationProperties
+import org.springframework.context.annotation.Configuration
+
+@Configuration
+@ConfigurationProperties(prefix = "appointments.archive")
+class ArchiveProperties {
+    var enabled: Boolean = true
+    var retainYears: Long = 1
+    var chunkSize: Int = 500
+}
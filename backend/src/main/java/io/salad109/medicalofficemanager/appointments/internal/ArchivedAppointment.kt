@@ -0,0 +1,34 @@
+package io.salad109.medicalofficemanager.appointments.internal
+
+import jakarta.persistence.*
+import org.hibernate.annotations.Immutable
+import java.time.LocalDate
+import java.time.LocalTime
+
+/**
+ * Appointment of a closed year, moved out of the partitioned `appointments` table by [AppointmentArchiver].
+ */
+@Entity
+@Immutable
+@Table(name = "appointments_archive")
+class ArchivedAppointment(
+    @Id
+    var id: Long,
+
+    @Column(name = "patient_id")
+    var patientId: Long,
+
+    @Column(name = "doctor_id")
+    var doctorId: Long,
+
+    @Column(name = "appointment_date")
+    var appointmentDate: LocalDate,
+
+    @Column(name = "appointment_time")
+    var appointmentTime: LocalTime,
+
+    @Enumerated(EnumType.STRING)
+    var status: AppointmentStatus,
+
+    var version: Long
+)
@@ -0,0 +1,56 @@
+package io.salad109.medicalofficemanager.appointments.internal;
+
+import io.salad109.medicalofficemanager.appointments.internal.dto.AppointmentWithDetailsResponse;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.List;
+
+@Repository
+public interface ArchivedAppointmentRepository extends JpaRepository<ArchivedAppointment, Long> {
+    @Query("SELECT new io.salad109.medicalofficemanager.appointments.internal.dto.AppointmentWithDetailsResponse(" +
+            "a.id, a.patientId, p.firstName, p.lastName, p.phoneNumber, a.appointmentDate, a.appointmentTime, a.status, a.doctorId) " +
+            "FROM ArchivedAppointment a " +
+            "JOIN User p ON a.patientId = p.id " +
+            "WHERE a.patientId = :patientId " +
+            "ORDER BY a.appointmentDate DESC, a.appointmentTime DESC")
+    List<AppointmentWithDetailsResponse> findAppointmentsByPatientId(@Param("patientId") Long patientId);
+
+    @Query("SELECT new io.salad109.medicalofficemanager.appointments.internal.dto.AppointmentWithDetailsResponse(" +
+            "a.id, a.patientId, p.firstName, p.lastName, p.phoneNumber, a.appointmentDate, a.appointmentTime, a.status, a.doctorId) " +
+            "FROM ArchivedAppointment a " +
+            "JOIN User p ON a.patientId = p.id " +
+            "WHERE a.patientId = :patientId " +
+            "ORDER BY a.appointmentDate DESC, a.appointmentTime DESC, a.id DESC")
+    List<AppointmentWithDetailsResponse> findPatientAppointmentsFirstPage(@Param("patientId") Long patientId,
+                                                                          Pageable pageable);
+
+    @Query("SELECT new io.salad109.medicalofficemanager.appointments.internal.dto.AppointmentWithDetailsResponse(" +
+            "a.id, a.patientId, p.firstName, p.lastName, p.phoneNumber, a.appointmentDate, a.appointmentTime, a.status, a.doctorId) " +
+            "FROM ArchivedAppointment a " +
+            "JOIN User p ON a.patientId = p.id " +
+            "WHERE a.patientId = :patientId " +
+            "AND (a.appointmentDate < :date " +
+            "OR (a.appointmentDate = :date AND a.appointmentTime < :time) " +
+            "OR (a.appointmentDate = :date AND a.appointmentTime = :time AND a.id < :id)) " +
+            "ORDER BY a.appointmentDate DESC, a.appointmentTime DESC, a.id DESC")
+    List<AppointmentWithDetailsResponse> findPatientAppointmentsAfter(@Param("patientId") Long patientId,
+                                                                      @Param("date") LocalDate date,
+                                                                      @Param("time") LocalTime time,
+                                                                      @Param("id") Long id,
+                                                                      Pageable pageable);
+
+    @Modifying
+    @Query(value = "INSERT INTO appointments_archive " +
+            "(id, patient_id, doctor_id, appointment_date, appointment_time, status, version) " +
+            "SELECT id, patient_id, doctor_id, appointment_date, appointment_time, status, version " +
+            "FROM appointments WHERE id IN (:ids) AND appointment_date < :cutoff",
+            nativeQuery = true)
+    int copyFromLive(@Param("ids") List<Long> ids, @Param("cutoff") LocalDate cutoff);
+}
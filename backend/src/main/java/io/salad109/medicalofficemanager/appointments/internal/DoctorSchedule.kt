@@ -0,0 +1,35 @@
+package io.salad109.medicalofficemanager.appointments.internal
+
+import jakarta.persistence.*
+import jakarta.validation.constraints.NotNull
+import java.time.DayOfWeek
+import java.time.LocalTime
+
+@Entity
+@Table(name = "doctor_schedules")
+class DoctorSchedule(
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    var id: Long? = null,
+
+    @field:NotNull
+    @Column(name = "doctor_id")
+    var doctorId: Long,
+
+    @field:NotNull
+    @Enumerated(EnumType.STRING)
+    @Column(name = "day_of_week")
+    var dayOfWeek: DayOfWeek,
+
+    @field:NotNull
+    @Column(name = "start_time")
+    var startTime: LocalTime,
+
+    @field:NotNull
+    @Column(name = "end_time")
+    var endTime: LocalTime,
+
+    @field:NotNull
+    @Column(name = "slot_minutes")
+    var slotMinutes: Int
+)
@@ -0,0 +1,5 @@
+package io.salad109.medicalofficemanager.appointments.internal
+
+data class DoctorScheduleChangedEvent(
+    val doctorId: Long
+)
@@ -0,0 +1,32 @@
+package io.salad109.medicalofficemanager.appointments.internal
+
+import io.salad109.medicalofficemanager.appointments.internal.dto.DoctorScheduleDayResponse
+import io.salad109.medicalofficemanager.appointments.internal.dto.DoctorScheduleRequest
+import jakarta.validation.Valid
+import org.springframework.http.ResponseEntity
+import org.springframework.security.access.prepost.PreAuthorize
+import org.springframework.web.bind.annotation.*
+
+@RestController
+@RequestMapping("/api/doctors/{id}/schedule")
+class DoctorScheduleController(
+    private val doctorScheduleService: DoctorScheduleService
+) {
+
+    @GetMapping
+    @PreAuthorize("hasRole('RECEPTIONIST') or hasRole('DOCTOR') or hasRole('PATIENT')")
+    fun getSchedule(@PathVariable id: Long): ResponseEntity<List<DoctorScheduleDayResponse>> {
+        val schedule = doctorScheduleService.getSchedule(id)
+        return ResponseEntity.ok(schedule)
+    }
+
+    @PutMapping
+    @PreAuthorize("hasRole('RECEPTIONIST')")
+    fun replaceSchedule(
+        @PathVariable id: Long,
+        @Valid @RequestBody request: DoctorScheduleRequest
+    ): ResponseEntity<List<DoctorScheduleDayResponse>> {
+        val schedule = doctorScheduleService.replaceSchedule(id, request)
+        return ResponseEntity.ok(schedule)
+    }
+}
@@ -0,0 +1,91 @@
+package io.salad109.medicalofficemanager.appointments.internal
+
+import io.salad109.medicalofficemanager.appointments.ScheduleCapacity
+import org.slf4j.LoggerFactory
+import org.springframework.stereotype.Component
+import java.time.DayOfWeek
+import java.time.LocalDate
+import java.time.LocalTime
+import java.util.EnumMap
+
+/**
+ * Weekday templates compiled into immutable per-doctor slot grids. A template change swaps in a
+ * recompiled snapshot, so lookups never lock.
+ */
+@Component
+class DoctorScheduleRegistry(
+    private val doctorScheduleRepository: DoctorScheduleRepository
+) : ScheduleCapacity {
+    private val log = LoggerFactory.getLogger(DoctorScheduleRegistry::class.java)
+
+    @Volatile
+    private var snapshot: Snapshot? = null
+
+    fun gridFor(doctorId: Long, date: LocalDate): SlotGrid? {
+        return snapshot().grids[doctorId]?.get(date.dayOfWeek)
+    }
+
+    fun doctorsWorkingOn(date: LocalDate): List<Long> {
+        return snapshot().doctorsByDay[date.dayOfWeek].orEmpty()
+    }
+
+    fun doctorsWorkingAt(date: LocalDate, time: LocalTime): List<Long> {
+        return doctorsWorkingOn(date).filter { gridFor(it, date)!!.indexOf(time) >= 0 }
+    }
+
+    override fun slotCount(date: LocalDate, doctorId: Long?): Int {
+        val doctors = doctorId?.let { listOf(it) } ?: doctorsWorkingOn(date)
+        return doctors.sumOf { gridFor(it, date)?.times?.size ?: 0 }
+    }
+
+    /**
+     * Free slot labels for one doctor, or for the whole office when [doctorId] is null. An office
+     * slot is free while at least one doctor working that day has it free.
+     */
+    fun freeSlots(date: LocalDate, doctorId: Long?, bookedMaskOf: (Long) -> Long): List<String> {
+        if (doctorId != null) {
+            val grid = gridFor(doctorId, date) ?: return emptyList()
+            return grid.labelsOf(bookedMaskOf(doctorId).inv())
+        }
+
+        return doctorsWorkingOn(date)
+            .flatMapTo(sortedSetOf<LocalTime>()) { id -> gridFor(id, date)!!.timesOf(bookedMaskOf(id).inv()) }
+            .map { it.toString() }
+    }
+
+    @Synchronized
+    fun reload(doctorId: Long) {
+        val grids = snapshot().grids.toMutableMap()
+        val days = compile(doctorScheduleRepository.findByDoctorIdOrderByDayOfWeek(doctorId))
+        if (days.isEmpty()) grids.remove(doctorId) else grids[doctorId] = days
+
+        snapshot = Snapshot(grids)
+        log.info("Recompiled slot grids for doctor {}: {} working days", doctorId, days.size)
+    }
+
+    private fun snapshot(): Snapshot {
+        return snapshot ?: synchronized(this) {
+            snapshot ?: load().also { snapshot = it }
+        }
+    }
+
+    private fun load(): Snapshot {
+        val grids = doctorScheduleRepository.findAll()
+            .groupBy { it.doctorId }
+            .mapValues { (_, templates) -> compile(templates) }
+        log.info("Compiled slot grids for {} doctors", grids.size)
+        return Snapshot(grids)
+    }
+
+    private fun compile(templates: List<DoctorSchedule>): Map<DayOfWeek, SlotGrid> {
+        return templates.associateTo(EnumMap(DayOfWeek::class.java)) {
+            it.dayOfWeek to SlotGrid(it.startTime, it.endTime, it.slotMinutes.toLong())
+        }
+    }
+
+    private class Snapshot(val grids: Map<Long, Map<DayOfWeek, SlotGrid>>) {
+        val doctorsByDay: Map<DayOfWeek, List<Long>> = DayOfWeek.entries.associateWith { day ->
+            grids.filterValues { day in it }.keys.sorted()
+        }
+    }
+}
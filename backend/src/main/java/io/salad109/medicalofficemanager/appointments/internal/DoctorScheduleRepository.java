@@ -0,0 +1,18 @@
+package io.salad109.medicalofficemanager.appointments.internal;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface DoctorScheduleRepository extends JpaRepository<DoctorSchedule, Long> {
+    List<DoctorSchedule> findByDoctorIdOrderByDayOfWeek(Long doctorId);
+
+    @Modifying
+    @Query("DELETE FROM DoctorSchedule s WHERE s.doctorId = :doctorId")
+    void deleteByDoctorId(@Param("doctorId") Long doctorId);
+}
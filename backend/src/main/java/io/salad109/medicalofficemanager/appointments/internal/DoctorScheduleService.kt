@@ -0,0 +1,80 @@
+package io.salad109.medicalofficemanager.appointments.internal
+
+import io.salad109.medicalofficemanager.appointments.internal.dto.DoctorScheduleDayResponse
+import io.salad109.medicalofficemanager.appointments.internal.dto.DoctorScheduleRequest
+import io.salad109.medicalofficemanager.users.UserManagement
+import jakarta.validation.ValidationException
+import org.slf4j.LoggerFactory
+import org.springframework.context.ApplicationEventPublisher
+import org.springframework.stereotype.Service
+import org.springframework.transaction.annotation.Transactional
+import org.springframework.transaction.event.TransactionPhase
+import org.springframework.transaction.event.TransactionalEventListener
+
+@Service
+class DoctorScheduleService(
+    private val doctorScheduleRepository: DoctorScheduleRepository,
+    private val userManagement: UserManagement,
+    private val doctorScheduleRegistry: DoctorScheduleRegistry,
+    private val slotAvailabilityIndex: SlotAvailabilityIndex,
+    private val scheduleVersions: ScheduleVersions,
+    private val applicationEventPublisher: ApplicationEventPublisher
+) {
+    private val log = LoggerFactory.getLogger(DoctorScheduleService::class.java)
+
+    fun getSchedule(doctorId: Long): List<DoctorScheduleDayResponse> {
+        userManagement.validateDoctor(doctorId)
+        return doctorScheduleRepository.findByDoctorIdOrderByDayOfWeek(doctorId)
+            .map { it.toResponse() }
+            .also { log.debug("Fetched {} schedule days for doctor {}", it.size, doctorId) }
+    }
+
+    @Transactional
+    fun replaceSchedule(doctorId: Long, request: DoctorScheduleRequest): List<DoctorScheduleDayResponse> {
+        userManagement.validateDoctor(doctorId)
+
+        val duplicateDays = request.days.groupingBy { it.dayOfWeek }.eachCount().filterValues { it > 1 }.keys
+        if (duplicateDays.isNotEmpty()) {
+            throw ValidationException("Schedule days must be unique, duplicated: $duplicateDays")
+        }
+
+        // Compiling each template up front rejects grids that could never be served
+        request.days.forEach { day ->
+            try {
+                SlotGrid(day.startTime, day.endTime, day.slotMinutes.toLong())
+            } catch (ex: IllegalArgumentException) {
+                throw ValidationException("Invalid schedule for ${day.dayOfWeek}: ${ex.message}")
+            }
+        }
+
+        doctorScheduleRepository.deleteByDoctorId(doctorId)
+        val savedDays = doctorScheduleRepository.saveAll(request.days.map { day ->
+            DoctorSchedule(
+                doctorId = doctorId,
+                dayOfWeek = day.dayOfWeek,
+                startTime = day.startTime,
+                endTime = day.endTime,
+                slotMinutes = day.slotMinutes
+            )
+        })
+        applicationEventPublisher.publishEvent(DoctorScheduleChangedEvent(doctorId))
+        log.info("Schedule replaced for doctor {}: {} working days", doctorId, savedDays.size)
+
+        return savedDays.sortedBy { it.dayOfWeek }.map { it.toResponse() }
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    fun onDoctorScheduleChanged(event: DoctorScheduleChangedEvent) {
+        doctorScheduleRegistry.reload(event.doctorId)
+        slotAvailabilityIndex.invalidate(event.doctorId)
+        // Only after the new grids are visible, so a fresh tag never labels stale availability
+        scheduleVersions.invalidateAll()
+    }
+
+    private fun DoctorSchedule.toResponse() = DoctorScheduleDayResponse(
+        dayOfWeek,
+        startTime,
+        endTime,
+        slotMinutes
+    )
+}
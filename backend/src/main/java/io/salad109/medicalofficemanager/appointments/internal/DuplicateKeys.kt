@@ -0,0 +1,11 @@
+package io.salad109.medicalofficemanager.appointments.internal
+
+import org.springframework.dao.DataIntegrityViolationException
+import org.springframework.dao.DuplicateKeyException
+import java.sql.SQLException
+
+private const val MYSQL_DUPLICATE_ENTRY = 1062
+
+fun DataIntegrityViolationException.isDuplicateKey(): Boolean {
+    return this is DuplicateKeyException || (mostSpecificCause as? SQLException)?.errorCode == MYSQL_DUPLICATE_ENTRY
+}
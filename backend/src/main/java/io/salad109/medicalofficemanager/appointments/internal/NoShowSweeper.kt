@@ -0,0 +1,102 @@
+package io.salad109.medicalofficemanager.appointments.internal
+
+import io.salad109.medicalofficemanager.appointments.AppointmentActivity
+import io.salad109.medicalofficemanager.appointments.AppointmentActivityEvent
+import io.salad109.medicalofficemanager.appointments.internal.dto.AppointmentSlot
+import io.salad109.medicalofficemanager.appointments.internal.dto.NoShowSweepResponse
+import org.slf4j.LoggerFactory
+import org.springframework.context.ApplicationEventPublisher
+import org.springframework.data.domain.PageRequest
+import org.springframework.scheduling.annotation.Scheduled
+import org.springframework.stereotype.Component
+import org.springframework.transaction.support.TransactionTemplate
+import java.time.Duration
+import java.time.LocalDateTime
+
+/**
+ * Moves past SCHEDULED appointments without a visit to NO_SHOW. Each chunk is one short transaction:
+ * a select keyset-ordered on the status, date and time index followed by a single guarded UPDATE, never
+ * a per-entity load and save. The scan only reads SCHEDULED rows, and rows a chunk skips are not
+ * read again.
+ */
+@Component
+class NoShowSweeper(
+    private val appointmentRepository: AppointmentRepository,
+    private val transactionTemplate: TransactionTemplate,
+    private val applicationEventPublisher: ApplicationEventPublisher,
+    private val noShowSweeperProperties: NoShowSweeperProperties
+) {
+    private val log = LoggerFactory.getLogger(NoShowSweeper::class.java)
+
+    @Scheduled(cron = "\${appointments.no-show-sweeper.cron:0 */15 * * * *}")
+    fun scheduledSweep() {
+        if (noShowSweeperProperties.enabled) {
+            sweep()
+        }
+    }
+
+    fun sweep(): NoShowSweepResponse {
+        val startedAt = System.nanoTime()
+        val cutoff = LocalDateTime.now().minusMinutes(noShowSweeperProperties.graceMinutes)
+        val chunkSize = noShowSweeperProperties.chunkSize
+        var after: AppointmentSlot? = null
+        var transitioned = 0
+
+        do {
+            val chunk = transactionTemplate.execute { sweepChunk(cutoff, after, chunkSize) }!!
+            transitioned += chunk.transitioned
+            after = chunk.last
+        } while (chunk.scanned == chunkSize)
+
+        val durationMs = Duration.ofNanos(System.nanoTime() - startedAt).toMillis()
+        log.info("No-show sweep before {} transitioned {} appointments in {} ms", cutoff, transitioned, durationMs)
+        return NoShowSweepResponse(transitioned, durationMs)
+    }
+
+    private fun sweepChunk(cutoff: LocalDateTime, after: AppointmentSlot?, chunkSize: Int): ChunkResult {
+        val page = PageRequest.ofSize(chunkSize)
+        val candidates = if (after == null) {
+            appointmentRepository.findNoShowCandidatesFirstPage(cutoff.toLocalDate(), cutoff.toLocalTime(), page)
+        } else {
+            appointmentRepository.findNoShowCandidatesAfter(
+                cutoff.toLocalDate(), cutoff.toLocalTime(), after.date, after.time, after.id, page
+            )
+        }
+        if (candidates.isEmpty()) {
+            return ChunkResult(0, 0, after)
+        }
+
+        val ids = candidates.map { it.id }
+        val updated = appointmentRepository.markScheduledAsNoShow(ids)
+
+        // The status guard skips rows completed since the select; only those need a second look
+        val transitioned = if (updated == candidates.size) {
+            candidates
+        } else {
+            val noShowIds = appointmentRepository.findIdsByStatus(ids, AppointmentStatus.NO_SHOW).toHashSet()
+            candidates.filter { it.id in noShowIds }
+        }
+        transitioned.forEach { publishNoShow(it) }
+        log.debug("No-show chunk after {}: {} of {} transitioned", after, transitioned.size, candidates.size)
+
+        return ChunkResult(candidates.size, transitioned.size, candidates.last())
+    }
+
+    private fun publishNoShow(slot: AppointmentSlot) {
+        applicationEventPublisher.publishEvent(
+            ScheduleChangedEvent(
+                type = ScheduleChangeType.STATUS_CHANGED,
+                appointmentId = slot.id,
+                doctorId = slot.doctorId,
+                date = slot.date,
+                time = slot.time,
+                status = AppointmentStatus.NO_SHOW
+            )
+        )
+        applicationEventPublisher.publishEvent(
+            AppointmentActivityEvent(AppointmentActivity.NO_SHOW, slot.id, slot.doctorId, slot.date)
+        )
+    }
+
+    private data class ChunkResult(val scanned: Int, val transitioned: Int, val last: AppointmentSlot?)
+}
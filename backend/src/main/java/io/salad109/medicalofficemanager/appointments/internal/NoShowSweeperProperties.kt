@@ -0,0 +1,12 @@
+package io.salad109.medicalofficemanager.appointments.internal
+
+import org.springframework.boot.context.properties.ConfigurationProperties
+import org.springframework.context.annotation.Configuration
+
+@Configuration
+@ConfigurationProperties(prefix = "appointments.no-show-sweeper")
+class NoShowSweeperProperties {
+    var enabled: Boolean = true
+    var graceMinutes: Long = 30
+    var chunkSize: Int = 500
+}
@@ -0,0 +1,19 @@
+package io.salad109.medicalofficemanager.appointments.internal;
+
+import java.time.LocalDate;
+
+public enum RecurrenceFrequency {
+    DAILY,
+    WEEKLY,
+    BIWEEKLY,
+    MONTHLY;
+
+    public LocalDate occurrence(LocalDate start, int index) {
+        return switch (this) {
+            case DAILY -> start.plusDays(index);
+            case WEEKLY -> start.plusWeeks(index);
+            case BIWEEKLY -> start.plusWeeks(2L * index);
+            case MONTHLY -> start.plusMonths(index);
+        };
+    }
+}
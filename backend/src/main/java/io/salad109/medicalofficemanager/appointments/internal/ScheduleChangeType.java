@@ -0,0 +1,7 @@
+package io.salad109.medicalofficemanager.appointments.internal;
+
+public enum ScheduleChangeType {
+    SLOT_BOOKED,
+    SLOT_FREED,
+    STATUS_CHANGED
+}
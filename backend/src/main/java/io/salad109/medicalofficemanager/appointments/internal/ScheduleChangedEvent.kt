@@ -0,0 +1,13 @@
+package io.salad109.medicalofficemanager.appointments.internal
+
+import java.time.LocalDate
+import java.time.LocalTime
+
+data class ScheduleChangedEvent(
+    val type: ScheduleChangeType,
+    val appointmentId: Long,
+    val doctorId: Long,
+    val date: LocalDate,
+    val time: LocalTime,
+    val status: AppointmentStatus?
+)
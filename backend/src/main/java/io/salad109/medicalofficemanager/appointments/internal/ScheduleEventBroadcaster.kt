@@ -0,0 +1,155 @@
+package io.salad109.medicalofficemanager.appointments.internal
+
+import io.salad109.medicalofficemanager.appointments.internal.dto.ScheduleChangeResponse
+import jakarta.annotation.PreDestroy
+import org.slf4j.LoggerFactory
+import org.springframework.stereotype.Component
+import org.springframework.transaction.event.TransactionPhase
+import org.springframework.transaction.event.TransactionalEventListener
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter.DataWithMediaType
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter
+import java.time.Duration
+import java.time.LocalDate
+import java.util.concurrent.ArrayBlockingQueue
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicBoolean
+
+/**
+ * Fans committed schedule changes out to SSE subscribers of a date. Publishing only offers to
+ * bounded per-subscriber buffers; sends happen on virtual threads, and a subscriber whose buffer
+ * overflows is dropped instead of slowing down the writer. Each event is built once into a read-only
+ * set of parts that every subscriber sends as is, since an SSE event builder is neither reusable nor
+ * safe to share across threads.
+ */
+@Component
+class ScheduleEventBroadcaster(
+    scheduleStreamProperties: ScheduleStreamProperties
+) {
+    private val log = LoggerFactory.getLogger(ScheduleEventBroadcaster::class.java)
+
+    private val subscribers = ConcurrentHashMap<LocalDate, MutableSet<Subscriber>>()
+    private val senders = Executors.newVirtualThreadPerTaskExecutor()
+    private val heartbeat = Executors.newSingleThreadScheduledExecutor { runnable ->
+        Thread(runnable, "schedule-sse-heartbeat").apply { isDaemon = true }
+    }
+
+    companion object {
+        private const val BUFFER_CAPACITY = 64
+        private val EMITTER_TIMEOUT = Duration.ofMinutes(30)
+    }
+
+    init {
+        val interval = scheduleStreamProperties.heartbeatInterval.toMillis()
+        heartbeat.scheduleAtFixedRate(::sendHeartbeats, interval, interval, TimeUnit.MILLISECONDS)
+    }
+
+    fun subscribe(date: LocalDate): SseEmitter = subscribe(date, SseEmitter(EMITTER_TIMEOUT.toMillis()))
+
+    /**
+     * Streams the date's changes into [emitter], which the caller has created and may wrap.
+     */
+    fun subscribe(date: LocalDate, emitter: SseEmitter): SseEmitter {
+        val subscriber = Subscriber(date, emitter)
+
+        subscribers.compute(date) { _, dateSubscribers ->
+            (dateSubscribers ?: ConcurrentHashMap.newKeySet()).apply { add(subscriber) }
+        }
+        emitter.onCompletion { unsubscribe(subscriber) }
+        emitter.onTimeout { unsubscribe(subscriber) }
+        emitter.onError { unsubscribe(subscriber) }
+
+        log.debug("Schedule stream subscribed for {}", date)
+        return emitter
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    fun onScheduleChanged(event: ScheduleChangedEvent) {
+        val dateSubscribers = subscribers[event.date] ?: return
+        val message = ScheduleChangeResponse(event.type, event.appointmentId, event.doctorId, event.date, event.time, event.status)
+        val sseEvent = SseEmitter.event().name(event.type.name).data(message).build().toSet()
+
+        dateSubscribers.forEach { subscriber ->
+            if (!subscriber.offer(sseEvent)) {
+                drop(subscriber, "buffer full")
+            }
+        }
+    }
+
+    @PreDestroy
+    fun shutdown() {
+        heartbeat.shutdownNow()
+        subscribers.values.flatten().forEach { it.emitter.complete() }
+        senders.shutdown()
+    }
+
+    private fun sendHeartbeats() {
+        val heartbeatEvent = SseEmitter.event().comment("heartbeat").build().toSet()
+        subscribers.values.forEach { dateSubscribers ->
+            dateSubscribers.forEach { subscriber ->
+                if (!subscriber.offer(heartbeatEvent)) {
+                    drop(subscriber, "buffer full")
+                }
+            }
+        }
+    }
+
+    private fun unsubscribe(subscriber: Subscriber) {
+        subscribers.computeIfPresent(subscriber.date) { _, dateSubscribers ->
+            dateSubscribers.remove(subscriber)
+            if (dateSubscribers.isEmpty()) null else dateSubscribers
+        }
+    }
+
+    private fun drop(subscriber: Subscriber, reason: String?) {
+        if (!subscriber.closed.compareAndSet(false, true)) {
+            return
+        }
+        unsubscribe(subscriber)
+        // Completing takes the emitter lock, which a stuck send may be holding
+        senders.execute { subscriber.emitter.complete() }
+        log.info("Dropped schedule stream subscriber for {}: {}", subscriber.date, reason)
+    }
+
+    private inner class Subscriber(val date: LocalDate, val emitter: SseEmitter) {
+        val closed = AtomicBoolean(false)
+        private val buffer = ArrayBlockingQueue<Set<DataWithMediaType>>(BUFFER_CAPACITY)
+        private val draining = AtomicBoolean(false)
+
+        fun offer(event: Set<DataWithMediaType>): Boolean {
+            if (closed.get()) {
+                return true
+            }
+            if (!buffer.offer(event)) {
+                return false
+            }
+            scheduleDrain()
+            return true
+        }
+
+        private fun scheduleDrain() {
+            if (draining.compareAndSet(false, true)) {
+                senders.execute(::drain)
+            }
+        }
+
+        private fun drain() {
+            try {
+                var event = buffer.poll()
+                while (event != null && !closed.get()) {
+                    emitter.send(event)
+                    event = buffer.poll()
+                }
+            } catch (ex: Exception) {
+                drop(this, ex.message)
+                return
+            } finally {
+                draining.set(false)
+            }
+            if (buffer.isNotEmpty() && !closed.get()) {
+                scheduleDrain()
+            }
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package io.salad109.medicalofficemanager.appointments.internal
+
+import org.springframework.stereotype.Component
+import org.springframework.transaction.event.TransactionPhase
+import org.springframework.transaction.event.TransactionalEventListener
+import java.time.LocalDate
+import java.util.*
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * Per-date schedule version, bumped after every committed appointment write and exposed as a strong ETag.
+ */
+@Component
+class ScheduleVersions {
+    private val versions = ConcurrentHashMap<LocalDate, Long>()
+
+    // Versions restart at zero, so tags from a previous run must never match
+    private val instanceId = UUID.randomUUID().toString().substring(0, 8)
+
+    // Bumped when slot grids are recompiled, which can change availability on any date
+    private val gridEpoch = AtomicLong()
+
+    fun version(date: LocalDate): Long = versions[date] ?: 0L
+
+    fun etag(date: LocalDate): String = "\"$instanceId-${gridEpoch.get()}-$date-${version(date)}\""
+
+    fun invalidateAll() {
+        gridEpoch.incrementAndGet()
+    }
+
+    /**
+     * Marks availability on [date] as changed without an appointment write, e.g. when a slot hold comes or goes.
+     */
+    fun bump(date: LocalDate) {
+        versions.merge(date, 1L) { current, increment -> current + increment }
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    fun onScheduleChanged(event: ScheduleChangedEvent) {
+        bump(event.date)
+    }
+}
@@ -0,0 +1,7 @@
+package io.salad109.medicalofficemanager.appointments.internal;
+
+public enum SeriesOccurrenceStatus {
+    BOOKED,
+    CONFLICT,
+    OUTSIDE_SCHEDULE
+}
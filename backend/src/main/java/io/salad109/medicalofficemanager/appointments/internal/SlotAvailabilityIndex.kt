@@ -0,0 +1,134 @@
+package io.salad109.medicalofficemanager.appointments.internal
+
+import org.slf4j.LoggerFactory
+import org.springframework.stereotype.Component
+import org.springframework.transaction.event.TransactionPhase
+import org.springframework.transaction.event.TransactionalEventListener
+import java.time.LocalDate
+import java.time.LocalTime
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * In-memory booked-slot bitmask per doctor and date. Misses are loaded with a projection-only query
+ * and committed schedule changes are applied to cached entries in place. Slots under a hold count as
+ * taken but are never cached as booked.
+ */
+@Component
+class SlotAvailabilityIndex(
+    private val appointmentRepository: AppointmentRepository,
+    private val doctorScheduleRegistry: DoctorScheduleRegistry,
+    private val slotHolds: SlotHolds
+) {
+    private val log = LoggerFactory.getLogger(SlotAvailabilityIndex::class.java)
+
+    private val bookedMasks = ConcurrentHashMap<DoctorDay, Long>()
+
+    // Bumped before every applied change so that a load racing with a commit is never cached.
+    // Kept per doctor so that bookings for different doctors do not invalidate each other's loads.
+    private val writeStamps = ConcurrentHashMap<Long, AtomicLong>()
+
+    companion object {
+        private const val CACHE_HORIZON_DAYS = 365L
+    }
+
+    fun availableSlots(date: LocalDate, doctorId: Long? = null): List<String> {
+        return doctorScheduleRegistry.freeSlots(date, doctorId) { takenMask(it, date) }
+    }
+
+    fun isFree(doctorId: Long, date: LocalDate, time: LocalTime): Boolean {
+        val bit = doctorScheduleRegistry.gridFor(doctorId, date)?.bitOf(time) ?: 0L
+        return bit != 0L && (takenMask(doctorId, date) and bit) == 0L
+    }
+
+    fun isBooked(doctorId: Long, date: LocalDate, time: LocalTime): Boolean {
+        val bit = doctorScheduleRegistry.gridFor(doctorId, date)?.bitOf(time) ?: 0L
+        return (bookedMask(doctorId, date) and bit) != 0L
+    }
+
+    /**
+     * Slots that are either booked or held.
+     */
+    fun takenMask(doctorId: Long, date: LocalDate): Long {
+        return bookedMask(doctorId, date) or slotHolds.heldMask(doctorId, date)
+    }
+
+    fun bookedMask(doctorId: Long, date: LocalDate): Long {
+        val key = DoctorDay(doctorId, date)
+        bookedMasks[key]?.let { return it }
+
+        val grid = doctorScheduleRegistry.gridFor(doctorId, date) ?: return 0L
+        val writeStamp = writeStampOf(doctorId)
+        val stamp = writeStamp.get()
+        val mask = appointmentRepository.findBookedTimesByDoctorAndDate(doctorId, date)
+            .fold(0L) { acc, time -> acc or grid.bitOf(time) }
+
+        if (isCacheable(date)) {
+            bookedMasks.compute(key) { _, current ->
+                current ?: mask.takeIf { writeStamp.get() == stamp }
+            }
+            log.debug("Loaded slot index for doctor {} on {}: {}", doctorId, date, java.lang.Long.toBinaryString(mask))
+        }
+        return mask
+    }
+
+    /**
+     * Loads every uncached mask between [from] and [to] with a single range query instead of one query per day.
+     */
+    fun warm(from: LocalDate, to: LocalDate) {
+        val missing = from.datesUntil(to.plusDays(1)).toList()
+            .filter { isCacheable(it) }
+            .flatMap { date -> doctorScheduleRegistry.doctorsWorkingOn(date).map { DoctorDay(it, date) } }
+            .filterNot { bookedMasks.containsKey(it) }
+        if (missing.isEmpty()) {
+            return
+        }
+
+        val stamps = missing.map { it.doctorId }.distinct().associateWith { writeStampOf(it).get() }
+        val masks = missing.associateWithTo(HashMap()) { 0L }
+        appointmentRepository.findBookedSlotsBetween(missing.first().date, missing.last().date).forEach { slot ->
+            val bit = doctorScheduleRegistry.gridFor(slot.doctorId, slot.date)?.bitOf(slot.time) ?: 0L
+            masks.computeIfPresent(DoctorDay(slot.doctorId, slot.date)) { _, mask -> mask or bit }
+        }
+
+        masks.forEach { (key, mask) ->
+            bookedMasks.compute(key) { _, current ->
+                current ?: mask.takeIf { writeStampOf(key.doctorId).get() == stamps[key.doctorId] }
+            }
+        }
+        log.debug("Warmed slot index from {} to {}: {} doctor days", missing.first().date, missing.last().date, masks.size)
+    }
+
+    /**
+     * Drops every cached mask of [doctorId], used after the doctor's slot grids were recompiled.
+     */
+    fun invalidate(doctorId: Long) {
+        writeStampOf(doctorId).incrementAndGet()
+        bookedMasks.keys.removeIf { it.doctorId == doctorId }
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    fun onScheduleChanged(event: ScheduleChangedEvent) {
+        val bit = doctorScheduleRegistry.gridFor(event.doctorId, event.date)?.bitOf(event.time) ?: 0L
+        val key = DoctorDay(event.doctorId, event.date)
+        writeStampOf(event.doctorId).incrementAndGet()
+        when (event.type) {
+            ScheduleChangeType.SLOT_BOOKED, ScheduleChangeType.STATUS_CHANGED ->
+                bookedMasks.computeIfPresent(key) { _, mask -> mask or bit }
+
+            ScheduleChangeType.SLOT_FREED ->
+                bookedMasks.computeIfPresent(key) { _, mask -> mask and bit.inv() }
+        }
+    }
+
+    private fun writeStampOf(doctorId: Long): AtomicLong {
+        return writeStamps.computeIfAbsent(doctorId) { AtomicLong() }
+    }
+
+    private fun isCacheable(date: LocalDate): Boolean {
+        val today = LocalDate.now()
+        return !date.isBefore(today) && !date.isAfter(today.plusDays(CACHE_HORIZON_DAYS))
+    }
+
+    private data class DoctorDay(val doctorId: Long, val date: LocalDate)
+}
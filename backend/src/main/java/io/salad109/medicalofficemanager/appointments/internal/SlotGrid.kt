@@ -0,0 +1,78 @@
+package io.salad109.medicalofficemanager.appointments.internal
+
+import java.time.Duration
+import java.time.LocalTime
+
+/**
+ * Immutable list of bookable slot start times. Slot `i` maps to bit `i` of a booked-slot mask.
+ */
+class SlotGrid(
+    val start: LocalTime,
+    val end: LocalTime,
+    val slotMinutes: Long
+) {
+    val times: List<LocalTime>
+    val labels: List<String>
+    val fullMask: Long
+
+    init {
+        require(start.isBefore(end)) { "Slot grid start must be before its end" }
+        require(slotMinutes > 0) { "Slot duration must be positive" }
+
+        val totalMinutes = Duration.between(start, end).toMinutes()
+        val slotCount = ((totalMinutes + slotMinutes - 1) / slotMinutes).toInt()
+        require(slotCount <= Long.SIZE_BITS) { "Slot grid cannot have more than ${Long.SIZE_BITS} slots" }
+
+        times = (0 until slotCount).map { start.plusMinutes(it * slotMinutes) }
+        labels = times.map { it.toString() }
+        fullMask = if (slotCount == Long.SIZE_BITS) -1L else (1L shl slotCount) - 1
+    }
+
+    /**
+     * Returns the slot index of [time], or -1 when it is outside the grid or not on a slot boundary.
+     */
+    fun indexOf(time: LocalTime): Int {
+        if (time.isBefore(start) || !time.isBefore(end)) {
+            return -1
+        }
+
+        val secondsSinceStart = Duration.between(start, time).seconds
+        if (time.nano != 0 || secondsSinceStart % (slotMinutes * 60) != 0L) {
+            return -1
+        }
+        return (secondsSinceStart / (slotMinutes * 60)).toInt()
+    }
+
+    fun bitOf(time: LocalTime): Long {
+        val index = indexOf(time)
+        return if (index < 0) 0L else 1L shl index
+    }
+
+    /**
+     * Mask of the slots starting at or after [from] and before [until]; a null bound is open.
+     */
+    fun maskBetween(from: LocalTime?, until: LocalTime?): Long {
+        var mask = 0L
+        times.forEachIndexed { index, time ->
+            if ((from == null || !time.isBefore(from)) && (until == null || time.isBefore(until))) {
+                mask = mask or (1L shl index)
+            }
+        }
+        return mask
+    }
+
+    fun labelsOf(mask: Long): List<String> = select(mask, labels)
+
+    fun timesOf(mask: Long): List<LocalTime> = select(mask, times)
+
+    private fun <T> select(mask: Long, values: List<T>): List<T> {
+        val result = ArrayList<T>(java.lang.Long.bitCount(mask and fullMask))
+        var remaining = mask and fullMask
+        while (remaining != 0L) {
+            val index = java.lang.Long.numberOfTrailingZeros(remaining)
+            result.add(values[index])
+            remaining = remaining and (remaining - 1)
+        }
+        return result
+    }
+}
@@ -0,0 +1,17 @@
+package io.salad109.medicalofficemanager.appointments.internal
+
+import java.time.Instant
+import java.time.LocalDate
+import java.time.LocalTime
+
+class SlotHold(
+    val id: String,
+    val patientId: Long,
+    val doctorId: Long,
+    val date: LocalDate,
+    val time: LocalTime,
+    val expiresAt: Instant
+) {
+    // Wheel bucket the hold sits in, guarded by the owning SlotHolds' lock
+    internal var bucket: Int = 0
+}
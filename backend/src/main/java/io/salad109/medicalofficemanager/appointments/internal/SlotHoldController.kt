@@ -0,0 +1,39 @@
+package io.salad109.medicalofficemanager.appointments.internal
+
+import io.salad109.medicalofficemanager.appointments.internal.dto.HoldSlotRequest
+import io.salad109.medicalofficemanager.appointments.internal.dto.SlotHoldResponse
+import io.salad109.medicalofficemanager.users.CustomUserDetails
+import jakarta.validation.Valid
+import org.springframework.http.HttpStatus
+import org.springframework.http.ResponseEntity
+import org.springframework.security.access.prepost.PreAuthorize
+import org.springframework.security.core.annotation.AuthenticationPrincipal
+import org.springframework.web.bind.annotation.*
+
+@RestController
+@RequestMapping("/api/appointments/holds")
+class SlotHoldController(
+    private val appointmentService: AppointmentService
+) {
+
+    @PostMapping
+    @PreAuthorize("hasRole('RECEPTIONIST') or (hasRole('PATIENT') and #request.patientId == authentication.principal.userId)")
+    fun holdSlot(@Valid @RequestBody request: HoldSlotRequest): ResponseEntity<SlotHoldResponse> {
+        val hold = appointmentService.holdSlot(request)
+        return ResponseEntity.status(HttpStatus.CREATED).body(hold)
+    }
+
+    @DeleteMapping("/{id}")
+    @PreAuthorize("hasRole('RECEPTIONIST') or hasRole('PATIENT')")
+    fun releaseHold(
+        @PathVariable id: String,
+        @AuthenticationPrincipal principal: CustomUserDetails
+    ): ResponseEntity<Unit> {
+        appointmentService.releaseHold(
+            holdId = id,
+            currentUserId = principal.userId,
+            currentUserRole = principal.role
+        )
+        return ResponseEntity.noContent().build()
+    }
+}
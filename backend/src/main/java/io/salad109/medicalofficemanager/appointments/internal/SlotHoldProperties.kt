@@ -0,0 +1,11 @@
+package io.salad109.medicalofficemanager.appointments.internal
+
+import org.springframework.boot.context.properties.ConfigurationProperties
+import org.springframework.context.annotation.Configuration
+import java.time.Duration
+
+@Configuration
+@ConfigurationProperties(prefix = "appointments.slot-holds")
+class SlotHoldProperties {
+    var ttl: Duration = Duration.ofMinutes(2)
+}
@@ -0,0 +1,179 @@
+package io.salad109.medicalofficemanager.appointments.internal
+
+import io.micrometer.core.instrument.Counter
+import io.micrometer.core.instrument.Gauge
+import io.micrometer.core.instrument.MeterRegistry
+import org.slf4j.LoggerFactory
+import org.springframework.scheduling.annotation.Scheduled
+import org.springframework.stereotype.Component
+import org.springframework.transaction.event.TransactionPhase
+import org.springframework.transaction.event.TransactionalEventListener
+import java.time.Instant
+import java.time.LocalDate
+import java.time.LocalTime
+import java.util.UUID
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.locks.ReentrantLock
+import kotlin.concurrent.withLock
+
+/**
+ * Short-lived in-memory reservations of single slots, expired by a hashed timing wheel ticking once a
+ * second. Holds never touch the database: a booking of the held slot consumes the hold after commit and
+ * an expiry simply forgets it. Every change bumps the date's schedule version so cached availability
+ * is revalidated.
+ */
+@Component
+class SlotHolds(
+    private val doctorScheduleRegistry: DoctorScheduleRegistry,
+    private val scheduleVersions: ScheduleVersions,
+    private val slotHoldProperties: SlotHoldProperties,
+    private val meterRegistry: MeterRegistry
+) {
+    private val log = LoggerFactory.getLogger(SlotHolds::class.java)
+
+    // Read without the lock on every availability query; the per-day maps are replaced, never mutated
+    private val holdsByDay = ConcurrentHashMap<DoctorDay, Map<LocalTime, SlotHold>>()
+    private val holdsById = ConcurrentHashMap<String, SlotHold>()
+
+    // Guarded by the lock
+    private val holdsByPatient = HashMap<Long, SlotHold>()
+    private val wheel = Array(WHEEL_SIZE) { HashSet<SlotHold>() }
+    private var lastTick = tickOf(System.currentTimeMillis())
+    private val lock = ReentrantLock()
+
+    companion object {
+        private const val TICK_MILLIS = 1000L
+        private const val WHEEL_SIZE = 512
+
+        private fun tickOf(millis: Long): Long = millis / TICK_MILLIS
+    }
+
+    init {
+        Gauge.builder("slot.holds.active", holdsById) { it.size.toDouble() }
+            .description("Slot holds currently reserved")
+            .register(meterRegistry)
+    }
+
+    /**
+     * Reserves the slot for [patientId], replacing the patient's previous hold. Returns null when somebody
+     * else already holds it.
+     */
+    fun tryHold(patientId: Long, doctorId: Long, date: LocalDate, time: LocalTime): SlotHold? {
+        val now = System.currentTimeMillis()
+        val expiresAt = now + slotHoldProperties.ttl.toMillis()
+        val hold = SlotHold(UUID.randomUUID().toString(), patientId, doctorId, date, time, Instant.ofEpochMilli(expiresAt))
+
+        val replaced = lock.withLock {
+            val current = holdsByDay[DoctorDay(doctorId, date)]?.get(time)
+            if (current != null && current.patientId != patientId) {
+                outcomes("contended").increment()
+                return null
+            }
+
+            val previous = holdsByPatient[patientId]?.also { remove(it) }
+            add(hold, maxOf(tickOf(expiresAt + TICK_MILLIS - 1), lastTick + 1))
+            previous
+        }
+
+        outcomes("acquired").increment()
+        replaced?.let { scheduleVersions.bump(it.date) }
+        scheduleVersions.bump(date)
+        log.debug("Slot {} on {} held for patient {} until {}", time, date, patientId, hold.expiresAt)
+        return hold
+    }
+
+    fun find(holdId: String): SlotHold? {
+        return holdsById[holdId]?.takeIf { it.expiresAt.toEpochMilli() > System.currentTimeMillis() }
+    }
+
+    fun heldBy(doctorId: Long, date: LocalDate, time: LocalTime): SlotHold? {
+        return holdsByDay[DoctorDay(doctorId, date)]?.get(time)
+    }
+
+    fun heldMask(doctorId: Long, date: LocalDate): Long {
+        val held = holdsByDay[DoctorDay(doctorId, date)] ?: return 0L
+        val grid = doctorScheduleRegistry.gridFor(doctorId, date) ?: return 0L
+        return held.keys.fold(0L) { acc, time -> acc or grid.bitOf(time) }
+    }
+
+    fun release(holdId: String): SlotHold? {
+        val hold = lock.withLock { holdsById[holdId]?.also { remove(it) } } ?: return null
+        outcomes("released").increment()
+        scheduleVersions.bump(hold.date)
+        return hold
+    }
+
+    @Scheduled(fixedDelay = TICK_MILLIS)
+    fun tick() {
+        expireUntil(System.currentTimeMillis())
+    }
+
+    /**
+     * Advances the wheel to [nowMillis], visiting each bucket passed since the last tick at most once.
+     * Holds placed a full lap ahead stay in their bucket until their own expiry comes around.
+     */
+    fun expireUntil(nowMillis: Long) {
+        val expired = ArrayList<SlotHold>()
+        lock.withLock {
+            val target = tickOf(nowMillis)
+            val first = maxOf(lastTick + 1, target - WHEEL_SIZE + 1)
+            for (tick in first..target) {
+                wheel[Math.floorMod(tick, WHEEL_SIZE)]
+                    .filter { it.expiresAt.toEpochMilli() <= nowMillis }
+                    .forEach {
+                        remove(it)
+                        expired.add(it)
+                    }
+            }
+            lastTick = maxOf(lastTick, target)
+        }
+
+        if (expired.isNotEmpty()) {
+            outcomes("expired").increment(expired.size.toDouble())
+            expired.mapTo(HashSet()) { it.date }.forEach { scheduleVersions.bump(it) }
+            log.debug("Expired {} slot holds", expired.size)
+        }
+    }
+
+    /**
+     * A committed booking of a held slot consumes the hold, whoever booked it.
+     */
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    fun onScheduleChanged(event: ScheduleChangedEvent) {
+        if (event.type != ScheduleChangeType.SLOT_BOOKED) {
+            return
+        }
+        val confirmed = lock.withLock {
+            holdsByDay[DoctorDay(event.doctorId, event.date)]?.get(event.time)?.also { remove(it) }
+        }
+        if (confirmed != null) {
+            outcomes("confirmed").increment()
+        }
+    }
+
+    private fun add(hold: SlotHold, expiryTick: Long) {
+        hold.bucket = Math.floorMod(expiryTick, WHEEL_SIZE)
+        wheel[hold.bucket].add(hold)
+        holdsById[hold.id] = hold
+        holdsByPatient[hold.patientId] = hold
+        holdsByDay.compute(DoctorDay(hold.doctorId, hold.date)) { _, held -> held.orEmpty() + (hold.time to hold) }
+    }
+
+    private fun remove(hold: SlotHold) {
+        wheel[hold.bucket].remove(hold)
+        holdsById.remove(hold.id)
+        holdsByPatient.remove(hold.patientId, hold)
+        holdsByDay.computeIfPresent(DoctorDay(hold.doctorId, hold.date)) { _, held ->
+            (held - hold.time).takeIf { it.isNotEmpty() }
+        }
+    }
+
+    private fun outcomes(outcome: String): Counter {
+        return Counter.builder("slot.holds")
+            .description("Slot hold requests and how each hold ended")
+            .tag("outcome", outcome)
+            .register(meterRegistry)
+    }
+
+    private data class DoctorDay(val doctorId: Long, val date: LocalDate)
+}
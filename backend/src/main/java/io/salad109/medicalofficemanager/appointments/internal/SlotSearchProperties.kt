@@ -0,0 +1,11 @@
+package io.salad109.medicalofficemanager.appointments.internal
+
+import org.springframework.boot.context.properties.ConfigurationProperties
+import org.springframework.context.annotation.Configuration
+
+@Configuration
+@ConfigurationProperties(prefix = "appointments.slot-search")
+class SlotSearchProperties {
+    var horizonDays: Long = 90
+    var maxResults: Int = 50
+}
@@ -0,0 +1,80 @@
+package io.salad109.medicalofficemanager.appointments.internal
+
+import io.salad109.medicalofficemanager.appointments.internal.dto.AvailableSlotResponse
+import org.slf4j.LoggerFactory
+import org.springframework.stereotype.Service
+import java.time.DayOfWeek
+import java.time.LocalDate
+import java.time.LocalTime
+import java.util.TreeMap
+
+/**
+ * Finds the earliest free slots within the booking horizon by scanning the in-memory booked and held
+ * masks day by day, so a search never issues more than one range query per warmed chunk.
+ */
+@Service
+class SlotSearchService(
+    private val slotAvailabilityIndex: SlotAvailabilityIndex,
+    private val doctorScheduleRegistry: DoctorScheduleRegistry,
+    private val slotSearchProperties: SlotSearchProperties
+) {
+    private val log = LoggerFactory.getLogger(SlotSearchService::class.java)
+
+    companion object {
+        private const val WARM_CHUNK_DAYS = 14L
+    }
+
+    fun findEarliestSlots(
+        from: LocalDate?,
+        weekdays: Set<DayOfWeek>?,
+        after: LocalTime?,
+        before: LocalTime?,
+        doctorId: Long?,
+        limit: Int
+    ): List<AvailableSlotResponse> {
+        if (after != null && before != null && !after.isBefore(before)) {
+            throw IllegalArgumentException("Time window start must be before its end")
+        }
+
+        val today = LocalDate.now()
+        val start = if (from == null || from.isBefore(today)) today else from
+        val end = today.plusDays(slotSearchProperties.horizonDays - 1)
+        val maxResults = limit.coerceIn(1, slotSearchProperties.maxResults)
+        val days = weekdays?.takeIf { it.isNotEmpty() } ?: DayOfWeek.entries.toSet()
+
+        val results = ArrayList<AvailableSlotResponse>(maxResults)
+        var chunkStart = start
+        while (!chunkStart.isAfter(end) && results.size < maxResults) {
+            val chunkEnd = minOf(chunkStart.plusDays(WARM_CHUNK_DAYS - 1), end)
+            slotAvailabilityIndex.warm(chunkStart, chunkEnd)
+
+            for (date in chunkStart.datesUntil(chunkEnd.plusDays(1)).toList()) {
+                if (date.dayOfWeek !in days) continue
+                // Slots that already started today cannot be booked
+                val earliest = if (date == today) maxOf(after ?: LocalTime.MIN, LocalTime.now()) else after
+                freeSlotsOn(date, earliest, before, doctorId).forEach { (time, id) ->
+                    if (results.size < maxResults) results.add(AvailableSlotResponse(date, time, id))
+                }
+                if (results.size == maxResults) break
+            }
+            chunkStart = chunkEnd.plusDays(1)
+        }
+
+        log.debug("Found {} free slots from {} within {} days", results.size, start, slotSearchProperties.horizonDays)
+        return results
+    }
+
+    /**
+     * Free slot times on [date] within the window, each mapped to the first doctor who has it free.
+     */
+    private fun freeSlotsOn(date: LocalDate, after: LocalTime?, before: LocalTime?, doctorId: Long?): Map<LocalTime, Long> {
+        val doctors = doctorId?.let { listOf(it) } ?: doctorScheduleRegistry.doctorsWorkingOn(date)
+        val firstFreeDoctor = TreeMap<LocalTime, Long>()
+        for (id in doctors) {
+            val grid = doctorScheduleRegistry.gridFor(id, date) ?: continue
+            val free = grid.maskBetween(after, before) and slotAvailabilityIndex.takenMask(id, date).inv()
+            grid.timesOf(free).forEach { firstFreeDoctor.putIfAbsent(it, id) }
+        }
+        return firstFreeDoctor
+    }
+}
@@ -0,0 +1,7 @@
+package io.salad109.medicalofficemanager.appointments.internal
+
+import java.time.LocalDate
+
+data class WaitlistChangedEvent(
+    val date: LocalDate
+)
@@ -0,0 +1,50 @@
+package io.salad109.medicalofficemanager.appointments.internal
+
+import io.salad109.medicalofficemanager.appointments.internal.dto.JoinWaitlistRequest
+import io.salad109.medicalofficemanager.appointments.internal.dto.WaitlistEntryResponse
+import io.salad109.medicalofficemanager.users.CustomUserDetails
+import jakarta.validation.Valid
+import org.springframework.format.annotation.DateTimeFormat
+import org.springframework.http.HttpStatus
+import org.springframework.http.ResponseEntity
+import org.springframework.security.access.prepost.PreAuthorize
+import org.springframework.security.core.annotation.AuthenticationPrincipal
+import org.springframework.web.bind.annotation.*
+import java.time.LocalDate
+
+@RestController
+@RequestMapping("/api/appointments/waitlist")
+class WaitlistController(
+    private val waitlistService: WaitlistService
+) {
+
+    @GetMapping
+    @PreAuthorize("hasRole('RECEPTIONIST')")
+    fun getWaitlist(
+        @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) date: LocalDate
+    ): ResponseEntity<List<WaitlistEntryResponse>> {
+        val entries = waitlistService.getWaitlist(date)
+        return ResponseEntity.ok(entries)
+    }
+
+    @PostMapping
+    @PreAuthorize("hasRole('RECEPTIONIST') or (hasRole('PATIENT') and #request.patientId == authentication.principal.userId)")
+    fun joinWaitlist(@Valid @RequestBody request: JoinWaitlistRequest): ResponseEntity<WaitlistEntryResponse> {
+        val entry = waitlistService.joinWaitlist(request)
+        return ResponseEntity.status(HttpStatus.CREATED).body(entry)
+    }
+
+    @DeleteMapping("/{id}")
+    @PreAuthorize("hasRole('RECEPTIONIST') or hasRole('PATIENT')")
+    fun leaveWaitlist(
+        @PathVariable id: Long,
+        @AuthenticationPrincipal principal: CustomUserDetails
+    ): ResponseEntity<Unit> {
+        waitlistService.leaveWaitlist(
+            entryId = id,
+            currentUserId = principal.userId,
+            currentUserRole = principal.role
+        )
+        return ResponseEntity.noContent().build()
+    }
+}
@@ -0,0 +1,37 @@
+package io.salad109.medicalofficemanager.appointments.internal
+
+import jakarta.persistence.*
+import jakarta.validation.constraints.NotNull
+import java.time.LocalDate
+import java.time.LocalDateTime
+import java.time.LocalTime
+
+@Entity
+@Table(name = "waitlist_entries")
+class WaitlistEntry(
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    var id: Long? = null,
+
+    @field:NotNull
+    @Column(name = "patient_id")
+    var patientId: Long,
+
+    @Column(name = "doctor_id")
+    var doctorId: Long? = null,
+
+    @field:NotNull
+    @Column(name = "desired_date")
+    var desiredDate: LocalDate,
+
+    @field:NotNull
+    @Column(name = "window_start")
+    var windowStart: LocalTime,
+
+    @field:NotNull
+    @Column(name = "window_end")
+    var windowEnd: LocalTime,
+
+    @Column(name = "created_at", insertable = false, updatable = false)
+    var createdAt: LocalDateTime? = null
+)
@@ -0,0 +1,52 @@
+package io.salad109.medicalofficemanager.appointments.internal
+
+import io.salad109.medicalofficemanager.appointments.internal.dto.WaitlistEntryResponse
+import org.springframework.stereotype.Component
+import org.springframework.transaction.event.TransactionPhase
+import org.springframework.transaction.event.TransactionalEventListener
+import java.time.LocalDate
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.ConcurrentLinkedQueue
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * In-memory FIFO of waitlist entries per date, loaded from the table on first use. Joins and leaves
+ * evict the date after commit; assigned entries are popped in place.
+ */
+@Component
+class WaitlistQueues(
+    private val waitlistRepository: WaitlistRepository
+) {
+    private val queues = ConcurrentHashMap<LocalDate, ConcurrentLinkedQueue<WaitlistEntryResponse>>()
+
+    // Same guard as the slot index: a load racing with an eviction is never cached
+    private val writeStamp = AtomicLong()
+
+    fun entries(date: LocalDate): Collection<WaitlistEntryResponse> {
+        queues[date]?.let { return it }
+
+        val stamp = writeStamp.get()
+        val loaded = ConcurrentLinkedQueue(waitlistRepository.findQueueByDate(date))
+        if (date.isBefore(LocalDate.now())) {
+            return loaded
+        }
+        return queues.compute(date) { _, current ->
+            current ?: loaded.takeIf { writeStamp.get() == stamp }
+        } ?: loaded
+    }
+
+    fun remove(date: LocalDate, entryId: Long) {
+        queues[date]?.removeIf { it.id == entryId }
+    }
+
+    fun evictBefore(date: LocalDate) {
+        writeStamp.incrementAndGet()
+        queues.keys.removeIf { it.isBefore(date) }
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    fun onWaitlistChanged(event: WaitlistChangedEvent) {
+        writeStamp.incrementAndGet()
+        queues.remove(event.date)
+    }
+}
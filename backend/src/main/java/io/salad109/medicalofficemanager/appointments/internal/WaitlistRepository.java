@@ -0,0 +1,29 @@
+package io.salad109.medicalofficemanager.appointments.internal;
+
+import io.salad109.medicalofficemanager.appointments.internal.dto.WaitlistEntryResponse;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDate;
+import java.util.List;
+
+@Repository
+public interface WaitlistRepository extends JpaRepository<WaitlistEntry, Long> {
+    @Query("SELECT new io.salad109.medicalofficemanager.appointments.internal.dto.WaitlistEntryResponse(" +
+            "w.id, w.patientId, w.doctorId, w.desiredDate, w.windowStart, w.windowEnd) " +
+            "FROM WaitlistEntry w " +
+            "WHERE w.desiredDate = :date " +
+            "ORDER BY w.id ASC")
+    List<WaitlistEntryResponse> findQueueByDate(@Param("date") LocalDate date);
+
+    @Modifying
+    @Query("DELETE FROM WaitlistEntry w WHERE w.id = :id")
+    int deleteEntry(@Param("id") Long id);
+
+    @Modifying
+    @Query("DELETE FROM WaitlistEntry w WHERE w.desiredDate < :date")
+    int deleteByDesiredDateBefore(@Param("date") LocalDate date);
+}
@@ -0,0 +1,186 @@
+package io.salad109.medicalofficemanager.appointments.internal
+
+import io.salad109.medicalofficemanager.appointments.AppointmentActivity
+import io.salad109.medicalofficemanager.appointments.AppointmentActivityEvent
+import io.salad109.medicalofficemanager.appointments.internal.dto.JoinWaitlistRequest
+import io.salad109.medicalofficemanager.appointments.internal.dto.WaitlistEntryResponse
+import io.salad109.medicalofficemanager.exception.InvalidTimeSlotException
+import io.salad109.medicalofficemanager.exception.ResourceNotFoundException
+import io.salad109.medicalofficemanager.users.Role
+import io.salad109.medicalofficemanager.users.UserManagement
+import jakarta.validation.ValidationException
+import org.slf4j.LoggerFactory
+import org.springframework.context.ApplicationEventPublisher
+import org.springframework.core.Ordered
+import org.springframework.core.annotation.Order
+import org.springframework.dao.DataIntegrityViolationException
+import org.springframework.scheduling.annotation.Scheduled
+import org.springframework.security.access.AccessDeniedException
+import org.springframework.stereotype.Service
+import org.springframework.transaction.PlatformTransactionManager
+import org.springframework.transaction.TransactionDefinition
+import org.springframework.transaction.annotation.Transactional
+import org.springframework.transaction.event.TransactionPhase
+import org.springframework.transaction.event.TransactionalEventListener
+import org.springframework.transaction.support.TransactionTemplate
+import java.time.LocalDate
+import java.time.LocalDateTime
+import java.time.LocalTime
+
+@Service
+class WaitlistService(
+    private val waitlistRepository: WaitlistRepository,
+    private val waitlistQueues: WaitlistQueues,
+    private val appointmentRepository: AppointmentRepository,
+    private val doctorScheduleRegistry: DoctorScheduleRegistry,
+    private val userManagement: UserManagement,
+    private val applicationEventPublisher: ApplicationEventPublisher,
+    transactionManager: PlatformTransactionManager
+) {
+    private val log = LoggerFactory.getLogger(WaitlistService::class.java)
+
+    // Backfill runs after the cancelling transaction has committed, so it needs one of its own
+    private val backfillTransaction = TransactionTemplate(transactionManager).apply {
+        propagationBehavior = TransactionDefinition.PROPAGATION_REQUIRES_NEW
+    }
+
+    fun getWaitlist(date: LocalDate): List<WaitlistEntryResponse> {
+        return waitlistQueues.entries(date).toList()
+            .also { log.debug("Fetched {} waitlist entries for {}", it.size, date) }
+    }
+
+    @Transactional
+    fun joinWaitlist(request: JoinWaitlistRequest): WaitlistEntryResponse {
+        userManagement.validatePatient(request.patientId)
+        request.doctorId?.let { userManagement.validateDoctor(it) }
+
+        if (request.date.isBefore(LocalDate.now())) {
+            throw InvalidTimeSlotException("Cannot join the waitlist for a past date")
+        }
+        if (!request.windowStart.isBefore(request.windowEnd)) {
+            throw ValidationException("Waitlist window start must be before its end")
+        }
+
+        val savedEntry = waitlistRepository.save(
+            WaitlistEntry(
+                patientId = request.patientId,
+                doctorId = request.doctorId,
+                desiredDate = request.date,
+                windowStart = request.windowStart,
+                windowEnd = request.windowEnd
+            )
+        )
+        applicationEventPublisher.publishEvent(WaitlistChangedEvent(savedEntry.desiredDate))
+        log.info("Patient ${request.patientId} joined the waitlist for ${request.date} ${request.windowStart}-${request.windowEnd}")
+
+        return WaitlistEntryResponse(
+            savedEntry.id,
+            savedEntry.patientId,
+            savedEntry.doctorId,
+            savedEntry.desiredDate,
+            savedEntry.windowStart,
+            savedEntry.windowEnd
+        )
+    }
+
+    @Transactional
+    fun leaveWaitlist(entryId: Long, currentUserId: Long, currentUserRole: Role) {
+        val entry = waitlistRepository.findById(entryId)
+            .orElseThrow { ResourceNotFoundException("Waitlist entry not found with ID: $entryId") }
+
+        if (currentUserRole != Role.RECEPTIONIST && entry.patientId != currentUserId) {
+            throw AccessDeniedException("Patients can only leave their own waitlist entries")
+        }
+
+        waitlistRepository.delete(entry)
+        applicationEventPublisher.publishEvent(WaitlistChangedEvent(entry.desiredDate))
+        log.info("Waitlist entry removed: ID=$entryId by user $currentUserId")
+    }
+
+    /**
+     * Books the first eligible waitlisted patient into a freed slot. Runs after every other listener so
+     * the freed slot is fully applied before the new booking is.
+     */
+    @Order(Ordered.LOWEST_PRECEDENCE)
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    fun onScheduleChanged(event: ScheduleChangedEvent) {
+        if (event.type != ScheduleChangeType.SLOT_FREED || !isBookable(event.doctorId, event.date, event.time)) {
+            return
+        }
+
+        for (entry in waitlistQueues.entries(event.date)) {
+            if (!entry.accepts(event.doctorId, event.time)) {
+                continue
+            }
+
+            try {
+                val appointment = backfillTransaction.execute { status ->
+                    // Claiming the entry first means a patient who just left is never booked
+                    if (waitlistRepository.deleteEntry(entry.id) == 0) {
+                        status.setRollbackOnly()
+                        null
+                    } else {
+                        assign(entry, event)
+                    }
+                }
+                waitlistQueues.remove(event.date, entry.id)
+
+                if (appointment != null) {
+                    log.info("Freed slot ${event.time} on ${event.date} assigned to waitlisted patient ${entry.patientId}: ID=${appointment.id}")
+                    return
+                }
+            } catch (ex: DataIntegrityViolationException) {
+                if (ex.isDuplicateKey()) {
+                    log.info("Freed slot ${event.time} on ${event.date} was rebooked before the waitlist got it")
+                    return
+                }
+                waitlistQueues.remove(event.date, entry.id)
+                log.warn("Skipping waitlist entry ${entry.id}: ${ex.mostSpecificCause.message}")
+            }
+        }
+    }
+
+    @Scheduled(cron = "0 5 0 * * *")
+    @Transactional
+    fun purgePastEntries() {
+        val today = LocalDate.now()
+        val purged = waitlistRepository.deleteByDesiredDateBefore(today)
+        waitlistQueues.evictBefore(today)
+        log.info("Purged {} expired waitlist entries", purged)
+    }
+
+    private fun assign(entry: WaitlistEntryResponse, event: ScheduleChangedEvent): Appointment {
+        val appointment = appointmentRepository.saveAndFlush(
+            Appointment(
+                patientId = entry.patientId,
+                doctorId = event.doctorId,
+                appointmentDate = event.date,
+                appointmentTime = event.time,
+                status = AppointmentStatus.SCHEDULED
+            )
+        )
+        applicationEventPublisher.publishEvent(
+            ScheduleChangedEvent(
+                type = ScheduleChangeType.SLOT_BOOKED,
+                appointmentId = appointment.id!!,
+                doctorId = appointment.doctorId,
+                date = appointment.appointmentDate,
+                time = appointment.appointmentTime,
+                status = appointment.status
+            )
+        )
+        applicationEventPublisher.publishEvent(
+            AppointmentActivityEvent(AppointmentActivity.BOOKED, appointment.id!!, appointment.doctorId, appointment.appointmentDate)
+        )
+        return appointment
+    }
+
+    private fun isBookable(doctorId: Long, date: LocalDate, time: LocalTime): Boolean {
+        val grid = doctorScheduleRegistry.gridFor(doctorId, date)
+        return grid != null && grid.indexOf(time) >= 0 && LocalDateTime.of(date, time).isAfter(LocalDateTime.now())
+    }
+
+    private fun WaitlistEntryResponse.accepts(freedDoctorId: Long, time: LocalTime): Boolean {
+        return (doctorId == null || doctorId == freedDoctorId) && !time.isBefore(windowStart) && time.isBefore(windowEnd)
+    }
+}
@@ -0,0 +1,9 @@
+package io.salad109.medicalofficemanager.appointments.internal.dto;
+
+import java.util.List;
+
+public record AppointmentPageResponse(
+        List<AppointmentWithDetailsResponse> items,
+        String nextCursor
+) {
+}
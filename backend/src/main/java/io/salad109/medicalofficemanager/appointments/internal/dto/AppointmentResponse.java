@@ -8,6 +8,7 @@ import java.time.LocalTime;
 public record AppointmentResponse(
         Long id,
         Long patientId,
+        Long doctorId,
         LocalDate date,
         LocalTime time,
         AppointmentStatus status
@@ -0,0 +1,10 @@
+package io.salad109.medicalofficemanager.appointments.internal.dto;
+
+import java.util.List;
+
+public record AppointmentSeriesResponse(
+        int booked,
+        int conflicted,
+        List<SeriesOccurrenceResponse> occurrences
+) {
+}
@@ -0,0 +1,12 @@
+package io.salad109.medicalofficemanager.appointments.internal.dto;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+
+public record AppointmentSlot(
+        Long id,
+        Long doctorId,
+        LocalDate date,
+        LocalTime time
+) {
+}
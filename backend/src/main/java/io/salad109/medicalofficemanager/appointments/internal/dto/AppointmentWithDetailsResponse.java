@@ -13,6 +13,7 @@ public record AppointmentWithDetailsResponse(
         String patientPhoneNumber,
         LocalDate date,
         LocalTime time,
-        AppointmentStatus status
+        AppointmentStatus status,
+        Long doctorId
 ) {
 }
@@ -0,0 +1,11 @@
+package io.salad109.medicalofficemanager.appointments.internal.dto;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+
+public record AvailableSlotResponse(
+        LocalDate date,
+        LocalTime time,
+        Long doctorId
+) {
+}
@@ -13,6 +13,12 @@ public record BookAppointmentRequest(
         LocalDate date,
 
         @NotNull(message = "Appointment time is required")
-        LocalTime time
+        LocalTime time,
+
+        // Any doctor with the slot free when omitted
+        Long doctorId,
+
+        // Hold taken on this slot beforehand, if any
+        String holdId
 ) {
 }
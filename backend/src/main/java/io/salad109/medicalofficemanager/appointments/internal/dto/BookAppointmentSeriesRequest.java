@@ -0,0 +1,31 @@
+package io.salad109.medicalofficemanager.appointments.internal.dto;
+
+import io.salad109.medicalofficemanager.appointments.internal.RecurrenceFrequency;
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.NotNull;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+
+public record BookAppointmentSeriesRequest(
+        @NotNull(message = "Patient ID is required")
+        Long patientId,
+
+        @NotNull(message = "Doctor ID is required")
+        Long doctorId,
+
+        @NotNull(message = "Start date is required")
+        LocalDate startDate,
+
+        @NotNull(message = "Appointment time is required")
+        LocalTime time,
+
+        @NotNull(message = "Recurrence frequency is required")
+        RecurrenceFrequency frequency,
+
+        @Min(value = 1, message = "Series must have at least one occurrence")
+        @Max(value = 52, message = "Series cannot have more than 52 occurrences")
+        int occurrences
+) {
+}
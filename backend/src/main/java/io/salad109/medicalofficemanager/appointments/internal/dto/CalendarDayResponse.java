@@ -0,0 +1,11 @@
+package io.salad109.medicalofficemanager.appointments.internal.dto;
+
+import java.time.LocalDate;
+import java.util.List;
+
+public record CalendarDayResponse(
+        LocalDate date,
+        List<String> availableSlots,
+        List<AppointmentWithDetailsResponse> appointments
+) {
+}
@@ -0,0 +1,24 @@
+package io.salad109.medicalofficemanager.appointments.internal.dto;
+
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.NotNull;
+
+import java.time.DayOfWeek;
+import java.time.LocalTime;
+
+public record DoctorScheduleDayRequest(
+        @NotNull(message = "Day of week is required")
+        DayOfWeek dayOfWeek,
+
+        @NotNull(message = "Start time is required")
+        LocalTime startTime,
+
+        @NotNull(message = "End time is required")
+        LocalTime endTime,
+
+        @Min(value = 5, message = "Slots must be at least 5 minutes long")
+        @Max(value = 240, message = "Slots cannot be longer than 240 minutes")
+        int slotMinutes
+) {
+}
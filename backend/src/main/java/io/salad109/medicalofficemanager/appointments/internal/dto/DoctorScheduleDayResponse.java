@@ -0,0 +1,12 @@
+package io.salad109.medicalofficemanager.appointments.internal.dto;
+
+import java.time.DayOfWeek;
+import java.time.LocalTime;
+
+public record DoctorScheduleDayResponse(
+        DayOfWeek dayOfWeek,
+        LocalTime startTime,
+        LocalTime endTime,
+        int slotMinutes
+) {
+}
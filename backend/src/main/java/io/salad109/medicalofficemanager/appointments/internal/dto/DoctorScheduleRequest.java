@@ -0,0 +1,14 @@
+package io.salad109.medicalofficemanager.appointments.internal.dto;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Size;
+
+import java.util.List;
+
+public record DoctorScheduleRequest(
+        @NotNull(message = "Schedule days are required")
+        @Size(max = 7, message = "Schedule cannot have more than 7 days")
+        List<@Valid DoctorScheduleDayRequest> days
+) {
+}
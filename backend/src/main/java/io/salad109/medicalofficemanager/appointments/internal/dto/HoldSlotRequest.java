@@ -0,0 +1,21 @@
+package io.salad109.medicalofficemanager.appointments.internal.dto;
+
+import jakarta.validation.constraints.NotNull;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+
+public record HoldSlotRequest(
+        @NotNull(message = "Patient ID is required")
+        Long patientId,
+
+        @NotNull(message = "Date is required")
+        LocalDate date,
+
+        @NotNull(message = "Time is required")
+        LocalTime time,
+
+        // Any doctor with the slot free when omitted
+        Long doctorId
+) {
+}
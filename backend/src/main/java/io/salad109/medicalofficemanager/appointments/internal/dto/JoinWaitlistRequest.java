@@ -0,0 +1,24 @@
+package io.salad109.medicalofficemanager.appointments.internal.dto;
+
+import jakarta.validation.constraints.NotNull;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+
+public record JoinWaitlistRequest(
+        @NotNull(message = "Patient ID is required")
+        Long patientId,
+
+        @NotNull(message = "Date is required")
+        LocalDate date,
+
+        @NotNull(message = "Window start is required")
+        LocalTime windowStart,
+
+        @NotNull(message = "Window end is required")
+        LocalTime windowEnd,
+
+        // Any doctor when omitted
+        Long doctorId
+) {
+}
@@ -0,0 +1,7 @@
+package io.salad109.medicalofficemanager.appointments.internal.dto;
+
+public record NoShowSweepResponse(
+        int transitioned,
+        long durationMs
+) {
+}
@@ -0,0 +1,18 @@
+package io.salad109.medicalofficemanager.appointments.internal.dto;
+
+import jakarta.validation.constraints.NotNull;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+
+public record RescheduleAppointmentRequest(
+        @NotNull(message = "Appointment date is required")
+        LocalDate date,
+
+        @NotNull(message = "Appointment time is required")
+        LocalTime time,
+
+        // The appointment's current doctor when omitted
+        Long doctorId
+) {
+}
@@ -0,0 +1,17 @@
+package io.salad109.medicalofficemanager.appointments.internal.dto;
+
+import io.salad109.medicalofficemanager.appointments.internal.AppointmentStatus;
+import io.salad109.medicalofficemanager.appointments.internal.ScheduleChangeType;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+
+public record ScheduleChangeResponse(
+        ScheduleChangeType type,
+        Long appointmentId,
+        Long doctorId,
+        LocalDate date,
+        LocalTime time,
+        AppointmentStatus status
+) {
+}
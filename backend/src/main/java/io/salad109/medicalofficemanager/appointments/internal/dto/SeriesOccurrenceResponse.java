@@ -0,0 +1,14 @@
+package io.salad109.medicalofficemanager.appointments.internal.dto;
+
+import io.salad109.medicalofficemanager.appointments.internal.SeriesOccurrenceStatus;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+
+public record SeriesOccurrenceResponse(
+        LocalDate date,
+        LocalTime time,
+        SeriesOccurrenceStatus status,
+        Long appointmentId
+) {
+}
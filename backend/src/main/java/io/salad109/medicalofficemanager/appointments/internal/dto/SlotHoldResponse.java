@@ -0,0 +1,15 @@
+package io.salad109.medicalofficemanager.appointments.internal.dto;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalTime;
+
+public record SlotHoldResponse(
+        String id,
+        Long patientId,
+        Long doctorId,
+        LocalDate date,
+        LocalTime time,
+        Instant expiresAt
+) {
+}
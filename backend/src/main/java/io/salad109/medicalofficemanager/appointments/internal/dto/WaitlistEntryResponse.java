@@ -0,0 +1,14 @@
+package io.salad109.medicalofficemanager.appointments.internal.dto;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+
+public record WaitlistEntryResponse(
+        Long id,
+        Long patientId,
+        Long doctorId,
+        LocalDate date,
+        LocalTime windowStart,
+        LocalTime windowEnd
+) {
+}
@@ -0,0 +1,3 @@
+package io.salad109.medicalofficemanager.exception
+
+class IdempotencyKeyMismatchException(message: String) : RuntimeException(message)
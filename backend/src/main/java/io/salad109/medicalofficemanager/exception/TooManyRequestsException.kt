@@ -0,0 +1,3 @@
+package io.salad109.medicalofficemanager.exception
+
+class TooManyRequestsException(message: String, val retryAfterSeconds: Long) : RuntimeException(message)
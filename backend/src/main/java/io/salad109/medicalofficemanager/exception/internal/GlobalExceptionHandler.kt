@@ -4,6 +4,8 @@ import io.salad109.medicalofficemanager.exception.*
 import jakarta.servlet.http.HttpServletRequest
 import jakarta.validation.ValidationException
 import org.slf4j.LoggerFactory
+import org.springframework.dao.OptimisticLockingFailureException
+import org.springframework.http.HttpHeaders
 import org.springframework.http.HttpStatus
 import org.springframework.http.ResponseEntity
 import org.springframework.security.access.AccessDeniedException
@@ -50,6 +52,56 @@ class GlobalExceptionHandler {
             .also { log.info("ResourceAlreadyExistsException: $message") }
     }
 
+    @ExceptionHandler(OptimisticLockingFailureException::class)
+    fun handleOptimisticLockingFailureException(
+        ex: OptimisticLockingFailureException, request: HttpServletRequest
+    ): ResponseEntity<ErrorResponse> {
+        val message = "The record was modified by another request, reload it and try again"
+        val errorResponse = ErrorResponse(
+            timestamp = Instant.now().toString(),
+            status = HttpStatus.CONFLICT.value(),
+            error = HttpStatus.CONFLICT.reasonPhrase,
+            message = message,
+            path = request.requestURI
+        )
+        return ResponseEntity.status(HttpStatus.CONFLICT).body(errorResponse)
+            .also { log.info("OptimisticLockingFailureException: ${ex.message}") }
+    }
+
+    @ExceptionHandler(IdempotencyKeyMismatchException::class)
+    fun handleIdempotencyKeyMismatchException(
+        ex: IdempotencyKeyMismatchException, request: HttpServletRequest
+    ): ResponseEntity<ErrorResponse> {
+        val message = ex.message ?: "Idempotency key reused with a different request"
+        val errorResponse = ErrorResponse(
+            timestamp = Instant.now().toString(),
+            status = HttpStatus.UNPROCESSABLE_ENTITY.value(),
+            error = HttpStatus.UNPROCESSABLE_ENTITY.reasonPhrase,
+            message = message,
+            path = request.requestURI
+        )
+        return ResponseEntity.status(HttpStatus.UNPROCESSABLE_ENTITY).body(errorResponse)
+            .also { log.info("IdempotencyKeyMismatchException: $message") }
+    }
+
+    @ExceptionHandler(TooManyRequestsException::class)
+    fun handleTooManyRequestsException(
+        ex: TooManyRequestsException, request: HttpServletRequest
+    ): ResponseEntity<ErrorResponse> {
+        val message = ex.message ?: "Too many requests"
+        val errorResponse = ErrorResponse(
+            timestamp = Instant.now().toString(),
+            status = HttpStatus.TOO_MANY_REQUESTS.value(),
+            error = HttpStatus.TOO_MANY_REQUESTS.reasonPhrase,
+            message = message,
+            path = request.requestURI
+        )
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+            .header(HttpHeaders.RETRY_AFTER, ex.retryAfterSeconds.toString())
+            .body(errorResponse)
+            .also { log.info("TooManyRequestsException: $message") }
+    }
+
     @ExceptionHandler(
         InvalidRoleException::class,
         ValidationException::class,
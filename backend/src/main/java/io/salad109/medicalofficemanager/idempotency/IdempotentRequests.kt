@@ -0,0 +1,17 @@
+package io.salad109.medicalofficemanager.idempotency
+
+import org.springframework.http.ResponseEntity
+
+interface IdempotentRequests {
+    /**
+     * Runs [action] once per [key] within [scope] and replays its stored 2xx response to retries that
+     * carry the same key and payload. A null key runs [action] unconditionally.
+     */
+    fun <T : Any> execute(
+        key: String?,
+        scope: String,
+        payload: Any,
+        responseType: Class<T>,
+        action: () -> ResponseEntity<T>
+    ): ResponseEntity<T>
+}
@@ -0,0 +1,35 @@
+package io.salad109.medicalofficemanager.idempotency.internal
+
+import java.time.Duration
+
+/**
+ * Size-bounded, access-ordered map whose entries also expire [ttl] after they were stored.
+ */
+class ExpiringLruCache<K : Any, V : Any>(
+    private val maxEntries: Int,
+    private val ttl: Duration
+) {
+    private class Entry<V>(val value: V, val expiresAtNanos: Long)
+
+    private val entries = object : LinkedHashMap<K, Entry<V>>(16, 0.75f, true) {
+        override fun removeEldestEntry(eldest: MutableMap.MutableEntry<K, Entry<V>>): Boolean = size > maxEntries
+    }
+
+    @Synchronized
+    fun get(key: K): V? {
+        val entry = entries[key] ?: return null
+        if (System.nanoTime() - entry.expiresAtNanos >= 0) {
+            entries.remove(key)
+            return null
+        }
+        return entry.value
+    }
+
+    @Synchronized
+    fun put(key: K, value: V, age: Duration = Duration.ZERO) {
+        val remaining = ttl.minus(age)
+        if (!remaining.isNegative && !remaining.isZero) {
+            entries[key] = Entry(value, System.nanoTime() + remaining.toNanos())
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package io.salad109.medicalofficemanager.idempotency.internal
+
+import org.springframework.boot.context.properties.ConfigurationProperties
+import org.springframework.context.annotation.Configuration
+import java.time.Duration
+
+@Configuration
+@ConfigurationProperties(prefix = "idempotency")
+class IdempotencyProperties {
+    var ttl: Duration = Duration.ofHours(24)
+    var maxEntries: Int = 10_000
+}
@@ -0,0 +1,31 @@
+package io.salad109.medicalofficemanager.idempotency.internal
+
+import jakarta.persistence.Column
+import jakarta.persistence.Entity
+import jakarta.persistence.Id
+import jakarta.persistence.Table
+import jakarta.validation.constraints.NotNull
+import java.time.LocalDateTime
+
+@Entity
+@Table(name = "idempotency_keys")
+class IdempotencyRecord(
+    @Id
+    @Column(name = "key_hash")
+    var keyHash: String,
+
+    @field:NotNull
+    @Column(name = "request_hash")
+    var requestHash: String,
+
+    @field:NotNull
+    @Column(name = "status_code")
+    var statusCode: Int,
+
+    @Column(name = "response_body")
+    var responseBody: String? = null,
+
+    @field:NotNull
+    @Column(name = "created_at")
+    var createdAt: LocalDateTime
+)
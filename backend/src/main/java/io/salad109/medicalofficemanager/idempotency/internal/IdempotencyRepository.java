@@ -0,0 +1,26 @@
+package io.salad109.medicalofficemanager.idempotency.internal;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+
+@Repository
+public interface IdempotencyRepository extends JpaRepository<IdempotencyRecord, String> {
+    @Modifying
+    @Query(value = "INSERT IGNORE INTO idempotency_keys (key_hash, request_hash, status_code, response_body, created_at) " +
+            "VALUES (:keyHash, :requestHash, :statusCode, :responseBody, :createdAt)",
+            nativeQuery = true)
+    int insertIfAbsent(@Param("keyHash") String keyHash,
+                       @Param("requestHash") String requestHash,
+                       @Param("statusCode") int statusCode,
+                       @Param("responseBody") String responseBody,
+                       @Param("createdAt") LocalDateTime createdAt);
+
+    @Modifying
+    @Query("DELETE FROM IdempotencyRecord r WHERE r.createdAt < :cutoff")
+    int deleteCreatedBefore(@Param("cutoff") LocalDateTime cutoff);
+}
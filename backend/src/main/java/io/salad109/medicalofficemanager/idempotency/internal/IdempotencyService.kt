@@ -0,0 +1,134 @@
+package io.salad109.medicalofficemanager.idempotency.internal
+
+import com.fasterxml.jackson.databind.ObjectMapper
+import io.salad109.medicalofficemanager.exception.IdempotencyKeyMismatchException
+import io.salad109.medicalofficemanager.exception.ResourceAlreadyExistsException
+import io.salad109.medicalofficemanager.idempotency.IdempotentRequests
+import jakarta.validation.ValidationException
+import org.slf4j.LoggerFactory
+import org.springframework.http.ResponseEntity
+import org.springframework.scheduling.annotation.Scheduled
+import org.springframework.security.core.context.SecurityContextHolder
+import org.springframework.stereotype.Service
+import org.springframework.transaction.annotation.Transactional
+import org.springframework.transaction.support.TransactionTemplate
+import java.security.MessageDigest
+import java.time.Duration
+import java.time.LocalDateTime
+import java.util.HexFormat
+import java.util.concurrent.ConcurrentHashMap
+
+@Service
+class IdempotencyService(
+    private val idempotencyRepository: IdempotencyRepository,
+    private val objectMapper: ObjectMapper,
+    private val transactionTemplate: TransactionTemplate,
+    private val idempotencyProperties: IdempotencyProperties
+) : IdempotentRequests {
+    private val log = LoggerFactory.getLogger(IdempotencyService::class.java)
+
+    private val recentResponses = ExpiringLruCache<String, StoredResponse>(
+        idempotencyProperties.maxEntries,
+        idempotencyProperties.ttl
+    )
+    private val inFlight = ConcurrentHashMap.newKeySet<String>()
+
+    companion object {
+        private const val MAX_KEY_LENGTH = 255
+        const val REPLAYED_HEADER = "Idempotent-Replayed"
+    }
+
+    override fun <T : Any> execute(
+        key: String?,
+        scope: String,
+        payload: Any,
+        responseType: Class<T>,
+        action: () -> ResponseEntity<T>
+    ): ResponseEntity<T> {
+        if (key == null) {
+            return action()
+        }
+        if (key.isBlank() || key.length > MAX_KEY_LENGTH) {
+            throw ValidationException("Idempotency-Key must be between 1 and $MAX_KEY_LENGTH characters")
+        }
+
+        // Keys are scoped per endpoint and caller, so one user can never replay another's response
+        val caller = SecurityContextHolder.getContext().authentication?.name ?: "anonymous"
+        val keyHash = sha256("$scope\u0000$caller\u0000$key")
+        val requestHash = sha256(objectMapper.writeValueAsString(payload))
+
+        lookup(keyHash)?.let { return replay(it, requestHash, responseType) }
+
+        if (!inFlight.add(keyHash)) {
+            throw ResourceAlreadyExistsException("A request with this Idempotency-Key is still being processed")
+        }
+        try {
+            // The first attempt may have finished between the lookup and claiming the key
+            lookup(keyHash)?.let { return replay(it, requestHash, responseType) }
+
+            val response = action()
+            if (response.statusCode.is2xxSuccessful) {
+                store(keyHash, requestHash, response)
+            }
+            return response
+        } finally {
+            inFlight.remove(keyHash)
+        }
+    }
+
+    @Scheduled(cron = "0 0 * * * *")
+    @Transactional
+    fun purgeExpiredKeys() {
+        val purged = idempotencyRepository.deleteCreatedBefore(LocalDateTime.now().minus(idempotencyProperties.ttl))
+        log.info("Purged {} expired idempotency keys", purged)
+    }
+
+    private fun lookup(keyHash: String): StoredResponse? {
+        recentResponses.get(keyHash)?.let { return it }
+
+        val record = idempotencyRepository.findById(keyHash).orElse(null) ?: return null
+        val age = Duration.between(record.createdAt, LocalDateTime.now())
+        if (age >= idempotencyProperties.ttl) {
+            return null
+        }
+        return StoredResponse(record.requestHash, record.statusCode, record.responseBody)
+            .also { recentResponses.put(keyHash, it, age) }
+    }
+
+    private fun <T : Any> replay(stored: StoredResponse, requestHash: String, responseType: Class<T>): ResponseEntity<T> {
+        if (stored.requestHash != requestHash) {
+            throw IdempotencyKeyMismatchException("Idempotency-Key was already used with a different request")
+        }
+        log.debug("Replaying stored response for idempotency key")
+        val body = stored.responseBody?.let { objectMapper.readValue(it, responseType) }
+        return ResponseEntity.status(stored.statusCode)
+            .header(REPLAYED_HEADER, "true")
+            .body<T>(body)
+    }
+
+    private fun store(keyHash: String, requestHash: String, response: ResponseEntity<*>) {
+        val stored = StoredResponse(
+            requestHash,
+            response.statusCode.value(),
+            response.body?.let { objectMapper.writeValueAsString(it) }
+        )
+        try {
+            transactionTemplate.executeWithoutResult {
+                idempotencyRepository.insertIfAbsent(
+                    keyHash, stored.requestHash, stored.statusCode, stored.responseBody, LocalDateTime.now()
+                )
+            }
+            recentResponses.put(keyHash, stored)
+        } catch (ex: RuntimeException) {
+            // The request itself succeeded; a retry will simply run it again
+            log.warn("Could not store idempotent response: {}", ex.message)
+        }
+    }
+
+    private fun sha256(value: String): String {
+        val digest = MessageDigest.getInstance("SHA-256").digest(value.toByteArray())
+        return HexFormat.of().formatHex(digest)
+    }
+
+    private class StoredResponse(val requestHash: String, val statusCode: Int, val responseBody: String?)
+}
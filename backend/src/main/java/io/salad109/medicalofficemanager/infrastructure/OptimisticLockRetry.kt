@@ -0,0 +1,50 @@
+package io.salad109.medicalofficemanager.infrastructure
+
+import io.micrometer.core.instrument.Counter
+import io.micrometer.core.instrument.MeterRegistry
+import org.slf4j.LoggerFactory
+import org.springframework.dao.OptimisticLockingFailureException
+import org.springframework.stereotype.Component
+import org.springframework.transaction.support.TransactionOperations
+
+/**
+ * Runs an action in its own transaction and reruns it from scratch when a `@Version` check fails.
+ * Only idempotent transitions should allow more than one attempt; the last conflict is rethrown and
+ * answered with 409. Every conflict is counted in `optimistic.lock.conflicts`.
+ */
+@Component
+class OptimisticLockRetry(
+    private val transactionOperations: TransactionOperations,
+    private val meterRegistry: MeterRegistry
+) {
+    private val log = LoggerFactory.getLogger(OptimisticLockRetry::class.java)
+
+    companion object {
+        const val DEFAULT_MAX_ATTEMPTS = 3
+    }
+
+    fun <T : Any> execute(operation: String, maxAttempts: Int = DEFAULT_MAX_ATTEMPTS, action: () -> T): T {
+        var attempt = 1
+        while (true) {
+            try {
+                return transactionOperations.execute { action() }!!
+            } catch (ex: OptimisticLockingFailureException) {
+                if (attempt >= maxAttempts) {
+                    conflicts(operation, "rejected").increment()
+                    throw ex
+                }
+                conflicts(operation, "retried").increment()
+                log.debug("Optimistic lock conflict in {}, attempt {} of {}", operation, attempt, maxAttempts)
+                attempt++
+            }
+        }
+    }
+
+    private fun conflicts(operation: String, outcome: String): Counter {
+        return Counter.builder("optimistic.lock.conflicts")
+            .description("Concurrent modifications detected by entity version checks")
+            .tag("operation", operation)
+            .tag("outcome", outcome)
+            .register(meterRegistry)
+    }
+}
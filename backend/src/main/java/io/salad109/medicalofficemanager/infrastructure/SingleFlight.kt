@@ -0,0 +1,98 @@
+package io.salad109.medicalofficemanager.infrastructure
+
+import io.micrometer.core.instrument.Counter
+import io.micrometer.core.instrument.MeterRegistry
+import org.slf4j.LoggerFactory
+import org.springframework.stereotype.Component
+import java.time.Duration
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.CompletionException
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * Request coalescing for hot reads: concurrent calls with the same name and key share one in-flight
+ * load and its result. With a positive TTL the result also answers identical calls for that long, so
+ * callers must put whatever invalidates the result (such as a version) into the key. Failed loads are
+ * never shared beyond the callers already waiting on them.
+ */
+@Component
+class SingleFlight(
+    private val meterRegistry: MeterRegistry
+) {
+    private val log = LoggerFactory.getLogger(SingleFlight::class.java)
+
+    private val calls = ConcurrentHashMap<CallKey, Call>()
+
+    fun <T> execute(name: String, key: List<Any?>, ttl: Duration = Duration.ZERO, loader: () -> T): T {
+        val callKey = CallKey(name, key)
+        while (true) {
+            val existing = calls[callKey]
+            if (existing != null) {
+                if (existing.isExpired()) {
+                    calls.remove(callKey, existing)
+                    continue
+                }
+                existing.joiners.incrementAndGet()
+                coalesced(name).increment()
+                return existing.await()
+            }
+
+            val call = Call()
+            if (calls.putIfAbsent(callKey, call) != null) {
+                continue
+            }
+            return lead(callKey, call, ttl, loader)
+        }
+    }
+
+    private fun <T> lead(callKey: CallKey, call: Call, ttl: Duration, loader: () -> T): T {
+        calls.values.removeIf { it.isExpired() }
+        try {
+            val result = loader()
+            call.expiresAt = System.nanoTime() + ttl.toNanos()
+            call.future.complete(result)
+            return result
+        } catch (ex: Throwable) {
+            call.expiresAt = System.nanoTime()
+            call.future.completeExceptionally(ex)
+            calls.remove(callKey, call)
+            throw ex
+        } finally {
+            if (ttl.isZero) {
+                calls.remove(callKey, call)
+            }
+            if (call.joiners.get() > 0) {
+                log.debug("Coalesced {} calls into one load for {}{}", call.joiners.get() + 1, callKey.name, callKey.key)
+            }
+        }
+    }
+
+    private fun coalesced(name: String): Counter {
+        return Counter.builder("single.flight.coalesced")
+            .description("Calls answered by another caller's in-flight or recent load")
+            .tag("name", name)
+            .register(meterRegistry)
+    }
+
+    private data class CallKey(val name: String, val key: List<Any?>)
+
+    private class Call {
+        val future = CompletableFuture<Any?>()
+        val joiners = AtomicInteger()
+
+        @Volatile
+        var expiresAt: Long = Long.MAX_VALUE
+
+        fun isExpired(): Boolean = future.isDone && System.nanoTime() - expiresAt >= 0
+
+        @Suppress("UNCHECKED_CAST")
+        fun <T> await(): T {
+            try {
+                return future.join() as T
+            } catch (ex: CompletionException) {
+                throw ex.cause ?: ex
+            }
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package io.salad109.medicalofficemanager.infrastructure.config;
+
+import org.hibernate.boot.model.FunctionContributions;
+import org.hibernate.boot.model.FunctionContributor;
+import org.hibernate.type.StandardBasicTypes;
+
+/**
+ * Makes MySQL full-text search usable from JPQL as {@code match_against(column, query)}, which returns
+ * the boolean-mode relevance score. Registered through {@code META-INF/services}.
+ */
+public class MySqlFunctionContributor implements FunctionContributor {
+    @Override
+    public void contributeFunctions(FunctionContributions functionContributions) {
+        functionContributions.getFunctionRegistry().registerPattern(
+                "match_against",
+                "match(?1) against(?2 in boolean mode)",
+                functionContributions.getTypeConfiguration().getBasicTypeRegistry().resolve(StandardBasicTypes.DOUBLE)
+        );
+    }
+}
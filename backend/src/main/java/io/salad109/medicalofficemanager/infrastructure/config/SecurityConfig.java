@@ -3,6 +3,7 @@ package io.salad109.medicalofficemanager.infrastructure.config;
 import io.salad109.medicalofficemanager.audit.AuditFilter;
 import io.salad109.medicalofficemanager.auth.JwtAuthenticationEntryPoint;
 import io.salad109.medicalofficemanager.auth.JwtAuthenticationFilter;
+import jakarta.servlet.DispatcherType;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.security.authentication.AuthenticationManager;
@@ -32,9 +33,12 @@ public class SecurityConfig {
         http
                 .csrf(AbstractHttpConfigurer::disable)
                 .authorizeHttpRequests(auth -> auth
+                        .dispatcherTypeMatchers(DispatcherType.ASYNC).permitAll()
                         .requestMatchers("/api/auth/**").permitAll()
                         .requestMatchers("/api/appointments/available").permitAll()
                         .requestMatchers("/api/**").authenticated()
+                        .requestMatchers("/actuator/health").permitAll()
+                        .requestMatchers("/actuator/**").hasRole("RECEPTIONIST")
                         .anyRequest().permitAll()
                 )
                 .exceptionHandling(exceptions -> exceptions
@@ -17,7 +17,7 @@ public class WebConfig {
                         .allowedOrigins("http://localhost:5173")
                         .allowedMethods("GET", "POST", "PUT", "DELETE", "OPTIONS")
                         .allowedHeaders("*")
-                        .exposedHeaders("Authorization")
+                        .exposedHeaders("Authorization", "ETag", "Idempotent-Replayed")
                         .allowCredentials(true);
             }
         };
@@ -0,0 +1,11 @@
+package io.salad109.medicalofficemanager.reminders
+
+import java.time.LocalDate
+import java.time.LocalTime
+
+data class Reminder(
+    val appointmentId: Long,
+    val phoneNumber: String,
+    val date: LocalDate,
+    val time: LocalTime
+)
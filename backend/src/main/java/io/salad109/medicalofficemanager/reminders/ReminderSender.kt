@@ -0,0 +1,9 @@
+package io.salad109.medicalofficemanager.reminders
+
+/**
+ * Delivers one appointment reminder. Implementations are called concurrently and signal a failed
+ * delivery by throwing; the dispatcher records the failure and retries on a later run.
+ */
+interface ReminderSender {
+    fun send(reminder: Reminder)
+}
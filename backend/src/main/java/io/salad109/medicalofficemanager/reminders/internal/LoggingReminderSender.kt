@@ -0,0 +1,19 @@
+package io.salad109.medicalofficemanager.reminders.internal
+
+import io.salad109.medicalofficemanager.reminders.Reminder
+import io.salad109.medicalofficemanager.reminders.ReminderSender
+import org.slf4j.LoggerFactory
+
+/**
+ * Stand-in sender used until a real SMS gateway is configured; it only writes the reminder to the log.
+ */
+class LoggingReminderSender : ReminderSender {
+    private val log = LoggerFactory.getLogger(LoggingReminderSender::class.java)
+
+    override fun send(reminder: Reminder) {
+        log.info(
+            "Reminder for appointment {} on {} at {} to {}",
+            reminder.appointmentId, reminder.date, reminder.time, reminder.phoneNumber
+        )
+    }
+}
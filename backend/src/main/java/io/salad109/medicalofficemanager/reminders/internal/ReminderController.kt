@@ -0,0 +1,27 @@
+package io.salad109.medicalofficemanager.reminders.internal
+
+import io.salad109.medicalofficemanager.reminders.internal.dto.ReminderDispatchResponse
+import org.springframework.format.annotation.DateTimeFormat
+import org.springframework.http.ResponseEntity
+import org.springframework.security.access.prepost.PreAuthorize
+import org.springframework.web.bind.annotation.PostMapping
+import org.springframework.web.bind.annotation.RequestMapping
+import org.springframework.web.bind.annotation.RequestParam
+import org.springframework.web.bind.annotation.RestController
+import java.time.LocalDate
+
+@RestController
+@RequestMapping("/api/reminders")
+class ReminderController(
+    private val reminderDispatcher: ReminderDispatcher
+) {
+
+    @PostMapping("/dispatch")
+    @PreAuthorize("hasRole('RECEPTIONIST')")
+    fun dispatchReminders(
+        @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) date: LocalDate?
+    ): ResponseEntity<ReminderDispatchResponse> {
+        val result = reminderDispatcher.dispatch(date ?: LocalDate.now().plusDays(1))
+        return ResponseEntity.ok(result)
+    }
+}
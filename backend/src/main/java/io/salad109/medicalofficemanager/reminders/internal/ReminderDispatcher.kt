@@ -0,0 +1,155 @@
+package io.salad109.medicalofficemanager.reminders.internal
+
+import io.micrometer.core.instrument.Counter
+import io.micrometer.core.instrument.Gauge
+import io.micrometer.core.instrument.MeterRegistry
+import io.micrometer.core.instrument.Timer
+import io.salad109.medicalofficemanager.appointments.AppointmentsRemovedEvent
+import io.salad109.medicalofficemanager.reminders.Reminder
+import io.salad109.medicalofficemanager.reminders.ReminderSender
+import io.salad109.medicalofficemanager.reminders.internal.dto.ReminderDispatchResponse
+import org.slf4j.LoggerFactory
+import org.springframework.beans.factory.ObjectProvider
+import org.springframework.context.event.EventListener
+import org.springframework.scheduling.annotation.Scheduled
+import org.springframework.stereotype.Component
+import java.time.Duration
+import java.time.LocalDate
+import java.util.concurrent.Executors
+import java.util.concurrent.Semaphore
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * Queues tomorrow's SCHEDULED appointments in the outbox, then delivers the pending ones on virtual
+ * threads with at most `reminders.max-concurrency` sends in flight. Runs are safe to repeat: queueing
+ * is insert-if-absent and each send first claims its outbox row.
+ */
+@Component
+class ReminderDispatcher(
+    private val reminderOutbox: ReminderOutbox,
+    private val reminderProperties: ReminderProperties,
+    reminderSender: ObjectProvider<ReminderSender>,
+    meterRegistry: MeterRegistry
+) {
+    private val log = LoggerFactory.getLogger(ReminderDispatcher::class.java)
+
+    private val sender: ReminderSender = reminderSender.getIfAvailable { LoggingReminderSender() }
+
+    private val sentCounter = Counter.builder("reminders.sent")
+        .description("Reminders delivered")
+        .register(meterRegistry)
+    private val failedCounter = Counter.builder("reminders.failed")
+        .description("Reminder deliveries that failed")
+        .register(meterRegistry)
+    private val sendTimer = Timer.builder("reminders.send.latency")
+        .description("Time spent in a single reminder send")
+        .publishPercentiles(0.5, 0.95, 0.99)
+        .register(meterRegistry)
+
+    @Volatile
+    private var lastThroughput = 0.0
+
+    init {
+        Gauge.builder("reminders.dispatch.throughput", this) { it.lastThroughput }
+            .description("Reminders sent per second during the last dispatch")
+            .baseUnit("reminders/s")
+            .register(meterRegistry)
+    }
+
+    @Scheduled(cron = "\${reminders.cron:0 0 8-20 * * *}")
+    fun scheduledDispatch() {
+        if (reminderProperties.enabled) {
+            dispatch(LocalDate.now().plusDays(1))
+        }
+    }
+
+    fun dispatch(date: LocalDate): ReminderDispatchResponse {
+        val startedAt = System.nanoTime()
+        val reclaimed = reminderOutbox.reclaimExpired(date, reminderProperties.claimTimeout, reminderProperties.maxAttempts)
+        if (reclaimed > 0) {
+            log.warn("Reclaimed {} reminders for {} left claimed by an interrupted dispatch", reclaimed, date)
+        }
+        val enqueued = enqueue(date)
+        val sent = AtomicInteger()
+        val failed = AtomicInteger()
+        val permits = Semaphore(reminderProperties.maxConcurrency)
+
+        // Closing the executor waits for every submitted send
+        Executors.newVirtualThreadPerTaskExecutor().use { executor ->
+            forEachPage({ afterId, limit -> reminderOutbox.findPendingAfter(date, afterId, limit) }) { page ->
+                page.forEach { reminder ->
+                    permits.acquire()
+                    executor.execute {
+                        try {
+                            when (deliver(reminder)) {
+                                true -> sent.incrementAndGet()
+                                false -> failed.incrementAndGet()
+                                null -> {}
+                            }
+                        } finally {
+                            permits.release()
+                        }
+                    }
+                }
+            }
+        }
+
+        val duration = Duration.ofNanos(System.nanoTime() - startedAt)
+        lastThroughput = if (duration.isZero) 0.0 else sent.get() * 1_000_000_000.0 / duration.toNanos()
+        log.info(
+            "Reminders for {}: {} queued, {} sent, {} failed in {} ms",
+            date, enqueued, sent.get(), failed.get(), duration.toMillis()
+        )
+        return ReminderDispatchResponse(date, enqueued, sent.get(), failed.get(), duration.toMillis())
+    }
+
+    private fun enqueue(date: LocalDate): Int {
+        var enqueued = 0
+        forEachPage({ afterId, limit -> reminderOutbox.findScheduledAfter(date, afterId, limit) }) { page ->
+            enqueued += reminderOutbox.enqueue(page)
+        }
+        return enqueued
+    }
+
+    // The outbox row used to cascade with its appointment; now it is dropped in the removing transaction
+    @EventListener
+    fun handleAppointmentsRemovedEvent(event: AppointmentsRemovedEvent) {
+        val deleted = reminderOutbox.deleteForAppointments(event.appointmentIds)
+        log.debug("Dropped {} outbox rows of {} removed appointments", deleted, event.appointmentIds.size)
+    }
+
+    /**
+     * Returns null when another dispatcher already claimed the reminder.
+     */
+    private fun deliver(reminder: Reminder): Boolean? {
+        if (!reminderOutbox.claim(reminder.appointmentId)) {
+            return null
+        }
+
+        val sample = Timer.start()
+        try {
+            sender.send(reminder)
+        } catch (ex: Exception) {
+            log.warn("Reminder for appointment {} failed: {}", reminder.appointmentId, ex.message)
+            reminderOutbox.markFailed(reminder.appointmentId, ex.message ?: ex.javaClass.simpleName, reminderProperties.maxAttempts)
+            failedCounter.increment()
+            return false
+        } finally {
+            sample.stop(sendTimer)
+        }
+
+        // The reminder went out, so a failure to record it must not requeue it; the claim expires instead
+        reminderOutbox.markSent(reminder.appointmentId)
+        sentCounter.increment()
+        return true
+    }
+
+    private fun forEachPage(fetch: (Long, Int) -> List<Reminder>, action: (List<Reminder>) -> Unit) {
+        var afterId = 0L
+        do {
+            val page = fetch(afterId, reminderProperties.pageSize)
+            action(page)
+            afterId = page.lastOrNull()?.appointmentId ?: afterId
+        } while (page.size == reminderProperties.pageSize)
+    }
+}
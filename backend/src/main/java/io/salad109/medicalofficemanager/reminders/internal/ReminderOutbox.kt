@@ -0,0 +1,157 @@
+package io.salad109.medicalofficemanager.reminders.internal
+
+import io.salad109.medicalofficemanager.reminders.Reminder
+import org.springframework.jdbc.core.JdbcTemplate
+import org.springframework.jdbc.core.RowCallbackHandler
+import org.springframework.jdbc.core.RowMapper
+import org.springframework.stereotype.Repository
+import java.time.Duration
+import java.time.LocalDate
+import java.time.LocalTime
+
+/**
+ * Delivery state of reminders. Every transition is a guarded single-row UPDATE, so concurrent dispatchers
+ * never deliver the same reminder twice. A claim left behind by a dispatcher that died mid-send expires
+ * and the reminder is sent again, so delivery is at least once.
+ */
+@Repository
+class ReminderOutbox(
+    private val jdbcTemplate: JdbcTemplate
+) {
+    private val reminderMapper = RowMapper { rs, _ ->
+        Reminder(
+            appointmentId = rs.getLong("appointment_id"),
+            phoneNumber = rs.getString("phone_number"),
+            date = rs.getDate("appointment_date").toLocalDate(),
+            time = rs.getTime("appointment_time").toLocalTime()
+        )
+    }
+
+    /**
+     * One keyset page of the date's SCHEDULED appointments joined to the patient's phone number.
+     */
+    fun findScheduledAfter(date: LocalDate, afterId: Long, limit: Int): List<Reminder> {
+        return jdbcTemplate.query(
+            """
+            SELECT a.id AS appointment_id, u.phone_number, a.appointment_date, a.appointment_time
+            FROM appointments a
+                     JOIN users u ON u.id = a.patient_id
+            WHERE a.appointment_date = ?
+              AND a.status = 'SCHEDULED'
+              AND a.id > ?
+            ORDER BY a.id
+            LIMIT ?
+            """.trimIndent(),
+            reminderMapper, date, afterId, limit
+        )
+    }
+
+    /**
+     * Returns how many of [reminders] were new or requeued. Already queued appointments are skipped unless
+     * they were rescheduled since, in which case the reminder is sent again for the new slot.
+     */
+    fun enqueue(reminders: List<Reminder>): Int {
+        if (reminders.isEmpty()) {
+            return 0
+        }
+        // Batch update counts are unusable here: rewritten batches report SUCCESS_NO_INFO and an unchanged
+        // duplicate still counts as found, so the queued slots are read before the upsert instead
+        val placeholders = reminders.joinToString(", ") { "?" }
+        val queuedSlots = HashMap<Long, Pair<LocalDate, LocalTime>>()
+        jdbcTemplate.query(
+            "SELECT appointment_id, appointment_date, appointment_time FROM reminder_outbox " +
+                    "WHERE appointment_id IN ($placeholders)",
+            RowCallbackHandler { rs ->
+                queuedSlots[rs.getLong("appointment_id")] =
+                    rs.getDate("appointment_date").toLocalDate() to rs.getTime("appointment_time").toLocalTime()
+            },
+            *reminders.map { it.appointmentId }.toTypedArray()
+        )
+
+        // Assignments run left to right, so the slot columns must be overwritten last
+        val moved = "NOT (appointment_date <=> VALUES(appointment_date) AND appointment_time <=> VALUES(appointment_time))"
+        jdbcTemplate.batchUpdate(
+            "INSERT INTO reminder_outbox (appointment_id, phone_number, appointment_date, appointment_time) " +
+                    "VALUES (?, ?, ?, ?) " +
+                    "ON DUPLICATE KEY UPDATE " +
+                    "status = IF($moved, 'PENDING', status), " +
+                    "attempts = IF($moved, 0, attempts), " +
+                    "last_error = IF($moved, NULL, last_error), " +
+                    "sent_at = IF($moved, NULL, sent_at), " +
+                    "phone_number = VALUES(phone_number), " +
+                    "appointment_time = VALUES(appointment_time), " +
+                    "appointment_date = VALUES(appointment_date)",
+            reminders.map { arrayOf<Any>(it.appointmentId, it.phoneNumber, it.date, it.time) }
+        )
+        return reminders.count { queuedSlots[it.appointmentId] != it.date to it.time }
+    }
+
+    fun findPendingAfter(date: LocalDate, afterId: Long, limit: Int): List<Reminder> {
+        return jdbcTemplate.query(
+            """
+            SELECT o.appointment_id, o.phone_number, o.appointment_date, o.appointment_time
+            FROM reminder_outbox o
+                     JOIN appointments a ON a.id = o.appointment_id AND a.appointment_date = o.appointment_date
+            WHERE o.appointment_date = ?
+              AND o.status = 'PENDING'
+              AND a.status = 'SCHEDULED'
+              AND o.appointment_id > ?
+            ORDER BY o.appointment_id
+            LIMIT ?
+            """.trimIndent(),
+            reminderMapper, date, afterId, limit
+        )
+    }
+
+    fun claim(appointmentId: Long): Boolean {
+        return jdbcTemplate.update(
+            "UPDATE reminder_outbox SET status = 'SENDING', attempts = attempts + 1, claimed_at = CURRENT_TIMESTAMP " +
+                    "WHERE appointment_id = ? AND status = 'PENDING'",
+            appointmentId
+        ) == 1
+    }
+
+    /**
+     * Returns the date's reminders claimed longer than [timeout] ago to the queue, or gives up on those
+     * that have used up [maxAttempts].
+     */
+    fun reclaimExpired(date: LocalDate, timeout: Duration, maxAttempts: Int): Int {
+        return jdbcTemplate.update(
+            "UPDATE reminder_outbox SET status = IF(attempts >= ?, 'FAILED', 'PENDING'), " +
+                    "last_error = 'Claim expired before the send was confirmed' " +
+                    "WHERE appointment_date = ? AND status = 'SENDING' " +
+                    "AND claimed_at < CURRENT_TIMESTAMP - INTERVAL ? SECOND",
+            maxAttempts, date, timeout.toSeconds()
+        )
+    }
+
+    fun markSent(appointmentId: Long) {
+        jdbcTemplate.update(
+            "UPDATE reminder_outbox SET status = 'SENT', sent_at = CURRENT_TIMESTAMP, last_error = NULL " +
+                    "WHERE appointment_id = ? AND status = 'SENDING'",
+            appointmentId
+        )
+    }
+
+    /**
+     * Returns the reminder to the queue for the next run, or gives up once [maxAttempts] is reached.
+     */
+    fun markFailed(appointmentId: Long, error: String, maxAttempts: Int) {
+        jdbcTemplate.update(
+            "UPDATE reminder_outbox SET status = IF(attempts >= ?, 'FAILED', 'PENDING'), last_error = ? " +
+                    "WHERE appointment_id = ? AND status = 'SENDING'",
+            maxAttempts, error.take(255), appointmentId
+        )
+    }
+
+    fun deleteForAppointments(appointmentIds: List<Long>): Int {
+        if (appointmentIds.isEmpty()) {
+            return 0
+        }
+        val placeholders = appointmentIds.joinToString(", ") { "?" }
+        return jdbcTemplate.update(
+            "DELETE FROM reminder_outbox WHERE appointment_id IN ($placeholders)",
+            *appointmentIds.toTypedArray()
+        )
+    }
+}
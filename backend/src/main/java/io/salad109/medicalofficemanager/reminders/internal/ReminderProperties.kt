@@ -0,0 +1,15 @@
+package io.salad109.medicalofficemanager.reminders.internal
+
+import org.springframework.boot.context.properties.ConfigurationProperties
+import org.springframework.context.annotation.Configuration
+import java.time.Duration
+
+@Configuration
+@ConfigurationProperties(prefix = "reminders")
+class ReminderProperties {
+    var enabled: Boolean = true
+    var pageSize: Int = 500
+    var maxConcurrency: Int = 20
+    var maxAttempts: Int = 3
+    var claimTimeout: Duration = Duration.ofMinutes(5)
+}
@@ -0,0 +1,12 @@
+package io.salad109.medicalofficemanager.reminders.internal.dto;
+
+import java.time.LocalDate;
+
+public record ReminderDispatchResponse(
+        LocalDate date,
+        int enqueued,
+        int sent,
+        int failed,
+        long durationMs
+) {
+}
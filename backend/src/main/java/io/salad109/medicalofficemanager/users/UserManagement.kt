@@ -2,4 +2,6 @@ package io.salad109.medicalofficemanager.users
 
 interface UserManagement {
     fun validatePatient(patientId: Long)
+
+    fun validateDoctor(doctorId: Long)
 }
\ No newline at end of file
@@ -118,6 +118,13 @@ class UserService(
             ?: throw InvalidRoleException("User with ID $patientId is not a patient")
     }
 
+    override fun validateDoctor(doctorId: Long) {
+        userRepository.findById(doctorId)
+            .orElseThrow { ResourceNotFoundException("Doctor with ID $doctorId not found") }
+            .takeIf { it.role == Role.DOCTOR }
+            ?: throw InvalidRoleException("User with ID $doctorId is not a doctor")
+    }
+
     override fun findUserForAuthentication(username: String): UserAuthData? {
         return userRepository.findByUsername(username)
             .map { user ->
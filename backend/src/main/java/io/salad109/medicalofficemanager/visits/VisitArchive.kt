@@ -0,0 +1,9 @@
+package io.salad109.medicalofficemanager.visits
+
+/**
+ * Lets the appointments archive job move visits together with their appointments, inside the
+ * caller's transaction.
+ */
+interface VisitArchive {
+    fun archiveForAppointments(appointmentIds: List<Long>): Int
+}
@@ -0,0 +1,33 @@
+package io.salad109.medicalofficemanager.visits.internal
+
+import jakarta.persistence.*
+import org.hibernate.annotations.Immutable
+import java.time.LocalDateTime
+
+@Entity
+@Immutable
+@Table(name = "visits_archive")
+class ArchivedVisit(
+    @Id
+    var id: Long,
+
+    @Column(name = "appointment_id")
+    var appointmentId: Long,
+
+    var notes: String? = null,
+
+    @Column(name = "completed_by_doctor_id")
+    var completedByDoctorId: Long,
+
+    @Column(name = "completed_at")
+    var completedAt: LocalDateTime? = null,
+
+    // Generated by the database from the notes
+    @Column(name = "notes_preview", insertable = false, updatable = false)
+    var notesPreview: String? = null,
+
+    @Column(name = "notes_length", insertable = false, updatable = false)
+    var notesLength: Int? = null,
+
+    var version: Long
+)
@@ -0,0 +1,78 @@
+package io.salad109.medicalofficemanager.visits.internal;
+
+import io.salad109.medicalofficemanager.visits.VisitResponse;
+import io.salad109.medicalofficemanager.visits.internal.dto.VisitNotesResponse;
+import io.salad109.medicalofficemanager.visits.internal.dto.VisitSummaryResponse;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+public interface ArchivedVisitRepository extends JpaRepository<ArchivedVisit, Long> {
+    @Query("SELECT new io.salad109.medicalofficemanager.visits.VisitResponse(" +
+            "v.id, v.notes, v.completedAt, " +
+            "a.id, a.appointmentDate, a.appointmentTime, " +
+            "d.id, d.firstName, d.lastName, " +
+            "p.id, p.firstName, p.lastName) " +
+            "FROM ArchivedVisit v " +
+            "JOIN ArchivedAppointment a ON v.appointmentId = a.id " +
+            "JOIN User d ON v.completedByDoctorId = d.id " +
+            "JOIN User p ON a.patientId = p.id " +
+            "WHERE a.patientId = :patientId " +
+            "ORDER BY a.appointmentDate DESC, a.appointmentTime DESC")
+    List<VisitResponse> findVisitResponsesByPatientId(@Param("patientId") Long patientId);
+
+    // Same rows as above, read one at a time; MySQL only streams a result set with this fetch size
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "" + Integer.MIN_VALUE))
+    @Query("SELECT new io.salad109.medicalofficemanager.visits.VisitResponse(" +
+            "v.id, v.notes, v.completedAt, " +
+            "a.id, a.appointmentDate, a.appointmentTime, " +
+            "d.id, d.firstName, d.lastName, " +
+            "p.id, p.firstName, p.lastName) " +
+            "FROM ArchivedVisit v " +
+            "JOIN ArchivedAppointment a ON v.appointmentId = a.id " +
+            "JOIN User d ON v.completedByDoctorId = d.id " +
+            "JOIN User p ON a.patientId = p.id " +
+            "WHERE a.patientId = :patientId " +
+            "ORDER BY a.appointmentDate DESC, a.appointmentTime DESC")
+    Stream<VisitResponse> streamVisitResponsesByPatientId(@Param("patientId") Long patientId);
+
+    @Query("SELECT COUNT(v) > 0 FROM ArchivedVisit v JOIN ArchivedAppointment a ON v.appointmentId = a.id WHERE a.patientId = :patientId")
+    boolean existsByPatientId(@Param("patientId") Long patientId);
+
+    @Query("SELECT new io.salad109.medicalofficemanager.visits.internal.dto.VisitSummaryResponse(" +
+            "v.id, v.notesPreview, v.notesLength, v.completedAt, " +
+            "a.id, a.appointmentDate, a.appointmentTime, " +
+            "d.id, d.firstName, d.lastName, " +
+            "p.id, p.firstName, p.lastName) " +
+            "FROM ArchivedVisit v " +
+            "JOIN ArchivedAppointment a ON v.appointmentId = a.id " +
+            "JOIN User d ON v.completedByDoctorId = d.id " +
+            "JOIN User p ON a.patientId = p.id " +
+            "WHERE a.patientId = :patientId " +
+            "ORDER BY a.appointmentDate DESC, a.appointmentTime DESC")
+    List<VisitSummaryResponse> findVisitSummariesByPatientId(@Param("patientId") Long patientId);
+
+    @Query("SELECT new io.salad109.medicalofficemanager.visits.internal.dto.VisitNotesResponse(v.id, v.notes) " +
+            "FROM ArchivedVisit v WHERE v.id = :visitId")
+    Optional<VisitNotesResponse> findNotesById(@Param("visitId") Long visitId);
+
+    @Query("SELECT DISTINCT a.patientId FROM ArchivedVisit v JOIN ArchivedAppointment a ON v.appointmentId = a.id " +
+            "WHERE a.appointmentDate BETWEEN :from AND :to ORDER BY a.patientId")
+    List<Long> findPatientIdsWithVisitsBetween(@Param("from") LocalDate from, @Param("to") LocalDate to);
+
+    @Modifying
+    @Query(value = "INSERT INTO visits_archive (id, appointment_id, notes, completed_by_doctor_id, completed_at, version) " +
+            "SELECT id, appointment_id, notes, completed_by_doctor_id, completed_at, version " +
+            "FROM visits WHERE appointment_id IN (:appointmentIds)",
+            nativeQuery = true)
+    int copyFromLive(@Param("appointmentIds") List<Long> appointmentIds);
+}
@@ -22,5 +22,15 @@ class Visit(
     var completedByDoctorId: Long,
 
     @Column(name = "completed_at")
-    var completedAt: LocalDateTime? = null
+    var completedAt: LocalDateTime? = null,
+
+    // Generated by the database from the notes
+    @Column(name = "notes_preview", insertable = false, updatable = false)
+    var notesPreview: String? = null,
+
+    @Column(name = "notes_length", insertable = false, updatable = false)
+    var notesLength: Int? = null,
+
+    @Version
+    var version: Long? = null
 )
\ No newline at end of file
@@ -0,0 +1,34 @@
+package io.salad109.medicalofficemanager.visits.internal
+
+import io.salad109.medicalofficemanager.visits.VisitArchive
+import org.slf4j.LoggerFactory
+import org.springframework.stereotype.Component
+import org.springframework.transaction.annotation.Propagation
+import org.springframework.transaction.annotation.Transactional
+import org.springframework.transaction.support.TransactionSynchronization
+import org.springframework.transaction.support.TransactionSynchronizationManager
+
+@Component
+class VisitArchiver(
+    private val visitRepository: VisitRepository,
+    private val archivedVisitRepository: ArchivedVisitRepository,
+    private val reportCache: VisitReportCache
+) : VisitArchive {
+    private val log = LoggerFactory.getLogger(VisitArchiver::class.java)
+
+    @Transactional(propagation = Propagation.MANDATORY)
+    override fun archiveForAppointments(appointmentIds: List<Long>): Int {
+        val copied = archivedVisitRepository.copyFromLive(appointmentIds)
+        val deleted = visitRepository.deleteByAppointmentIds(appointmentIds)
+        check(copied == deleted) { "Archived $copied visits but removed $deleted" }
+        log.debug("Archived {} visits", copied)
+
+        // Live-only reports lose the moved visits, but only once the move is visible to readers
+        TransactionSynchronizationManager.registerSynchronization(object : TransactionSynchronization {
+            override fun afterCommit() {
+                reportCache.invalidateAll()
+            }
+        })
+        return copied
+    }
+}
@@ -1,10 +1,20 @@
 package io.salad109.medicalofficemanager.visits.internal
 
+import io.salad109.medicalofficemanager.idempotency.IdempotentRequests
 import io.salad109.medicalofficemanager.users.CustomUserDetails
 import io.salad109.medicalofficemanager.visits.VisitResponse
 import io.salad109.medicalofficemanager.visits.internal.dto.VisitCreationRequest
+import io.salad109.medicalofficemanager.visits.internal.dto.VisitNotesResponse
+import io.salad109.medicalofficemanager.visits.internal.dto.VisitReportExportRequest
+import io.salad109.medicalofficemanager.visits.internal.dto.VisitReportJobResponse
+import io.salad109.medicalofficemanager.visits.internal.dto.VisitSearchHit
+import io.salad109.medicalofficemanager.visits.internal.dto.VisitSummaryResponse
 import io.salad109.medicalofficemanager.visits.internal.dto.VisitUpdateRequest
+import jakarta.servlet.http.HttpServletRequest
 import jakarta.validation.Valid
+import org.springframework.data.domain.Page
+import org.springframework.data.domain.Pageable
+import org.springframework.format.annotation.DateTimeFormat
 import org.springframework.http.HttpHeaders
 import org.springframework.http.HttpStatus
 import org.springframework.http.MediaType
@@ -12,48 +22,150 @@ import org.springframework.http.ResponseEntity
 import org.springframework.security.access.prepost.PreAuthorize
 import org.springframework.security.core.annotation.AuthenticationPrincipal
 import org.springframework.web.bind.annotation.*
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody
+import java.io.OutputStream
+import java.net.URI
+import java.nio.channels.Channels
+import java.nio.channels.FileChannel
+import java.nio.file.Path
+import java.time.LocalDate
 import java.time.LocalDateTime
 import java.time.format.DateTimeFormatter
+import java.util.concurrent.CompletableFuture
 
 @RestController
 @RequestMapping("/api/visits")
 class VisitController(
-    private val visitService: VisitService
+    private val visitService: VisitService,
+    private val reportExporter: VisitReportExporter,
+    private val reportJobs: VisitReportJobs,
+    private val idempotentRequests: IdempotentRequests
 ) {
 
     @PreAuthorize("hasRole('DOCTOR')")
     @GetMapping("/patient/{id}")
-    fun getVisitsByPatient(@PathVariable id: Long): ResponseEntity<List<VisitResponse>> {
-        val visits = visitService.findVisitResponsesByPatient(id)
+    fun getVisitsByPatient(
+        @PathVariable id: Long,
+        @RequestParam(defaultValue = "false") fullHistory: Boolean
+    ): ResponseEntity<List<VisitResponse>> {
+        val visits = visitService.findVisitResponsesByPatient(id, fullHistory)
+        return ResponseEntity.ok(visits)
+    }
+
+    @PreAuthorize("hasRole('DOCTOR')")
+    @GetMapping("/patient/{id}/summaries")
+    fun getVisitSummariesByPatient(
+        @PathVariable id: Long,
+        @RequestParam(defaultValue = "false") fullHistory: Boolean
+    ): ResponseEntity<List<VisitSummaryResponse>> {
+        val visits = visitService.findVisitSummariesByPatient(id, fullHistory)
         return ResponseEntity.ok(visits)
     }
 
+    @PreAuthorize("hasRole('DOCTOR')")
+    @GetMapping("/{id}/notes")
+    fun getVisitNotes(@PathVariable id: Long): ResponseEntity<VisitNotesResponse> {
+        val notes = visitService.getVisitNotes(id)
+        return ResponseEntity.ok(notes)
+    }
+
+    @PreAuthorize("hasRole('DOCTOR')")
+    @GetMapping("/search")
+    fun searchVisitNotes(
+        @RequestParam q: String,
+        @RequestParam(required = false) doctorId: Long?,
+        @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) from: LocalDate?,
+        @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) to: LocalDate?,
+        pageable: Pageable
+    ): ResponseEntity<Page<VisitSearchHit>> {
+        val hits = visitService.searchVisitNotes(q, doctorId, from, to, pageable)
+        return ResponseEntity.ok(hits)
+    }
+
+    // Cached reports are answered at once; anything else renders on the report workers, not this thread
     @PreAuthorize("hasRole('DOCTOR') or hasRole('RECEPTIONIST') or (#id == authentication.principal.userId)")
     @GetMapping("/patient/{id}/report")
-    fun generatePatientVisitReport(@PathVariable id: Long): ResponseEntity<ByteArray> {
-        val pdfBytes = visitService.generatePatientVisitReport(id)
+    fun generatePatientVisitReport(
+        @PathVariable id: Long,
+        @RequestParam(defaultValue = "false") fullHistory: Boolean,
+        request: HttpServletRequest
+    ): CompletableFuture<ResponseEntity<StreamingResponseBody>> {
+        return reportJobs.render(id, fullHistory)
+            .thenApply { report -> reportResponse(id, report, request) }
+    }
 
-        val timestamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss"))
-        val filename = "patient_${id}_visit_report_$timestamp.pdf"
+    @PreAuthorize("hasRole('DOCTOR') or hasRole('RECEPTIONIST') or (#id == authentication.principal.userId)")
+    @PostMapping("/patient/{id}/report/jobs")
+    fun submitPatientVisitReportJob(
+        @PathVariable id: Long,
+        @RequestParam(defaultValue = "false") fullHistory: Boolean,
+        @AuthenticationPrincipal principal: CustomUserDetails
+    ): ResponseEntity<VisitReportJobResponse> {
+        val job = reportJobs.submit(id, fullHistory, principal.userId)
+        return ResponseEntity.accepted()
+            .location(URI.create("/api/visits/report-jobs/${job.id}"))
+            .body(job.toResponse())
+    }
+
+    @PreAuthorize("hasRole('DOCTOR') or hasRole('RECEPTIONIST') or hasRole('PATIENT')")
+    @GetMapping("/report-jobs/{jobId}")
+    fun getPatientVisitReportJob(
+        @PathVariable jobId: String,
+        @AuthenticationPrincipal principal: CustomUserDetails
+    ): ResponseEntity<VisitReportJobResponse> {
+        val job = reportJobs.find(jobId, principal.userId)
+        return ResponseEntity.ok(job.toResponse())
+    }
+
+    // A job still in progress answers 202 pointing back at its status, a failed one 409; only 404 means no such job
+    @PreAuthorize("hasRole('DOCTOR') or hasRole('RECEPTIONIST') or hasRole('PATIENT')")
+    @GetMapping("/report-jobs/{jobId}/download")
+    fun downloadPatientVisitReportJob(
+        @PathVariable jobId: String,
+        @AuthenticationPrincipal principal: CustomUserDetails,
+        request: HttpServletRequest
+    ): ResponseEntity<*> {
+        val job = reportJobs.find(jobId, principal.userId)
+        return when (job.status) {
+            VisitReportJobStatus.DONE -> reportResponse(job.patientId, job.result.join(), request)
+            VisitReportJobStatus.FAILED -> ResponseEntity.status(HttpStatus.CONFLICT).body(job.toResponse())
+            VisitReportJobStatus.QUEUED, VisitReportJobStatus.RUNNING -> ResponseEntity.accepted()
+                .location(URI.create("/api/visits/report-jobs/${job.id}"))
+                .header(HttpHeaders.RETRY_AFTER, VisitReportJobs.RETRY_AFTER_SECONDS.toString())
+                .body(job.toResponse())
+        }
+    }
+
+    @PreAuthorize("hasRole('DOCTOR') or hasRole('RECEPTIONIST')")
+    @PostMapping("/reports/export")
+    fun exportVisitReports(
+        @Valid @RequestBody request: VisitReportExportRequest
+    ): ResponseEntity<StreamingResponseBody> {
+        val patientIds = reportExporter.patientsFor(request)
 
+        val timestamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss"))
         val headers = HttpHeaders()
-        headers.contentType = MediaType.APPLICATION_PDF
-        headers.setContentDispositionFormData("attachment", filename)
-        headers.cacheControl = "must-revalidate, post-check=0, pre-check=0"
+        headers.contentType = MediaType.parseMediaType("application/zip")
+        headers.setContentDispositionFormData("attachment", "visit_reports_$timestamp.zip")
 
         return ResponseEntity.ok()
             .headers(headers)
-            .body(pdfBytes)
+            .body(StreamingResponseBody { outputStream ->
+                reportExporter.export(patientIds, request.fullHistory, outputStream)
+            })
     }
 
     @PreAuthorize("hasRole('DOCTOR')")
     @PostMapping
     fun markVisitAsCompleted(
         @Valid @RequestBody request: VisitCreationRequest,
-        @AuthenticationPrincipal principal: CustomUserDetails
+        @AuthenticationPrincipal principal: CustomUserDetails,
+        @RequestHeader("Idempotency-Key", required = false) idempotencyKey: String?
     ): ResponseEntity<VisitResponse> {
-        val visit = visitService.markVisitAsCompleted(request, principal.userId)
-        return ResponseEntity.status(HttpStatus.CREATED).body(visit)
+        return idempotentRequests.execute(idempotencyKey, "visits.complete", request, VisitResponse::class.java) {
+            val visit = visitService.markVisitAsCompleted(request, principal.userId)
+            ResponseEntity.status(HttpStatus.CREATED).body(visit)
+        }
     }
 
     @PreAuthorize("hasRole('DOCTOR')")
@@ -65,4 +177,50 @@ class VisitController(
         val updatedVisit = visitService.updateVisitNotes(id, request)
         return ResponseEntity.ok(updatedVisit)
     }
+
+    private fun reportResponse(
+        patientId: Long,
+        report: VisitReportCache.CachedReport,
+        request: HttpServletRequest
+    ): ResponseEntity<StreamingResponseBody> {
+        val timestamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss"))
+        val filename = "patient_${patientId}_visit_report_$timestamp.pdf"
+
+        val headers = HttpHeaders()
+        headers.contentType = MediaType.APPLICATION_PDF
+        headers.setContentDispositionFormData("attachment", filename)
+        headers.cacheControl = "must-revalidate, post-check=0, pre-check=0"
+        headers.contentLength = report.size
+
+        // Tomcat sends the file itself once the handler returns, straight from the page cache
+        if (request.getAttribute(SENDFILE_SUPPORT) == true) {
+            request.setAttribute(SENDFILE_FILENAME, report.path.toAbsolutePath().toString())
+            request.setAttribute(SENDFILE_START, 0L)
+            request.setAttribute(SENDFILE_END, report.size)
+            return ResponseEntity.ok()
+                .headers(headers)
+                .build()
+        }
+
+        return ResponseEntity.ok()
+            .headers(headers)
+            .body(StreamingResponseBody { outputStream -> transferFile(report.path, report.size, outputStream) })
+    }
+
+    private fun transferFile(path: Path, size: Long, outputStream: OutputStream) {
+        FileChannel.open(path).use { file ->
+            val target = Channels.newChannel(outputStream)
+            var position = 0L
+            while (position < size) {
+                position += file.transferTo(position, size - position, target)
+            }
+        }
+    }
+
+    companion object {
+        private const val SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support"
+        private const val SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename"
+        private const val SENDFILE_START = "org.apache.tomcat.sendfile.start"
+        private const val SENDFILE_END = "org.apache.tomcat.sendfile.end"
+    }
 }
\ No newline at end of file
@@ -7,7 +7,7 @@ import org.openpdf.text.pdf.PdfPTable
 import org.openpdf.text.pdf.PdfWriter
 import org.springframework.stereotype.Component
 import java.awt.Color
-import java.io.ByteArrayOutputStream
+import java.io.OutputStream
 import java.time.format.DateTimeFormatter
 
 @Component
@@ -17,27 +17,37 @@ class VisitPdfGenerator {
     private val timeFormatter = DateTimeFormatter.ofPattern("HH:mm")
     private val dateTimeFormatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm")
 
-    fun generatePatientVisitReport(visits: List<VisitResponse>): ByteArray {
-        if (visits.isEmpty()) {
+    companion object {
+        // Rows buffered in the table before they are laid out and written to the stream
+        private const val FLUSH_ROWS = 50
+    }
+
+    /**
+     * Renders [visits] straight into [outputStream], holding at most [FLUSH_ROWS] table rows in memory.
+     * The visits are expected newest first and are written in the order they arrive. Returns the number
+     * of visits written.
+     */
+    fun writePatientVisitReport(visits: Iterator<VisitResponse>, outputStream: OutputStream): Int {
+        if (!visits.hasNext()) {
             throw IllegalArgumentException("Cannot generate report with no visits")
         }
 
-        val outputStream = ByteArrayOutputStream()
         val document = Document(PageSize.A4)
-        PdfWriter.getInstance(document, outputStream)
+        // The caller owns the stream, e.g. the servlet response
+        PdfWriter.getInstance(document, outputStream).setCloseStream(false)
 
         document.open()
 
-        val firstVisit = visits.first()
+        val firstVisit = visits.next()
         addHeader(document, firstVisit)
 
-        addVisitHistoryTable(document, visits)
+        val visitCount = addVisitHistoryTable(document, firstVisit, visits)
 
-        addFooter(document, visits.size)
+        addFooter(document, visitCount)
 
         document.close()
 
-        return outputStream.toByteArray()
+        return visitCount
     }
 
     private fun addHeader(document: Document, visit: VisitResponse) {
@@ -73,7 +83,7 @@ class VisitPdfGenerator {
         document.add(generatedDate)
     }
 
-    private fun addVisitHistoryTable(document: Document, visits: List<VisitResponse>) {
+    private fun addVisitHistoryTable(document: Document, firstVisit: VisitResponse, visits: Iterator<VisitResponse>): Int {
         val headerFont = Font(Font.HELVETICA, 12f, Font.BOLD)
         val cellFont = Font(Font.HELVETICA, 10f)
 
@@ -84,6 +94,9 @@ class VisitPdfGenerator {
         val table = PdfPTable(5)
         table.widthPercentage = 100f
         table.setWidths(floatArrayOf(1.2f, 1f, 2f, 1.8f, 3f))
+        table.headerRows = 1
+        // An incomplete table drops its body rows once they have been written out
+        table.isComplete = false
 
         addTableHeader(table, "Date", headerFont)
         addTableHeader(table, "Time", headerFont)
@@ -91,16 +104,28 @@ class VisitPdfGenerator {
         addTableHeader(table, "Completed", headerFont)
         addTableHeader(table, "Notes", headerFont)
 
-        visits.sortedByDescending { it.appointmentDate }
-            .forEach { visit ->
-                addTableCell(table, visit.appointmentDate.format(dateFormatter), cellFont)
-                addTableCell(table, visit.appointmentTime.format(timeFormatter), cellFont)
-                addTableCell(table, "Dr. ${visit.doctorFirstName} ${visit.doctorLastName}", cellFont)
-                addTableCell(table, visit.completedAt?.format(dateTimeFormatter) ?: "N/A", cellFont)
-                addTableCell(table, visit.notes ?: "N/A", cellFont)
+        var visitCount = 0
+        var visit = firstVisit
+        while (true) {
+            addTableCell(table, visit.appointmentDate.format(dateFormatter), cellFont)
+            addTableCell(table, visit.appointmentTime.format(timeFormatter), cellFont)
+            addTableCell(table, "Dr. ${visit.doctorFirstName} ${visit.doctorLastName}", cellFont)
+            addTableCell(table, visit.completedAt?.format(dateTimeFormatter) ?: "N/A", cellFont)
+            addTableCell(table, visit.notes ?: "N/A", cellFont)
+            visitCount++
+
+            if (!visits.hasNext()) {
+                break
             }
+            if (visitCount % FLUSH_ROWS == 0) {
+                document.add(table)
+            }
+            visit = visits.next()
+        }
 
+        table.isComplete = true
         document.add(table)
+        return visitCount
     }
 
     private fun addTableHeader(table: PdfPTable, text: String, font: Font) {
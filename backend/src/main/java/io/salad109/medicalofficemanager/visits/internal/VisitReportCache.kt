@@ -0,0 +1,192 @@
+package io.salad109.medicalofficemanager.visits.internal
+
+import io.micrometer.core.instrument.Counter
+import io.micrometer.core.instrument.Gauge
+import io.micrometer.core.instrument.MeterRegistry
+import io.salad109.medicalofficemanager.infrastructure.SingleFlight
+import org.slf4j.LoggerFactory
+import org.springframework.scheduling.annotation.Scheduled
+import org.springframework.stereotype.Component
+import java.io.OutputStream
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.Paths
+import java.nio.file.StandardCopyOption
+import java.security.MessageDigest
+import java.util.HexFormat
+import java.util.UUID
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * Rendered visit reports on disk, named by a hash of the patient, the report scope and the patient's
+ * history version. Changing a visit bumps the version, so stale files are simply never asked for again
+ * and age out. Files are only ever read by the web server, never loaded onto the heap.
+ */
+@Component
+class VisitReportCache(
+    private val reportCacheProperties: VisitReportCacheProperties,
+    private val singleFlight: SingleFlight,
+    private val meterRegistry: MeterRegistry
+) {
+    private val log = LoggerFactory.getLogger(VisitReportCache::class.java)
+
+    // The configured directory may be shared, so everything lives in a subdirectory of its own
+    private val directory: Path = Paths.get(reportCacheProperties.directory).resolve(SUBDIRECTORY)
+    private val versions = ConcurrentHashMap<Long, Long>()
+    private val entries = ConcurrentHashMap<String, CachedReport>()
+    private val totalBytes = AtomicLong()
+
+    // Versions restart at zero, so names from a previous run or another instance must never match
+    private val instanceId = UUID.randomUUID().toString().substring(0, 8)
+
+    // Bumped when visits move between tables, which can change any live-only report
+    private val epoch = AtomicLong()
+
+    companion object {
+        // A file handed to the web server is kept at least this long, so sendfile never finds it gone
+        private const val IN_USE_MILLIS = 60_000L
+
+        private const val SUBDIRECTORY = "visit-reports"
+        private val OWN_FILE = Regex("[0-9a-f]{64}\\.pdf|report-.*\\.tmp")
+    }
+
+    init {
+        Files.createDirectories(directory)
+        // Nothing written by a previous run can be addressed any more; anything else is left alone
+        Files.list(directory).use { files ->
+            files.filter { Files.isRegularFile(it) && OWN_FILE.matches(it.fileName.toString()) }
+                .forEach { Files.deleteIfExists(it) }
+        }
+
+        Gauge.builder("visit.report.cache.size", totalBytes) { it.get().toDouble() }
+            .description("Bytes of rendered visit reports on disk")
+            .baseUnit("bytes")
+            .register(meterRegistry)
+    }
+
+    /**
+     * Returns the cached report, rendering it with [render] first on a miss. Concurrent misses for the
+     * same report share one rendering.
+     */
+    fun getOrRender(patientId: Long, fullHistory: Boolean, render: (OutputStream) -> Unit): CachedReport {
+        val key = keyOf(patientId, fullHistory)
+        hit(key)?.let { return it }
+
+        return singleFlight.execute("visits.report-cache", listOf(key)) {
+            cached(key) ?: store(key, render)
+        }
+    }
+
+    /**
+     * Returns the cached report without rendering anything on a miss.
+     */
+    fun find(patientId: Long, fullHistory: Boolean): CachedReport? = hit(keyOf(patientId, fullHistory))
+
+    /**
+     * Whether [report] is still what the cache holds for the patient's current history.
+     */
+    fun isCurrent(report: CachedReport, patientId: Long, fullHistory: Boolean): Boolean =
+        cached(keyOf(patientId, fullHistory)) === report
+
+    fun invalidate(patientId: Long) {
+        versions.merge(patientId, 1L) { current, increment -> current + increment }
+    }
+
+    fun invalidateAll() {
+        epoch.incrementAndGet()
+    }
+
+    /**
+     * Drops reports past their maximum age, then the least recently served ones until the cache fits
+     * its size budget again.
+     */
+    @Scheduled(fixedDelay = 300_000L)
+    fun evict() {
+        val now = System.currentTimeMillis()
+        val maxAgeMillis = reportCacheProperties.maxAge.toMillis()
+        entries.values
+            .filter { now - it.createdAt > maxAgeMillis && now - it.lastAccess > IN_USE_MILLIS }
+            .forEach { remove(it, "age") }
+
+        val maxBytes = reportCacheProperties.maxSize.toBytes()
+        if (totalBytes.get() <= maxBytes) {
+            return
+        }
+        for (report in entries.values.sortedBy { it.lastAccess }) {
+            if (totalBytes.get() <= maxBytes) {
+                break
+            }
+            if (now - report.lastAccess > IN_USE_MILLIS) {
+                remove(report, "size")
+            }
+        }
+    }
+
+    // Rendered to a temporary file first, so a half-written report is never served
+    private fun store(key: String, render: (OutputStream) -> Unit): CachedReport {
+        lookups("miss").increment()
+        val temp = Files.createTempFile(directory, "report-", ".tmp")
+        val report = try {
+            Files.newOutputStream(temp).buffered().use(render)
+            val path = Files.move(temp, directory.resolve("$key.pdf"), StandardCopyOption.ATOMIC_MOVE)
+            val now = System.currentTimeMillis()
+            CachedReport(key, path, Files.size(path), now, now)
+        } finally {
+            Files.deleteIfExists(temp)
+        }
+
+        totalBytes.addAndGet(report.size)
+        entries.put(key, report)?.let { totalBytes.addAndGet(-it.size) }
+        log.debug("Cached visit report {} ({} bytes)", key, report.size)
+
+        // The new report was just served, so it is never the one evicted here
+        if (totalBytes.get() > reportCacheProperties.maxSize.toBytes()) {
+            evict()
+        }
+        return report
+    }
+
+    private fun cached(key: String): CachedReport? = entries[key]?.takeIf { Files.exists(it.path) }
+
+    private fun hit(key: String): CachedReport? {
+        return cached(key)?.also {
+            lookups("hit").increment()
+            it.lastAccess = System.currentTimeMillis()
+        }
+    }
+
+    private fun remove(report: CachedReport, reason: String) {
+        if (!entries.remove(report.key, report)) {
+            return
+        }
+        totalBytes.addAndGet(-report.size)
+        Files.deleteIfExists(report.path)
+        Counter.builder("visit.report.cache.evictions")
+            .description("Cached visit reports removed from disk")
+            .tag("reason", reason)
+            .register(meterRegistry)
+            .increment()
+    }
+
+    private fun keyOf(patientId: Long, fullHistory: Boolean): String {
+        val version = "$instanceId:${epoch.get()}:$patientId:${versions[patientId] ?: 0L}:$fullHistory"
+        val digest = MessageDigest.getInstance("SHA-256").digest(version.toByteArray())
+        return HexFormat.of().formatHex(digest)
+    }
+
+    private fun lookups(result: String): Counter {
+        return Counter.builder("visit.report.cache")
+            .description("Visit report cache lookups")
+            .tag("result", result)
+            .register(meterRegistry)
+    }
+
+    class CachedReport(
+        val key: String,
+        val path: Path,
+        val size: Long,
+        val createdAt: Long,
+        @Volatile var lastAccess: Long
+    )
+}
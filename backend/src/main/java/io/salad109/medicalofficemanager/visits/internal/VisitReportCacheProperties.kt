@@ -0,0 +1,14 @@
+package io.salad109.medicalofficemanager.visits.internal
+
+import org.springframework.boot.context.properties.ConfigurationProperties
+import org.springframework.context.annotation.Configuration
+import org.springframework.util.unit.DataSize
+import java.time.Duration
+
+@Configuration
+@ConfigurationProperties(prefix = "visits.report-cache")
+class VisitReportCacheProperties {
+    var directory: String = System.getProperty("java.io.tmpdir") + "/medical-office-manager/reports"
+    var maxSize: DataSize = DataSize.ofMegabytes(512)
+    var maxAge: Duration = Duration.ofDays(7)
+}
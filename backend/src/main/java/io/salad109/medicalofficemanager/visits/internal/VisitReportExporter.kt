@@ -0,0 +1,162 @@
+package io.salad109.medicalofficemanager.visits.internal
+
+import io.salad109.medicalofficemanager.exception.InvalidRoleException
+import io.salad109.medicalofficemanager.exception.ResourceNotFoundException
+import io.salad109.medicalofficemanager.exception.TooManyRequestsException
+import io.salad109.medicalofficemanager.visits.internal.dto.VisitReportExportRequest
+import org.slf4j.LoggerFactory
+import org.springframework.stereotype.Component
+import java.io.OutputStream
+import java.nio.file.Files
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.LinkedBlockingQueue
+import java.util.concurrent.TimeUnit
+import java.util.zip.Deflater
+import java.util.zip.ZipEntry
+import java.util.zip.ZipOutputStream
+
+/**
+ * Bulk export of visit reports as one ZIP. Reports render on the same bounded workers as every other
+ * report, so an export competes for them instead of adding CPU load of its own, and keeps at most one
+ * render per worker in flight. Finished reports come from the report cache on disk and are copied into
+ * the archive in completion order.
+ */
+@Component
+class VisitReportExporter(
+    private val reportJobs: VisitReportJobs,
+    private val reportJobProperties: VisitReportJobProperties,
+    private val visitRepository: VisitRepository,
+    private val archivedVisitRepository: ArchivedVisitRepository
+) {
+    private val log = LoggerFactory.getLogger(VisitReportExporter::class.java)
+
+    companion object {
+        private const val MAX_PATIENTS = 1000
+        private const val QUEUE_RETRY_MILLIS = 200L
+    }
+
+    /**
+     * Resolves the patients to export, failing before anything is streamed when the request is invalid
+     * or the report queue is already full.
+     */
+    fun patientsFor(request: VisitReportExportRequest): List<Long> {
+        val byIds = !request.patientIds.isNullOrEmpty()
+        val byRange = request.from != null || request.to != null
+        if (byIds == byRange) {
+            throw IllegalArgumentException("Export needs either patient IDs or a date range")
+        }
+        reportJobs.checkCapacity()
+        if (byIds) {
+            return request.patientIds.distinct()
+        }
+
+        val from = request.from ?: throw IllegalArgumentException("Date range needs a start")
+        val to = request.to ?: throw IllegalArgumentException("Date range needs an end")
+        if (to.isBefore(from)) {
+            throw IllegalArgumentException("Date range end must not be before its start")
+        }
+        val live = visitRepository.findPatientIdsWithVisitsBetween(from, to)
+        val patientIds = if (request.fullHistory) {
+            (live + archivedVisitRepository.findPatientIdsWithVisitsBetween(from, to)).distinct().sorted()
+        } else {
+            live
+        }
+        if (patientIds.size > MAX_PATIENTS) {
+            throw IllegalArgumentException("Date range matches more than $MAX_PATIENTS patients")
+        }
+        return patientIds
+    }
+
+    /**
+     * Writes one report per patient into a ZIP on [outputStream]. Patients that have no report, or whose
+     * report failed to render, are listed in a `skipped.txt` entry instead of failing the whole export.
+     */
+    fun export(patientIds: List<Long>, fullHistory: Boolean, outputStream: OutputStream) {
+        val startedAt = System.nanoTime()
+        val finished = LinkedBlockingQueue<ExportedReport>()
+        val skipped = ArrayList<String>()
+        val remaining = patientIds.iterator()
+        var inFlight = 0
+
+        fun submitNext() {
+            val patientId = remaining.next()
+            inFlight++
+            try {
+                submit(patientId, fullHistory).whenComplete { report, ex ->
+                    finished.put(ExportedReport(patientId, report, ex))
+                }
+            } catch (ex: Exception) {
+                finished.put(ExportedReport(patientId, null, ex))
+            }
+        }
+
+        ZipOutputStream(outputStream).use { zip ->
+            // PDF content streams are already compressed
+            zip.setLevel(Deflater.BEST_SPEED)
+            repeat(minOf(reportJobProperties.workers, patientIds.size)) { submitNext() }
+
+            // Reports still rendering when the client goes away are kept in the cache for the next request
+            while (inFlight > 0) {
+                val exported = finished.take()
+                inFlight--
+                if (remaining.hasNext()) {
+                    submitNext()
+                }
+
+                val report = exported.report
+                if (report == null) {
+                    skipped += "${exported.patientId}: ${skipReason(exported.patientId, exported.error)}"
+                    continue
+                }
+                zip.putNextEntry(ZipEntry("patient_${exported.patientId}_visit_report.pdf"))
+                Files.copy(report.path, zip)
+                zip.closeEntry()
+            }
+
+            if (skipped.isNotEmpty()) {
+                zip.putNextEntry(ZipEntry("skipped.txt"))
+                zip.write(skipped.joinToString("\n", postfix = "\n").toByteArray())
+                zip.closeEntry()
+            }
+        }
+
+        log.info(
+            "Exported visit reports for {} patients ({} skipped) in {} ms",
+            patientIds.size, skipped.size, (System.nanoTime() - startedAt) / 1_000_000
+        )
+    }
+
+    // The response is already streaming, so a full queue is waited out for a while rather than answered
+    private fun submit(patientId: Long, fullHistory: Boolean): CompletableFuture<VisitReportCache.CachedReport> {
+        val deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(VisitReportJobs.RETRY_AFTER_SECONDS)
+        while (true) {
+            try {
+                return reportJobs.render(patientId, fullHistory)
+            } catch (ex: TooManyRequestsException) {
+                if (System.nanoTime() > deadline) {
+                    throw ex
+                }
+                Thread.sleep(QUEUE_RETRY_MILLIS)
+            }
+        }
+    }
+
+    // The response is already streaming, so an unexpected failure can only be reported in the archive
+    private fun skipReason(patientId: Long, error: Throwable?): String? = when (error) {
+        is IllegalArgumentException,
+        is ResourceNotFoundException,
+        is InvalidRoleException,
+        is TooManyRequestsException -> error.message
+
+        else -> {
+            log.error("Rendering the exported visit report for patient {} failed", patientId, error)
+            "rendering failed"
+        }
+    }
+
+    private class ExportedReport(
+        val patientId: Long,
+        val report: VisitReportCache.CachedReport?,
+        val error: Throwable?
+    )
+}
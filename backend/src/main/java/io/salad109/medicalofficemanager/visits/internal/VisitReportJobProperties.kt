@@ -0,0 +1,13 @@
+package io.salad109.medicalofficemanager.visits.internal
+
+import org.springframework.boot.context.properties.ConfigurationProperties
+import org.springframework.context.annotation.Configuration
+import java.time.Duration
+
+@Configuration
+@ConfigurationProperties(prefix = "visits.report-jobs")
+class VisitReportJobProperties {
+    var workers: Int = 2
+    var queueCapacity: Int = 20
+    var retention: Duration = Duration.ofMinutes(15)
+}
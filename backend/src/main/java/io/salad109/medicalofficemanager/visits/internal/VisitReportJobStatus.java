@@ -0,0 +1,8 @@
+package io.salad109.medicalofficemanager.visits.internal;
+
+public enum VisitReportJobStatus {
+    QUEUED,
+    RUNNING,
+    DONE,
+    FAILED
+}
@@ -0,0 +1,187 @@
+package io.salad109.medicalofficemanager.visits.internal
+
+import io.micrometer.core.instrument.Counter
+import io.micrometer.core.instrument.Gauge
+import io.micrometer.core.instrument.MeterRegistry
+import io.micrometer.core.instrument.Timer
+import io.salad109.medicalofficemanager.exception.ResourceNotFoundException
+import io.salad109.medicalofficemanager.exception.TooManyRequestsException
+import io.salad109.medicalofficemanager.visits.internal.dto.VisitReportJobResponse
+import jakarta.annotation.PreDestroy
+import org.slf4j.LoggerFactory
+import org.springframework.scheduling.annotation.Scheduled
+import org.springframework.stereotype.Component
+import java.time.Instant
+import java.util.UUID
+import java.util.concurrent.ArrayBlockingQueue
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.RejectedExecutionException
+import java.util.concurrent.ThreadPoolExecutor
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * Bulkhead for report rendering: a fixed pool of workers behind a bounded queue, so reports never run
+ * on request threads and a burst of them is turned away with 429 instead of piling up. Cached reports
+ * skip the queue entirely.
+ */
+@Component
+class VisitReportJobs(
+    private val visitService: VisitService,
+    private val reportCache: VisitReportCache,
+    private val reportJobProperties: VisitReportJobProperties,
+    meterRegistry: MeterRegistry
+) {
+    private val log = LoggerFactory.getLogger(VisitReportJobs::class.java)
+
+    private val jobs = ConcurrentHashMap<String, VisitReportJob>()
+    private val latestJobs = ConcurrentHashMap<JobKey, VisitReportJob>()
+    private val threadCount = AtomicInteger()
+    private val workers = ThreadPoolExecutor(
+        reportJobProperties.workers,
+        reportJobProperties.workers,
+        0L,
+        TimeUnit.MILLISECONDS,
+        ArrayBlockingQueue(reportJobProperties.queueCapacity)
+    ) { runnable ->
+        Thread(runnable, "visit-report-${threadCount.incrementAndGet()}").apply { isDaemon = true }
+    }
+
+    private val waitTimer = Timer.builder("visit.report.jobs.wait")
+        .description("Time a report spent queued before a worker picked it up")
+        .publishPercentiles(0.5, 0.95, 0.99)
+        .register(meterRegistry)
+    private val renderTimer = Timer.builder("visit.report.jobs.render")
+        .description("Time spent rendering a single report")
+        .publishPercentiles(0.5, 0.95, 0.99)
+        .register(meterRegistry)
+    private val rejectedCounter = Counter.builder("visit.report.jobs.rejected")
+        .description("Reports turned away because the queue was full")
+        .register(meterRegistry)
+
+    companion object {
+        const val RETRY_AFTER_SECONDS = 5L
+    }
+
+    init {
+        Gauge.builder("visit.report.jobs.queued", workers) { it.queue.size.toDouble() }
+            .description("Reports waiting for a worker")
+            .register(meterRegistry)
+    }
+
+    /**
+     * Queues a report job owned by [requestedBy], who alone can poll and download it. Asking again for a
+     * report that is still being rendered, or is done and still current, returns the same job.
+     */
+    fun submit(patientId: Long, fullHistory: Boolean, requestedBy: Long): VisitReportJob {
+        val key = JobKey(patientId, fullHistory, requestedBy)
+        latestJobs[key]?.takeIf { it.isReusable() }?.let { return it }
+
+        val job = VisitReportJob(UUID.randomUUID().toString(), patientId, fullHistory, requestedBy, Instant.now())
+        job.result = render(patientId, fullHistory) { job.status = VisitReportJobStatus.RUNNING }
+        job.result.whenComplete { _, ex ->
+            job.completedAt = Instant.now()
+            job.error = ex?.message
+            job.status = if (ex == null) VisitReportJobStatus.DONE else VisitReportJobStatus.FAILED
+        }
+        jobs[job.id] = job
+        latestJobs[key] = job
+        return job
+    }
+
+    /**
+     * Fails with [TooManyRequestsException] when no report could be queued right now.
+     */
+    fun checkCapacity() {
+        if (workers.queue.remainingCapacity() == 0) {
+            rejectedCounter.increment()
+            throw TooManyRequestsException("Report queue is full, try again later", RETRY_AFTER_SECONDS)
+        }
+    }
+
+    fun find(jobId: String, requestedBy: Long): VisitReportJob {
+        return jobs[jobId]?.takeIf { it.requestedBy == requestedBy }
+            ?: throw ResourceNotFoundException("Report job not found with ID: $jobId")
+    }
+
+    /**
+     * Validates the request on the caller's thread, then returns the cached report or one rendered by
+     * a worker. Throws [TooManyRequestsException] when the queue is full.
+     */
+    fun render(
+        patientId: Long,
+        fullHistory: Boolean,
+        onStart: () -> Unit = {}
+    ): CompletableFuture<VisitReportCache.CachedReport> {
+        visitService.checkReportable(patientId, fullHistory)
+        reportCache.find(patientId, fullHistory)?.let {
+            onStart()
+            return CompletableFuture.completedFuture(it)
+        }
+
+        val result = CompletableFuture<VisitReportCache.CachedReport>()
+        val queuedAt = System.nanoTime()
+        try {
+            workers.execute {
+                waitTimer.record(System.nanoTime() - queuedAt, TimeUnit.NANOSECONDS)
+                onStart()
+                val sample = Timer.start()
+                try {
+                    result.complete(visitService.getPatientVisitReport(patientId, fullHistory))
+                } catch (ex: Exception) {
+                    log.warn("Rendering visit report for patient {} failed: {}", patientId, ex.message)
+                    result.completeExceptionally(ex)
+                } finally {
+                    sample.stop(renderTimer)
+                }
+            }
+        } catch (ex: RejectedExecutionException) {
+            rejectedCounter.increment()
+            throw TooManyRequestsException("Report queue is full, try again later", RETRY_AFTER_SECONDS)
+        }
+        return result
+    }
+
+    @Scheduled(fixedDelay = 60_000L)
+    fun purgeFinished() {
+        val cutoff = Instant.now().minus(reportJobProperties.retention)
+        jobs.values.removeIf { job -> job.completedAt?.isBefore(cutoff) == true }
+        latestJobs.values.removeIf { job -> job.completedAt?.isBefore(cutoff) == true }
+    }
+
+    @PreDestroy
+    fun shutdown() {
+        workers.shutdownNow()
+    }
+
+    // A finished job is only handed out again while its report is still the one the cache would serve
+    private fun VisitReportJob.isReusable(): Boolean = when {
+        !result.isDone -> true
+        result.isCompletedExceptionally -> false
+        else -> reportCache.isCurrent(result.join(), patientId, fullHistory)
+    }
+
+    private data class JobKey(val patientId: Long, val fullHistory: Boolean, val requestedBy: Long)
+
+    class VisitReportJob(
+        val id: String,
+        val patientId: Long,
+        val fullHistory: Boolean,
+        val requestedBy: Long,
+        val submittedAt: Instant
+    ) {
+        @Volatile
+        var status = VisitReportJobStatus.QUEUED
+
+        @Volatile
+        var completedAt: Instant? = null
+
+        @Volatile
+        var error: String? = null
+
+        lateinit var result: CompletableFuture<VisitReportCache.CachedReport>
+
+        fun toResponse() = VisitReportJobResponse(id, patientId, fullHistory, status, submittedAt, completedAt, error)
+    }
+}
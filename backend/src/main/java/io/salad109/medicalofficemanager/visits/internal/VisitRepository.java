@@ -1,12 +1,22 @@
 package io.salad109.medicalofficemanager.visits.internal;
 
 import io.salad109.medicalofficemanager.visits.VisitResponse;
+import io.salad109.medicalofficemanager.visits.internal.dto.VisitNotesResponse;
+import io.salad109.medicalofficemanager.visits.internal.dto.VisitSummaryResponse;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 
+import java.time.LocalDate;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 public interface VisitRepository extends JpaRepository<Visit, Long> {
     @Query("SELECT new io.salad109.medicalofficemanager.visits.VisitResponse(" +
@@ -22,6 +32,76 @@ public interface VisitRepository extends JpaRepository<Visit, Long> {
             "ORDER BY a.appointmentDate DESC, a.appointmentTime DESC")
     List<VisitResponse> findVisitResponsesByPatientId(@Param("patientId") Long patientId);
 
+    // Same rows as above, read one at a time; MySQL only streams a result set with this fetch size
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "" + Integer.MIN_VALUE))
+    @Query("SELECT new io.salad109.medicalofficemanager.visits.VisitResponse(" +
+            "v.id, v.notes, v.completedAt, " +
+            "a.id, a.appointmentDate, a.appointmentTime, " +
+            "d.id, d.firstName, d.lastName, " +
+            "p.id, p.firstName, p.lastName) " +
+            "FROM Visit v " +
+            "JOIN Appointment a ON v.appointmentId = a.id " +
+            "JOIN User d ON v.completedByDoctorId = d.id " +
+            "JOIN User p ON a.patientId = p.id " +
+            "WHERE a.patientId = :patientId " +
+            "ORDER BY a.appointmentDate DESC, a.appointmentTime DESC")
+    Stream<VisitResponse> streamVisitResponsesByPatientId(@Param("patientId") Long patientId);
+
+    @Query("SELECT COUNT(v) > 0 FROM Visit v JOIN Appointment a ON v.appointmentId = a.id WHERE a.patientId = :patientId")
+    boolean existsByPatientId(@Param("patientId") Long patientId);
+
+    @Query("SELECT new io.salad109.medicalofficemanager.visits.internal.dto.VisitSummaryResponse(" +
+            "v.id, v.notesPreview, v.notesLength, v.completedAt, " +
+            "a.id, a.appointmentDate, a.appointmentTime, " +
+            "d.id, d.firstName, d.lastName, " +
+            "p.id, p.firstName, p.lastName) " +
+            "FROM Visit v " +
+            "JOIN Appointment a ON v.appointmentId = a.id " +
+            "JOIN User d ON v.completedByDoctorId = d.id " +
+            "JOIN User p ON a.patientId = p.id " +
+            "WHERE a.patientId = :patientId " +
+            "ORDER BY a.appointmentDate DESC, a.appointmentTime DESC")
+    List<VisitSummaryResponse> findVisitSummariesByPatientId(@Param("patientId") Long patientId);
+
+    @Query("SELECT new io.salad109.medicalofficemanager.visits.internal.dto.VisitNotesResponse(v.id, v.notes) " +
+            "FROM Visit v WHERE v.id = :visitId")
+    Optional<VisitNotesResponse> findNotesById(@Param("visitId") Long visitId);
+
+    @Query("SELECT DISTINCT a.patientId FROM Visit v JOIN Appointment a ON v.appointmentId = a.id " +
+            "WHERE a.appointmentDate BETWEEN :from AND :to ORDER BY a.patientId")
+    List<Long> findPatientIdsWithVisitsBetween(@Param("from") LocalDate from, @Param("to") LocalDate to);
+
+    @Query("SELECT new io.salad109.medicalofficemanager.visits.internal.dto.VisitNotesResponse(v.id, v.notes) " +
+            "FROM Visit v WHERE v.id IN :visitIds")
+    List<VisitNotesResponse> findNotesByIds(@Param("visitIds") List<Long> visitIds);
+
+    // The query is a full-text boolean-mode expression; best matches first, newest first among equals
+    @Query(value = "SELECT new io.salad109.medicalofficemanager.visits.internal.dto.VisitSummaryResponse(" +
+            "v.id, v.notesPreview, v.notesLength, v.completedAt, " +
+            "a.id, a.appointmentDate, a.appointmentTime, " +
+            "d.id, d.firstName, d.lastName, " +
+            "p.id, p.firstName, p.lastName) " +
+            "FROM Visit v " +
+            "JOIN Appointment a ON v.appointmentId = a.id " +
+            "JOIN User d ON v.completedByDoctorId = d.id " +
+            "JOIN User p ON a.patientId = p.id " +
+            "WHERE match_against(v.notes, :query) > 0 " +
+            "AND (:doctorId IS NULL OR v.completedByDoctorId = :doctorId) " +
+            "AND (:from IS NULL OR a.appointmentDate >= :from) " +
+            "AND (:to IS NULL OR a.appointmentDate <= :to) " +
+            "ORDER BY match_against(v.notes, :query) DESC, a.appointmentDate DESC, a.appointmentTime DESC",
+            countQuery = "SELECT COUNT(v) FROM Visit v " +
+                    "JOIN Appointment a ON v.appointmentId = a.id " +
+                    "WHERE match_against(v.notes, :query) > 0 " +
+                    "AND (:doctorId IS NULL OR v.completedByDoctorId = :doctorId) " +
+                    "AND (:from IS NULL OR a.appointmentDate >= :from) " +
+                    "AND (:to IS NULL OR a.appointmentDate <= :to)")
+    Page<VisitSummaryResponse> searchVisitSummariesByNotes(@Param("query") String query,
+                                                           @Param("doctorId") Long doctorId,
+                                                           @Param("from") LocalDate from,
+                                                           @Param("to") LocalDate to,
+                                                           Pageable pageable);
+
     @Query("SELECT new io.salad109.medicalofficemanager.visits.VisitResponse(" +
             "v.id, v.notes, v.completedAt, " +
             "a.id, a.appointmentDate, a.appointmentTime, " +
@@ -35,4 +115,8 @@ public interface VisitRepository extends JpaRepository<Visit, Long> {
     Optional<VisitResponse> findVisitResponseById(@Param("visitId") Long visitId);
 
     boolean existsByAppointmentId(Long appointmentId);
+
+    @Modifying
+    @Query("DELETE FROM Visit v WHERE v.appointmentId IN :appointmentIds")
+    int deleteByAppointmentIds(@Param("appointmentIds") List<Long> appointmentIds);
 }
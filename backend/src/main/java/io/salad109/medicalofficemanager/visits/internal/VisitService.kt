@@ -2,35 +2,188 @@ package io.salad109.medicalofficemanager.visits.internal
 
 import io.salad109.medicalofficemanager.exception.ResourceAlreadyExistsException
 import io.salad109.medicalofficemanager.exception.ResourceNotFoundException
+import io.salad109.medicalofficemanager.infrastructure.OptimisticLockRetry
+import io.salad109.medicalofficemanager.infrastructure.SingleFlight
 import io.salad109.medicalofficemanager.users.UserManagement
 import io.salad109.medicalofficemanager.visits.VisitCompletedEvent
 import io.salad109.medicalofficemanager.visits.VisitResponse
 import io.salad109.medicalofficemanager.visits.internal.dto.VisitCreationRequest
+import io.salad109.medicalofficemanager.visits.internal.dto.VisitNotesResponse
+import io.salad109.medicalofficemanager.visits.internal.dto.VisitSearchHit
+import io.salad109.medicalofficemanager.visits.internal.dto.VisitSummaryResponse
 import io.salad109.medicalofficemanager.visits.internal.dto.VisitUpdateRequest
+import org.slf4j.LoggerFactory
 import org.springframework.context.ApplicationEventPublisher
+import org.springframework.data.domain.Page
+import org.springframework.data.domain.PageRequest
+import org.springframework.data.domain.Pageable
 import org.springframework.stereotype.Service
-import org.springframework.transaction.annotation.Transactional
+import org.springframework.transaction.PlatformTransactionManager
+import org.springframework.transaction.support.TransactionTemplate
+import org.springframework.web.util.HtmlUtils
+import java.io.OutputStream
+import java.time.LocalDate
 
 @Service
 class VisitService(
     private val visitRepository: VisitRepository,
+    private val archivedVisitRepository: ArchivedVisitRepository,
     private val applicationEventPublisher: ApplicationEventPublisher,
     private val pdfGenerator: VisitPdfGenerator,
-    private val userManagement: UserManagement
+    private val userManagement: UserManagement,
+    private val optimisticLockRetry: OptimisticLockRetry,
+    private val singleFlight: SingleFlight,
+    private val reportCache: VisitReportCache,
+    transactionManager: PlatformTransactionManager
 ) {
+    private val log = LoggerFactory.getLogger(VisitService::class.java)
 
-    fun findVisitResponsesByPatient(patientId: Long): List<VisitResponse> {
-        return visitRepository.findVisitResponsesByPatientId(patientId)
+    companion object {
+        private val NON_WORD = Regex("[^\\p{L}\\p{N}]+")
+        private const val MIN_SEARCH_TERM_LENGTH = 3
+        private const val MAX_SEARCH_TERMS = 8
+        private const val MAX_SEARCH_PAGE_SIZE = 100
+        private const val SNIPPET_CONTEXT = 60
+        private const val SNIPPET_LENGTH = 200
     }
 
-    fun generatePatientVisitReport(patientId: Long): ByteArray {
+    private val reportTransaction = TransactionTemplate(transactionManager).apply {
+        isReadOnly = true
+    }
+
+    // Visit writes carry no version to key on, so only calls already in flight are shared
+    fun findVisitResponsesByPatient(patientId: Long, fullHistory: Boolean = false): List<VisitResponse> {
+        return singleFlight.execute("visits.by-patient", listOf(patientId, fullHistory)) {
+            loadVisits(patientId, fullHistory)
+        }
+    }
+
+    /**
+     * The patient's visits with only the start of their notes, for list views. The preview and length are
+     * columns the database derives from the notes, so the notes themselves are never read here.
+     */
+    fun findVisitSummariesByPatient(patientId: Long, fullHistory: Boolean = false): List<VisitSummaryResponse> {
+        val live = visitRepository.findVisitSummariesByPatientId(patientId)
+        return if (fullHistory) live + archivedVisitRepository.findVisitSummariesByPatientId(patientId) else live
+    }
+
+    fun getVisitNotes(visitId: Long): VisitNotesResponse {
+        return visitRepository.findNotesById(visitId)
+            .or { archivedVisitRepository.findNotesById(visitId) }
+            .orElseThrow { ResourceNotFoundException("Visit not found with ID: $visitId") }
+    }
+
+    /**
+     * Returns the patient's report from the on-disk cache, rendering it on a miss. Rendering streams
+     * visits from the database row by row, so memory use does not grow with the patient's history.
+     */
+    fun getPatientVisitReport(patientId: Long, fullHistory: Boolean = false): VisitReportCache.CachedReport {
+        checkReportable(patientId, fullHistory)
+        return reportCache.getOrRender(patientId, fullHistory) { outputStream ->
+            writeReport(patientId, fullHistory, outputStream)
+        }
+    }
+
+    fun checkReportable(patientId: Long, fullHistory: Boolean = false) {
         userManagement.validatePatient(patientId)
-        val visits = visitRepository.findVisitResponsesByPatientId(patientId)
-        return pdfGenerator.generatePatientVisitReport(visits)
+        val hasVisits = visitRepository.existsByPatientId(patientId) ||
+                (fullHistory && archivedVisitRepository.existsByPatientId(patientId))
+        if (!hasVisits) {
+            throw IllegalArgumentException("Cannot generate report with no visits")
+        }
     }
 
-    @Transactional
-    fun markVisitAsCompleted(request: VisitCreationRequest, doctorId: Long): VisitResponse {
+    // Streams must be consumed inside a transaction; live rows are closed before the archive is opened
+    private fun writeReport(patientId: Long, fullHistory: Boolean, outputStream: OutputStream) {
+        reportTransaction.executeWithoutResult {
+            visitRepository.streamVisitResponsesByPatientId(patientId).use { live ->
+                val visits = if (fullHistory) {
+                    live.iterator().asSequence() + sequence {
+                        archivedVisitRepository.streamVisitResponsesByPatientId(patientId)
+                            .use { yieldAll(it.iterator()) }
+                    }
+                } else {
+                    live.iterator().asSequence()
+                }
+                val written = pdfGenerator.writePatientVisitReport(visits.iterator(), outputStream)
+                log.debug("Wrote visit report for patient {} with {} visits", patientId, written)
+            }
+        }
+    }
+
+    /**
+     * Full-text search over live visit notes. Every word of three or more characters must appear, as a
+     * prefix, in the notes; shorter words are below the index's token size and are dropped.
+     */
+    fun searchVisitNotes(
+        query: String,
+        doctorId: Long?,
+        from: LocalDate?,
+        to: LocalDate?,
+        pageable: Pageable
+    ): Page<VisitSearchHit> {
+        val terms = query.split(NON_WORD)
+            .filter { it.length >= MIN_SEARCH_TERM_LENGTH }
+            .map { it.lowercase() }
+            .distinct()
+            .take(MAX_SEARCH_TERMS)
+        if (terms.isEmpty()) {
+            throw IllegalArgumentException("Search needs at least one word of $MIN_SEARCH_TERM_LENGTH or more characters")
+        }
+        if (from != null && to != null && to.isBefore(from)) {
+            throw IllegalArgumentException("Date range end must not be before its start")
+        }
+
+        // Relevance decides the order, so only the page itself is taken from the request
+        val page = PageRequest.of(pageable.pageNumber, pageable.pageSize.coerceAtMost(MAX_SEARCH_PAGE_SIZE))
+        val booleanQuery = terms.joinToString(" ") { "+$it*" }
+        val visits = visitRepository.searchVisitSummariesByNotes(booleanQuery, doctorId, from, to, page)
+        // Notes are read for the page's snippets only and never returned
+        val notes = if (visits.isEmpty) {
+            emptyMap()
+        } else {
+            visitRepository.findNotesByIds(visits.content.map { it.id }).associate { it.id to it.notes }
+        }
+        return visits
+            .map { VisitSearchHit(it, snippetOf(notes[it.id].orEmpty(), terms)) }
+            .also { log.debug("Searched visit notes for {} terms, found {} results", terms.size, it.totalElements) }
+    }
+
+    // A window of the notes around the first match; only the text between marks is escaped
+    private fun snippetOf(notes: String, terms: List<String>): String {
+        val matcher = Regex("(?iU)\\b(${terms.joinToString("|")})\\w*")
+        val first = matcher.find(notes)?.range?.first ?: 0
+        val start = (first - SNIPPET_CONTEXT).coerceAtLeast(0)
+        val end = (start + SNIPPET_LENGTH).coerceAtMost(notes.length)
+        val excerpt = notes.substring(start, end)
+
+        val snippet = StringBuilder()
+        if (start > 0) snippet.append("…")
+        var last = 0
+        matcher.findAll(excerpt).forEach { match ->
+            snippet.append(HtmlUtils.htmlEscape(excerpt.substring(last, match.range.first)))
+            snippet.append("<mark>").append(HtmlUtils.htmlEscape(match.value)).append("</mark>")
+            last = match.range.last + 1
+        }
+        snippet.append(HtmlUtils.htmlEscape(excerpt.substring(last)))
+        if (end < notes.length) snippet.append("…")
+        return snippet.toString()
+    }
+
+    // Archived visits all belong to closed years, so they always sort after the live ones
+    private fun loadVisits(patientId: Long, fullHistory: Boolean): List<VisitResponse> {
+        val live = visitRepository.findVisitResponsesByPatientId(patientId)
+        return if (fullHistory) live + archivedVisitRepository.findVisitResponsesByPatientId(patientId) else live
+    }
+
+    // Completing the appointment happens before this transaction commits, so a concurrent no-show rolls
+    // back the whole visit; rerunning it re-checks the visit and the appointment status from scratch
+    fun markVisitAsCompleted(request: VisitCreationRequest, doctorId: Long): VisitResponse =
+        optimisticLockRetry.execute("visit.complete") {
+            completeVisit(request, doctorId)
+        }.also { reportCache.invalidate(it.patientId) }
+
+    private fun completeVisit(request: VisitCreationRequest, doctorId: Long): VisitResponse {
         if (visitRepository.existsByAppointmentId(request.appointmentId)) {
             throw ResourceAlreadyExistsException("Visit already exists for appointment ${request.appointmentId}")
         }
@@ -55,8 +208,13 @@ class VisitService(
             .orElseThrow { ResourceNotFoundException("Visit not found with ID: ${savedVisit.id}") }
     }
 
-    @Transactional
-    fun updateVisitNotes(visitId: Long, request: VisitUpdateRequest): VisitResponse {
+    // Rewriting notes over someone else's edit would lose it, so a conflict is not retried
+    fun updateVisitNotes(visitId: Long, request: VisitUpdateRequest): VisitResponse =
+        optimisticLockRetry.execute("visit.notes", maxAttempts = 1) {
+            replaceNotes(visitId, request)
+        }.also { reportCache.invalidate(it.patientId) }
+
+    private fun replaceNotes(visitId: Long, request: VisitUpdateRequest): VisitResponse {
         val visit = visitRepository.findById(visitId)
             .orElseThrow { ResourceNotFoundException("Visit not found with ID: $visitId") }
 
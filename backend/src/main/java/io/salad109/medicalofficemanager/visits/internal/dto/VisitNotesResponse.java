@@ -0,0 +1,7 @@
+package io.salad109.medicalofficemanager.visits.internal.dto;
+
+public record VisitNotesResponse(
+        Long id,
+        String notes
+) {
+}
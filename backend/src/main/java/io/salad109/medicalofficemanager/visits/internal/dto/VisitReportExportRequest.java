@@ -0,0 +1,18 @@
+package io.salad109.medicalofficemanager.visits.internal.dto;
+
+import jakarta.validation.constraints.Size;
+
+import java.time.LocalDate;
+import java.util.List;
+
+public record VisitReportExportRequest(
+        @Size(max = 1000, message = "Cannot export more than 1000 patients at once")
+        List<Long> patientIds,
+
+        LocalDate from,
+
+        LocalDate to,
+
+        boolean fullHistory
+) {
+}
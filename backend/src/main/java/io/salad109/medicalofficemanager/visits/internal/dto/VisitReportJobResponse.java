@@ -0,0 +1,16 @@
+package io.salad109.medicalofficemanager.visits.internal.dto;
+
+import io.salad109.medicalofficemanager.visits.internal.VisitReportJobStatus;
+
+import java.time.Instant;
+
+public record VisitReportJobResponse(
+        String id,
+        Long patientId,
+        boolean fullHistory,
+        VisitReportJobStatus status,
+        Instant submittedAt,
+        Instant completedAt,
+        String error
+) {
+}
@@ -0,0 +1,11 @@
+package io.salad109.medicalofficemanager.visits.internal.dto;
+
+/**
+ * A matching visit's summary with an HTML-escaped excerpt of its notes, matched words wrapped in
+ * {@code <mark>}. The full notes are fetched on demand, like in other visit lists.
+ */
+public record VisitSearchHit(
+        VisitSummaryResponse visit,
+        String snippet
+) {
+}
@@ -0,0 +1,25 @@
+package io.salad109.medicalofficemanager.visits.internal.dto;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+
+/**
+ * A visit for list views: the start of its notes and their full length instead of the notes themselves.
+ */
+public record VisitSummaryResponse(
+        Long id,
+        String notesPreview,
+        Integer notesLength,
+        LocalDateTime completedAt,
+        Long appointmentId,
+        LocalDate appointmentDate,
+        LocalTime appointmentTime,
+        Long doctorId,
+        String doctorFirstName,
+        String doctorLastName,
+        Long patientId,
+        String patientFirstName,
+        String patientLastName
+) {
+}
@@ -0,0 +1,17 @@
+-- One row per reminded appointment; the primary key makes enqueueing the same appointment twice a no-op
+CREATE TABLE reminder_outbox
+(
+    appointment_id   BIGINT                                     NOT NULL PRIMARY KEY,
+    phone_number     VARCHAR(15)                                NOT NULL,
+    appointment_date DATE                                       NOT NULL,
+    appointment_time TIME                                       NOT NULL,
+    status           ENUM ('PENDING', 'SENDING', 'SENT', 'FAILED') NOT NULL DEFAULT 'PENDING',
+    attempts         INT                                        NOT NULL DEFAULT 0,
+    last_error       VARCHAR(255),
+    created_at       TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    sent_at          TIMESTAMP                                  NULL,
+    FOREIGN KEY (appointment_id) REFERENCES appointments (id) ON DELETE CASCADE
+) DEFAULT CHARSET = utf8mb4;
+
+-- Pages one date's pending reminders in key order
+CREATE INDEX idx_reminder_outbox_date_status ON reminder_outbox (appointment_date, status, appointment_id);
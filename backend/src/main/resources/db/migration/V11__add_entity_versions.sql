@@ -0,0 +1,6 @@
+-- Optimistic locking: every update checks and increments the row version
+ALTER TABLE appointments
+    ADD COLUMN version BIGINT NOT NULL DEFAULT 0;
+
+ALTER TABLE visits
+    ADD COLUMN version BIGINT NOT NULL DEFAULT 0;
@@ -0,0 +1,78 @@
+-- Partitioned InnoDB tables can neither hold nor be referenced by foreign keys, so the references to
+-- appointments are enforced by the application from here on
+ALTER TABLE visits
+    DROP FOREIGN KEY visits_ibfk_1;
+
+ALTER TABLE reminder_outbox
+    DROP FOREIGN KEY reminder_outbox_ibfk_1;
+
+ALTER TABLE appointments
+    DROP FOREIGN KEY appointments_ibfk_1,
+    DROP FOREIGN KEY fk_appointments_doctor;
+
+-- Every unique key of a partitioned table must contain the partitioning column
+ALTER TABLE appointments
+    DROP PRIMARY KEY,
+    ADD PRIMARY KEY (id, appointment_date);
+
+-- One partition per year; the archive job splits new years off p_future before they are needed
+ALTER TABLE appointments
+    PARTITION BY RANGE COLUMNS (appointment_date) (
+        PARTITION p_before_2025 VALUES LESS THAN ('2025-01-01'),
+        PARTITION p2025 VALUES LESS THAN ('2026-01-01'),
+        PARTITION p2026 VALUES LESS THAN ('2027-01-01'),
+        PARTITION p2027 VALUES LESS THAN ('2028-01-01'),
+        PARTITION p_future VALUES LESS THAN (MAXVALUE)
+        );
+
+-- Closed years are moved here; ids are kept so history pages can keyset across both tables
+CREATE TABLE appointments_archive
+(
+    id               BIGINT                                     NOT NULL PRIMARY KEY,
+    patient_id       BIGINT                                     NOT NULL,
+    doctor_id        BIGINT                                     NOT NULL,
+    appointment_date DATE                                       NOT NULL,
+    appointment_time TIME                                       NOT NULL,
+    status           ENUM ('SCHEDULED', 'COMPLETED', 'NO_SHOW') NOT NULL,
+    version          BIGINT                                     NOT NULL,
+    archived_at      TIMESTAMP DEFAULT CURRENT_TIMESTAMP
+) DEFAULT CHARSET = utf8mb4;
+
+CREATE INDEX idx_appointments_archive_patient_date_time
+    ON appointments_archive (patient_id, appointment_date, appointment_time, id);
+
+CREATE TABLE visits_archive
+(
+    id                     BIGINT    NOT NULL PRIMARY KEY,
+    appointment_id         BIGINT    NOT NULL UNIQUE,
+    notes                  TEXT,
+    completed_by_doctor_id BIGINT    NOT NULL,
+    completed_at           TIMESTAMP NULL,
+    version                BIGINT    NOT NULL,
+    archived_at            TIMESTAMP DEFAULT CURRENT_TIMESTAMP
+) DEFAULT CHARSET = utf8mb4;
+
+-- Moving a row to the archive is not a user deletion, so the archive job suppresses its audit entry
+DROP TRIGGER audit_appointments_delete;
+
+DELIMITER
+//
+
+CREATE TRIGGER audit_appointments_delete
+    AFTER DELETE
+    ON appointments
+    FOR EACH ROW
+BEGIN
+    IF @archiving IS NULL THEN
+        INSERT INTO audit_log (user_id, action, entity_type, entity_id, old_values, new_values)
+        VALUES (@current_user_id, 'DELETE', 'APPOINTMENT', OLD.id,
+                JSON_OBJECT(
+                        'patient_id', OLD.patient_id,
+                        'appointment_date', OLD.appointment_date,
+                        'appointment_time', OLD.appointment_time,
+                        'status', OLD.status
+                ), NULL);
+    END IF;
+END//
+
+DELIMITER;
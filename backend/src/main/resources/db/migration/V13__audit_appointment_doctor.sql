@@ -0,0 +1,30 @@
+-- Rescheduling can move an appointment to another doctor, so the update audit records the doctor as well
+DROP TRIGGER audit_appointments_update;
+
+DELIMITER
+//
+
+CREATE TRIGGER audit_appointments_update
+    AFTER UPDATE
+    ON appointments
+    FOR EACH ROW
+BEGIN
+    INSERT INTO audit_log (user_id, action, entity_type, entity_id, old_values, new_values)
+    VALUES (@current_user_id, 'UPDATE', 'APPOINTMENT', NEW.id,
+            JSON_OBJECT(
+                    'patient_id', OLD.patient_id,
+                    'doctor_id', OLD.doctor_id,
+                    'appointment_date', OLD.appointment_date,
+                    'appointment_time', OLD.appointment_time,
+                    'status', OLD.status
+            ),
+            JSON_OBJECT(
+                    'patient_id', NEW.patient_id,
+                    'doctor_id', NEW.doctor_id,
+                    'appointment_date', NEW.appointment_date,
+                    'appointment_time', NEW.appointment_time,
+                    'status', NEW.status
+            ));
+END//
+
+DELIMITER;
@@ -0,0 +1,37 @@
+-- Per-day, per-doctor counters kept up to date by the analytics module from appointment events
+CREATE TABLE schedule_daily_stats
+(
+    stat_date DATE   NOT NULL,
+    doctor_id BIGINT NOT NULL,
+    booked    INT    NOT NULL DEFAULT 0,
+    cancelled INT    NOT NULL DEFAULT 0,
+    no_shows  INT    NOT NULL DEFAULT 0,
+    completed INT    NOT NULL DEFAULT 0,
+    PRIMARY KEY (stat_date, doctor_id)
+) DEFAULT CHARSET = utf8mb4;
+
+-- The statistics backfill attributes historical cancellations to doctors through the delete audit
+DROP TRIGGER audit_appointments_delete;
+
+DELIMITER
+//
+
+CREATE TRIGGER audit_appointments_delete
+    AFTER DELETE
+    ON appointments
+    FOR EACH ROW
+BEGIN
+    IF @archiving IS NULL THEN
+        INSERT INTO audit_log (user_id, action, entity_type, entity_id, old_values, new_values)
+        VALUES (@current_user_id, 'DELETE', 'APPOINTMENT', OLD.id,
+                JSON_OBJECT(
+                        'patient_id', OLD.patient_id,
+                        'doctor_id', OLD.doctor_id,
+                        'appointment_date', OLD.appointment_date,
+                        'appointment_time', OLD.appointment_time,
+                        'status', OLD.status
+                ), NULL);
+    END IF;
+END//
+
+DELIMITER;
@@ -0,0 +1,2 @@
+ALTER TABLE visits
+    ADD FULLTEXT INDEX idx_visits_notes_fulltext (notes);
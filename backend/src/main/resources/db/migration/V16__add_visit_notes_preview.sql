@@ -0,0 +1,8 @@
+-- Visit lists show only the start of each note; stored in-row, listing visits never reads the TEXT column
+ALTER TABLE visits
+    ADD COLUMN notes_preview VARCHAR(120) GENERATED ALWAYS AS (LEFT(notes, 120)) STORED,
+    ADD COLUMN notes_length  INT GENERATED ALWAYS AS (CHAR_LENGTH(notes)) STORED;
+
+ALTER TABLE visits_archive
+    ADD COLUMN notes_preview VARCHAR(120) GENERATED ALWAYS AS (LEFT(notes, 120)) STORED,
+    ADD COLUMN notes_length  INT GENERATED ALWAYS AS (CHAR_LENGTH(notes)) STORED;
@@ -0,0 +1,3 @@
+-- A claim older than the dispatcher's timeout belongs to a dispatcher that died mid-send
+ALTER TABLE reminder_outbox
+    ADD COLUMN claimed_at TIMESTAMP NULL AFTER attempts;
@@ -0,0 +1,2 @@
+-- Serves the no-show sweep's keyset over (appointment_date, appointment_time, id) among SCHEDULED appointments
+CREATE INDEX idx_appointments_status_date_time ON appointments (status, appointment_date, appointment_time, id);
@@ -0,0 +1,10 @@
+CREATE TABLE id_generators
+(
+    generator_name VARCHAR(64) NOT NULL PRIMARY KEY,
+    next_val       BIGINT      NOT NULL
+) DEFAULT CHARSET = utf8mb4;
+
+-- Start past the current maximum plus one allocation block (50) so pooled ids never collide
+INSERT INTO id_generators (generator_name, next_val)
+SELECT 'appointments', COALESCE(MAX(id), 0) + 51
+FROM appointments;
@@ -0,0 +1,3 @@
+-- Serves keyset pagination over (appointment_date, appointment_time, id) per patient and the patient_id foreign key
+CREATE INDEX idx_appointments_patient_date_time ON appointments (patient_id, appointment_date, appointment_time, id);
+DROP INDEX idx_appointments_patient_id ON appointments;
@@ -0,0 +1,43 @@
+CREATE TABLE doctor_schedules
+(
+    id           BIGINT AUTO_INCREMENT PRIMARY KEY,
+    doctor_id    BIGINT                                                                           NOT NULL,
+    day_of_week  ENUM ('MONDAY', 'TUESDAY', 'WEDNESDAY', 'THURSDAY', 'FRIDAY', 'SATURDAY', 'SUNDAY') NOT NULL,
+    start_time   TIME                                                                             NOT NULL,
+    end_time     TIME                                                                             NOT NULL,
+    slot_minutes INT                                                                              NOT NULL,
+    FOREIGN KEY (doctor_id) REFERENCES users (id) ON DELETE CASCADE,
+    UNIQUE (doctor_id, day_of_week)
+) DEFAULT CHARSET = utf8mb4;
+
+-- Existing doctors keep the previous office hours on every day
+INSERT INTO doctor_schedules (doctor_id, day_of_week, start_time, end_time, slot_minutes)
+SELECT u.id, d.day_of_week, '09:00:00', '17:00:00', 30
+FROM users u
+         CROSS JOIN (SELECT 'MONDAY' AS day_of_week
+                     UNION ALL SELECT 'TUESDAY'
+                     UNION ALL SELECT 'WEDNESDAY'
+                     UNION ALL SELECT 'THURSDAY'
+                     UNION ALL SELECT 'FRIDAY'
+                     UNION ALL SELECT 'SATURDAY'
+                     UNION ALL SELECT 'SUNDAY') d
+WHERE u.role = 'DOCTOR';
+
+ALTER TABLE appointments
+    ADD COLUMN doctor_id BIGINT NULL AFTER patient_id;
+
+-- Completed appointments belong to the doctor who completed them, the rest go to the first doctor
+UPDATE appointments a
+    JOIN visits v ON v.appointment_id = a.id
+SET a.doctor_id = v.completed_by_doctor_id;
+
+UPDATE appointments
+SET doctor_id = (SELECT MIN(id) FROM users WHERE role = 'DOCTOR')
+WHERE doctor_id IS NULL;
+
+-- The slot key is partitioned by doctor, so different doctors never contend on the same index entries
+ALTER TABLE appointments
+    MODIFY doctor_id BIGINT NOT NULL,
+    ADD CONSTRAINT fk_appointments_doctor FOREIGN KEY (doctor_id) REFERENCES users (id) ON DELETE RESTRICT,
+    ADD UNIQUE KEY uk_appointments_doctor_slot (doctor_id, appointment_date, appointment_time),
+    DROP INDEX appointment_date;
@@ -0,0 +1,15 @@
+CREATE TABLE waitlist_entries
+(
+    id           BIGINT AUTO_INCREMENT PRIMARY KEY,
+    patient_id   BIGINT NOT NULL,
+    doctor_id    BIGINT,
+    desired_date DATE   NOT NULL,
+    window_start TIME   NOT NULL,
+    window_end   TIME   NOT NULL,
+    created_at   TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    FOREIGN KEY (patient_id) REFERENCES users (id) ON DELETE CASCADE,
+    FOREIGN KEY (doctor_id) REFERENCES users (id) ON DELETE CASCADE
+) DEFAULT CHARSET = utf8mb4;
+
+-- Loads one date's queue in FIFO order
+CREATE INDEX idx_waitlist_entries_date ON waitlist_entries (desired_date, id);
@@ -0,0 +1,11 @@
+-- Stored responses for retried POSTs, keyed by a hash of (scope, caller, Idempotency-Key)
+CREATE TABLE idempotency_keys
+(
+    key_hash      VARCHAR(64) NOT NULL PRIMARY KEY,
+    request_hash  VARCHAR(64) NOT NULL,
+    status_code   INT         NOT NULL,
+    response_body TEXT,
+    created_at    TIMESTAMP   NOT NULL
+) DEFAULT CHARSET = utf8mb4;
+
+CREATE INDEX idx_idempotency_keys_created_at ON idempotency_keys (created_at);
@@ -4,10 +4,14 @@ import com.jayway.jsonpath.JsonPath
 import io.salad109.medicalofficemanager.appointments.internal.Appointment
 import io.salad109.medicalofficemanager.appointments.internal.AppointmentRepository
 import io.salad109.medicalofficemanager.appointments.internal.AppointmentStatus
+import io.salad109.medicalofficemanager.appointments.internal.DoctorScheduleService
+import io.salad109.medicalofficemanager.appointments.internal.dto.DoctorScheduleDayRequest
+import io.salad109.medicalofficemanager.appointments.internal.dto.DoctorScheduleRequest
 import io.salad109.medicalofficemanager.users.Role
 import io.salad109.medicalofficemanager.users.internal.User
 import io.salad109.medicalofficemanager.users.internal.UserRepository
 import io.salad109.medicalofficemanager.visits.internal.Visit
+import io.salad109.medicalofficemanager.visits.internal.VisitReportCache
 import io.salad109.medicalofficemanager.visits.internal.VisitRepository
 import org.assertj.core.api.Assertions.assertThat
 import org.junit.jupiter.api.BeforeEach
@@ -20,6 +24,7 @@ import org.springframework.http.HttpStatus
 import org.springframework.jdbc.core.JdbcTemplate
 import org.springframework.security.crypto.password.PasswordEncoder
 import org.springframework.test.web.servlet.assertj.MockMvcTester
+import java.time.DayOfWeek
 import java.time.LocalDate
 import java.time.LocalDateTime
 import java.time.LocalTime
@@ -39,6 +44,9 @@ open class BaseControllerTest {
     @Autowired
     protected lateinit var visitRepository: VisitRepository
 
+    @Autowired
+    protected lateinit var doctorScheduleService: DoctorScheduleService
+
     @Autowired
     protected lateinit var passwordEncoder: PasswordEncoder
 
@@ -48,6 +56,9 @@ open class BaseControllerTest {
     @Autowired
     protected lateinit var jdbcTemplate: JdbcTemplate
 
+    @Autowired
+    private lateinit var visitReportCache: VisitReportCache
+
     protected lateinit var patient1: User
     protected lateinit var patient2: User
     protected lateinit var doctor: User
@@ -60,8 +71,16 @@ open class BaseControllerTest {
         jdbcTemplate.execute("TRUNCATE TABLE audit_log")
         jdbcTemplate.execute("TRUNCATE TABLE visits")
         jdbcTemplate.execute("TRUNCATE TABLE appointments")
+        jdbcTemplate.execute("TRUNCATE TABLE appointments_archive")
+        jdbcTemplate.execute("TRUNCATE TABLE visits_archive")
+        jdbcTemplate.execute("TRUNCATE TABLE doctor_schedules")
+        jdbcTemplate.execute("TRUNCATE TABLE waitlist_entries")
+        jdbcTemplate.execute("TRUNCATE TABLE idempotency_keys")
+        jdbcTemplate.execute("TRUNCATE TABLE reminder_outbox")
+        jdbcTemplate.execute("TRUNCATE TABLE schedule_daily_stats")
         jdbcTemplate.execute("TRUNCATE TABLE users")
         jdbcTemplate.execute("SET FOREIGN_KEY_CHECKS = 1")
+        visitReportCache.invalidateAll() // Ids restart after truncation, so cached reports must not carry over
 
         patient1 = userRepository.save(
             User(
@@ -107,9 +126,15 @@ open class BaseControllerTest {
                 pesel = null
             )
         )
+        // The doctor works every day, 9:00 to 17:00 in 30-minute slots
+        doctorScheduleService.replaceSchedule(
+            doctor.id!!,
+            DoctorScheduleRequest(DayOfWeek.entries.map { DoctorScheduleDayRequest(it, LocalTime.of(9, 0), LocalTime.of(17, 0), 30) })
+        )
         val appointment = appointmentRepository.save(
             Appointment(
                 patientId = patient1.id!!,
+                doctorId = doctor.id!!,
                 appointmentDate = LocalDate.of(2025, 5, 25),
                 appointmentTime = LocalTime.of(10, 0),
                 status = AppointmentStatus.COMPLETED
@@ -0,0 +1,98 @@
+package io.salad109.medicalofficemanager.analytics
+
+import com.jayway.jsonpath.JsonPath
+import io.salad109.medicalofficemanager.BaseControllerTest
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.jupiter.api.Test
+import org.springframework.http.HttpStatus
+import java.time.LocalDate
+
+class AnalyticsControllerTest : BaseControllerTest() {
+
+    @Test
+    fun `booking and cancelling should update the daily rollups`() {
+        // Given
+        val patientToken = loginAndGetToken("patient1", "patient-pass")
+        val receptionistToken = loginAndGetToken("receptionist1", "receptionist-pass")
+        val date = LocalDate.now().plusDays(2)
+        val booking = mockMvcTester
+            .post()
+            .uri("/api/appointments")
+            .header("Authorization", "Bearer $patientToken")
+            .contentType("application/json")
+            .content("""{"patientId": %d, "date": "%s", "time": "10:00"}""".format(patient1.id, date))
+            .exchange()
+        assertThat(booking).hasStatus(HttpStatus.CREATED)
+        val appointmentId: Int = JsonPath.read(booking.mvcResult.response.contentAsString, "$.id")
+
+        // When
+        assertThat(
+            mockMvcTester
+                .delete()
+                .uri("/api/appointments/$appointmentId")
+                .header("Authorization", "Bearer $patientToken")
+        )
+            .hasStatus(HttpStatus.NO_CONTENT)
+
+        // Then
+        val stats = assertThat(
+            mockMvcTester
+                .get()
+                .uri("/api/analytics/schedule?from=$date&to=$date")
+                .header("Authorization", "Bearer $receptionistToken")
+        )
+            .hasStatus(HttpStatus.OK)
+            .bodyJson()
+        stats.extractingPath("[0].capacity").isEqualTo(16)
+        stats.extractingPath("[0].booked").isEqualTo(0)
+        stats.extractingPath("[0].cancelled").isEqualTo(1)
+        stats.extractingPath("[0].cancellationRate").isEqualTo(1.0)
+    }
+
+    @Test
+    fun `backfill should rebuild history from the appointment tables`() {
+        // Given
+        val token = loginAndGetToken("receptionist1", "receptionist-pass")
+
+        // When
+        assertThat(
+            mockMvcTester
+                .post()
+                .uri("/api/analytics/schedule/backfill?from=2025-05-01&to=2025-05-31")
+                .header("Authorization", "Bearer $token")
+        )
+            .hasStatus(HttpStatus.OK)
+            .bodyJson()
+            .extractingPath("rows")
+            .isEqualTo(1)
+
+        // Then
+        val stats = assertThat(
+            mockMvcTester
+                .get()
+                .uri("/api/analytics/schedule?from=2025-05-01&to=2025-05-31&granularity=MONTH")
+                .header("Authorization", "Bearer $token")
+        )
+            .hasStatus(HttpStatus.OK)
+            .bodyJson()
+        stats.extractingPath("$.length()").isEqualTo(1)
+        stats.extractingPath("[0].booked").isEqualTo(1)
+        stats.extractingPath("[0].completed").isEqualTo(1)
+        stats.extractingPath("[0].capacity").isEqualTo(31 * 16)
+    }
+
+    @Test
+    fun `patient should not read office statistics`() {
+        // Given
+        val token = loginAndGetToken("patient1", "patient-pass")
+
+        // Then
+        assertThat(
+            mockMvcTester
+                .get()
+                .uri("/api/analytics/schedule?from=2025-05-01&to=2025-05-31")
+                .header("Authorization", "Bearer $token")
+        )
+            .hasStatus(HttpStatus.FORBIDDEN)
+    }
+}
@@ -0,0 +1,76 @@
+package io.salad109.medicalofficemanager.appointments
+
+import io.salad109.medicalofficemanager.BaseControllerTest
+import io.salad109.medicalofficemanager.appointments.internal.AppointmentService
+import io.salad109.medicalofficemanager.appointments.internal.dto.BookAppointmentRequest
+import io.salad109.medicalofficemanager.exception.ResourceAlreadyExistsException
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.jupiter.api.Test
+import org.slf4j.LoggerFactory
+import org.springframework.beans.factory.annotation.Autowired
+import java.time.Duration
+import java.time.LocalDate
+import java.time.LocalTime
+import java.util.concurrent.ConcurrentLinkedQueue
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+
+class AppointmentBookingConcurrencyTest : BaseControllerTest() {
+
+    private val log = LoggerFactory.getLogger(AppointmentBookingConcurrencyTest::class.java)
+
+    @Autowired
+    private lateinit var appointmentService: AppointmentService
+
+    @Test
+    fun `concurrent bookings of the same slot should have exactly one winner`() {
+        // Given
+        val date = LocalDate.now().plusDays(7)
+        val time = LocalTime.of(9, 30)
+        val attempts = 300
+        val executor = Executors.newFixedThreadPool(32)
+        val startGate = CountDownLatch(1)
+        val winners = AtomicInteger()
+        val conflicts = AtomicInteger()
+        val unexpected = ConcurrentLinkedQueue<Throwable>()
+
+        val futures = (1..attempts).map { attempt ->
+            executor.submit(Runnable {
+                startGate.await()
+                val patientId = if (attempt % 2 == 0) patient1.id else patient2.id
+                try {
+                    appointmentService.bookAppointment(BookAppointmentRequest(patientId, date, time, doctor.id, null))
+                    winners.incrementAndGet()
+                } catch (ex: ResourceAlreadyExistsException) {
+                    conflicts.incrementAndGet()
+                } catch (ex: Throwable) {
+                    unexpected.add(ex)
+                }
+            })
+        }
+
+        // When
+        val startedAt = System.nanoTime()
+        startGate.countDown()
+        futures.forEach { it.get(2, TimeUnit.MINUTES) }
+        val elapsed = Duration.ofNanos(System.nanoTime() - startedAt)
+        executor.shutdown()
+
+        log.info(
+            "{} concurrent bookings of one slot finished in {} ms ({} bookings/s): {} winner(s), {} conflict(s)",
+            attempts,
+            elapsed.toMillis(),
+            "%.1f".format(attempts / (elapsed.toNanos() / 1_000_000_000.0)),
+            winners.get(),
+            conflicts.get()
+        )
+
+        // Then
+        assertThat(unexpected).isEmpty()
+        assertThat(winners.get()).isEqualTo(1)
+        assertThat(conflicts.get()).isEqualTo(attempts - 1)
+        assertThat(appointmentRepository.findBookedTimesByDoctorAndDate(doctor.id!!, date)).containsExactly(time)
+    }
+}
@@ -1,15 +1,29 @@
 package io.salad109.medicalofficemanager.appointments
 
+import com.jayway.jsonpath.JsonPath
 import io.salad109.medicalofficemanager.BaseControllerTest
+import io.salad109.medicalofficemanager.appointments.internal.Appointment
+import io.salad109.medicalofficemanager.appointments.internal.AppointmentArchiver
+import io.salad109.medicalofficemanager.appointments.internal.AppointmentStatus
+import io.salad109.medicalofficemanager.appointments.internal.NoShowSweeperProperties
+import io.salad109.medicalofficemanager.visits.internal.Visit
 import org.assertj.core.api.Assertions.assertThat
 import org.junit.jupiter.api.Nested
 import org.junit.jupiter.api.Test
+import org.springframework.beans.factory.annotation.Autowired
 import org.springframework.http.HttpStatus
 import java.time.LocalDate
 import java.time.LocalTime
+import java.util.*
 
 class AppointmentControllerTest : BaseControllerTest() {
 
+    @Autowired
+    private lateinit var appointmentArchiver: AppointmentArchiver
+
+    @Autowired
+    private lateinit var noShowSweeperProperties: NoShowSweeperProperties
+
     @Nested
     inner class BookAppointmentTests {
 
@@ -204,4 +218,553 @@ class AppointmentControllerTest : BaseControllerTest() {
                 .hasStatus(HttpStatus.BAD_REQUEST)
         }
     }
-}
\ No newline at end of file
+
+    @Nested
+    inner class BookAppointmentSeriesTests {
+
+        @Test
+        fun `receptionist should book weekly series and see conflicts`() {
+            // Given
+            val token = loginAndGetToken("receptionist1", "receptionist-pass")
+            val startDate = LocalDate.now().plusDays(1)
+            val time = LocalTime.of(15, 0)
+            appointmentRepository.save(
+                Appointment(
+                    patientId = patient2.id!!,
+                    doctorId = doctor.id!!,
+                    appointmentDate = startDate.plusWeeks(1),
+                    appointmentTime = time,
+                    status = AppointmentStatus.SCHEDULED
+                )
+            )
+            val seriesRequest = """
+                {
+                    "patientId": %d,
+                    "doctorId": %d,
+                    "startDate": "%s",
+                    "time": "%s",
+                    "frequency": "WEEKLY",
+                    "occurrences": 3
+                }
+                """.format(patient1.id, doctor.id, startDate, time).trimIndent()
+
+            // Then
+            val response = assertThat(
+                mockMvcTester
+                    .post()
+                    .uri("/api/appointments/series")
+                    .header("Authorization", "Bearer $token")
+                    .contentType("application/json")
+                    .content(seriesRequest)
+            )
+                .hasStatus(HttpStatus.CREATED)
+                .bodyJson()
+            response.extractingPath("booked").isEqualTo(2)
+            response.extractingPath("conflicted").isEqualTo(1)
+            response.extractingPath("occurrences[1].status").isEqualTo("CONFLICT")
+            assertThat(appointmentRepository.findBookedDatesAtTime(doctor.id!!, time, startDate, startDate.plusWeeks(2)))
+                .hasSize(3)
+        }
+    }
+
+    @Nested
+    inner class IdempotencyTests {
+
+        private fun bookingRequest(time: LocalTime): String {
+            return """
+                {
+                    "patientId": %d,
+                    "date": "%s",
+                    "time": "%s"
+                }
+                """.format(patient1.id, LocalDate.now().plusDays(2), time).trimIndent()
+        }
+
+        @Test
+        fun `retried booking with the same key should replay the first response`() {
+            // Given
+            val token = loginAndGetToken("patient1", "patient-pass")
+            val key = UUID.randomUUID().toString()
+            val firstResponse = mockMvcTester
+                .post()
+                .uri("/api/appointments")
+                .header("Authorization", "Bearer $token")
+                .header("Idempotency-Key", key)
+                .contentType("application/json")
+                .content(bookingRequest(LocalTime.of(11, 0)))
+                .exchange()
+
+            // When
+            val retriedResponse = mockMvcTester
+                .post()
+                .uri("/api/appointments")
+                .header("Authorization", "Bearer $token")
+                .header("Idempotency-Key", key)
+                .contentType("application/json")
+                .content(bookingRequest(LocalTime.of(11, 0)))
+                .exchange()
+
+            // Then
+            assertThat(firstResponse).hasStatus(HttpStatus.CREATED)
+            assertThat(retriedResponse).hasStatus(HttpStatus.CREATED)
+            assertThat(retriedResponse.mvcResult.response.getHeader("Idempotent-Replayed")).isEqualTo("true")
+            assertThat(retriedResponse.mvcResult.response.contentAsString)
+                .isEqualTo(firstResponse.mvcResult.response.contentAsString)
+            assertThat(appointmentRepository.count()).isEqualTo(2)
+        }
+
+        @Test
+        fun `should reject a reused key with a different request`() {
+            // Given
+            val token = loginAndGetToken("patient1", "patient-pass")
+            val key = UUID.randomUUID().toString()
+            assertThat(
+                mockMvcTester
+                    .post()
+                    .uri("/api/appointments")
+                    .header("Authorization", "Bearer $token")
+                    .header("Idempotency-Key", key)
+                    .contentType("application/json")
+                    .content(bookingRequest(LocalTime.of(11, 0)))
+            ).hasStatus(HttpStatus.CREATED)
+
+            // Then
+            assertThat(
+                mockMvcTester
+                    .post()
+                    .uri("/api/appointments")
+                    .header("Authorization", "Bearer $token")
+                    .header("Idempotency-Key", key)
+                    .contentType("application/json")
+                    .content(bookingRequest(LocalTime.of(12, 0)))
+            )
+                .hasStatus(HttpStatus.UNPROCESSABLE_ENTITY)
+        }
+    }
+
+    @Nested
+    inner class RescheduleTests {
+
+        private fun scheduledAppointment(patientId: Long, date: LocalDate, time: LocalTime): Appointment {
+            return appointmentRepository.save(
+                Appointment(
+                    patientId = patientId,
+                    doctorId = doctor.id!!,
+                    appointmentDate = date,
+                    appointmentTime = time,
+                    status = AppointmentStatus.SCHEDULED
+                )
+            )
+        }
+
+        @Test
+        fun `patient should move own appointment keeping its id`() {
+            // Given
+            val token = loginAndGetToken("patient1", "patient-pass")
+            val appointment = scheduledAppointment(patient1.id!!, LocalDate.now().plusDays(3), LocalTime.of(9, 0))
+            val targetDate = LocalDate.now().plusDays(4)
+
+            // When
+            assertThat(
+                mockMvcTester
+                    .post()
+                    .uri("/api/appointments/${appointment.id}/reschedule")
+                    .header("Authorization", "Bearer $token")
+                    .contentType("application/json")
+                    .content("""{"date": "%s", "time": "11:30"}""".format(targetDate))
+            )
+                .hasStatus(HttpStatus.OK)
+                .bodyJson()
+                .extractingPath("$.id")
+                .isEqualTo(appointment.id!!.toInt())
+
+            // Then
+            val moved = appointmentRepository.findById(appointment.id!!).orElseThrow()
+            assertThat(moved.appointmentDate).isEqualTo(targetDate)
+            assertThat(moved.appointmentTime).isEqualTo(LocalTime.of(11, 30))
+            assertThat(
+                jdbcTemplate.queryForObject(
+                    "SELECT COUNT(*) FROM audit_log WHERE entity_type = 'APPOINTMENT' AND action = 'UPDATE' AND entity_id = ?",
+                    Long::class.java,
+                    appointment.id
+                )
+            ).isEqualTo(1L)
+        }
+
+        @Test
+        fun `should not move appointment onto a booked slot`() {
+            // Given
+            val token = loginAndGetToken("receptionist1", "receptionist-pass")
+            val date = LocalDate.now().plusDays(3)
+            val appointment = scheduledAppointment(patient1.id!!, date, LocalTime.of(9, 0))
+            scheduledAppointment(patient2.id!!, date, LocalTime.of(9, 30))
+
+            // Then
+            assertThat(
+                mockMvcTester
+                    .post()
+                    .uri("/api/appointments/${appointment.id}/reschedule")
+                    .header("Authorization", "Bearer $token")
+                    .contentType("application/json")
+                    .content("""{"date": "%s", "time": "09:30"}""".format(date))
+            )
+                .hasStatus(HttpStatus.CONFLICT)
+            assertThat(appointmentRepository.findById(appointment.id!!).orElseThrow().appointmentTime)
+                .isEqualTo(LocalTime.of(9, 0))
+        }
+    }
+
+    @Nested
+    inner class SlotHoldTests {
+
+        @Test
+        fun `held slot should only be bookable by its holder`() {
+            // Given
+            val patientToken = loginAndGetToken("patient1", "patient-pass")
+            val otherPatientToken = loginAndGetToken("patient2", "patient2-pass")
+            val date = LocalDate.now().plusDays(5)
+            val holdResponse = mockMvcTester
+                .post()
+                .uri("/api/appointments/holds")
+                .header("Authorization", "Bearer $patientToken")
+                .contentType("application/json")
+                .content("""{"patientId": %d, "date": "%s", "time": "10:00"}""".format(patient1.id, date))
+                .exchange()
+            assertThat(holdResponse).hasStatus(HttpStatus.CREATED)
+            val holdId: String = JsonPath.read(holdResponse.mvcResult.response.contentAsString, "$.id")
+
+            // Then
+            assertThat(
+                mockMvcTester
+                    .post()
+                    .uri("/api/appointments")
+                    .header("Authorization", "Bearer $otherPatientToken")
+                    .contentType("application/json")
+                    .content("""{"patientId": %d, "date": "%s", "time": "10:00"}""".format(patient2.id, date))
+            )
+                .hasStatus(HttpStatus.CONFLICT)
+            assertThat(
+                mockMvcTester
+                    .post()
+                    .uri("/api/appointments")
+                    .header("Authorization", "Bearer $patientToken")
+                    .contentType("application/json")
+                    .content("""{"patientId": %d, "date": "%s", "time": "10:00", "holdId": "%s"}""".format(patient1.id, date, holdId))
+            )
+                .hasStatus(HttpStatus.CREATED)
+        }
+    }
+
+    @Nested
+    inner class EarliestSlotTests {
+
+        @Test
+        fun `should return earliest free slots within the preferred window`() {
+            // Given
+            val token = loginAndGetToken("patient1", "patient-pass")
+            val date = LocalDate.now().plusDays(1)
+            appointmentRepository.save(
+                Appointment(
+                    patientId = patient2.id!!,
+                    doctorId = doctor.id!!,
+                    appointmentDate = date,
+                    appointmentTime = LocalTime.of(14, 0),
+                    status = AppointmentStatus.SCHEDULED
+                )
+            )
+
+            // When
+            val response = assertThat(
+                mockMvcTester
+                    .get()
+                    .uri("/api/appointments/available/earliest?from=$date&weekdays=${date.dayOfWeek}&after=14:00&before=15:30&limit=2")
+                    .header("Authorization", "Bearer $token")
+            )
+                .hasStatus(HttpStatus.OK)
+                .bodyJson()
+
+            // Then
+            response.extractingPath("$.length()").isEqualTo(2)
+            response.extractingPath("[0].date").isEqualTo(date.toString())
+            response.extractingPath("[0].time").isEqualTo("14:30:00")
+            response.extractingPath("[0].doctorId").isEqualTo(doctor.id!!.toInt())
+            response.extractingPath("[1].time").isEqualTo("15:00:00")
+        }
+
+        @Test
+        fun `should skip to the next matching weekday when the window is full`() {
+            // Given
+            val token = loginAndGetToken("patient1", "patient-pass")
+            val date = LocalDate.now().plusDays(1)
+            appointmentRepository.save(
+                Appointment(
+                    patientId = patient2.id!!,
+                    doctorId = doctor.id!!,
+                    appointmentDate = date,
+                    appointmentTime = LocalTime.of(9, 0),
+                    status = AppointmentStatus.SCHEDULED
+                )
+            )
+
+            // Then
+            assertThat(
+                mockMvcTester
+                    .get()
+                    .uri("/api/appointments/available/earliest?from=$date&weekdays=${date.dayOfWeek}&before=09:30&limit=1")
+                    .header("Authorization", "Bearer $token")
+            )
+                .hasStatus(HttpStatus.OK)
+                .bodyJson()
+                .extractingPath("[0].date")
+                .isEqualTo(date.plusWeeks(1).toString())
+        }
+
+        @Test
+        fun `should reject an empty time window`() {
+            // Given
+            val token = loginAndGetToken("patient1", "patient-pass")
+
+            // Then
+            assertThat(
+                mockMvcTester
+                    .get()
+                    .uri("/api/appointments/available/earliest?after=15:00&before=15:00")
+                    .header("Authorization", "Bearer $token")
+            )
+                .hasStatus(HttpStatus.BAD_REQUEST)
+        }
+    }
+
+    @Nested
+    inner class ArchiveTests {
+
+        @Test
+        fun `partitions through next year should exist once the application is up`() {
+            // Given
+            val nextYear = LocalDate.now().year + 1
+
+            // Then
+            assertThat(
+                jdbcTemplate.queryForObject(
+                    "SELECT COUNT(*) FROM information_schema.PARTITIONS " +
+                            "WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = 'appointments' AND PARTITION_NAME = ?",
+                    Int::class.java, "p$nextYear"
+                )
+            ).isEqualTo(1)
+        }
+
+        @Test
+        fun `archived closed years should only appear in full history`() {
+            // Given
+            val token = loginAndGetToken("patient1", "patient-pass")
+            val oldDate = LocalDate.now().minusYears(3)
+            val oldAppointment = appointmentRepository.save(
+                Appointment(
+                    patientId = patient1.id!!,
+                    doctorId = doctor.id!!,
+                    appointmentDate = oldDate,
+                    appointmentTime = LocalTime.of(10, 0),
+                    status = AppointmentStatus.COMPLETED
+                )
+            )
+            visitRepository.save(
+                Visit(
+                    appointmentId = oldAppointment.id!!,
+                    notes = "Archived visit",
+                    completedByDoctorId = doctor.id!!,
+                    completedAt = oldDate.atTime(10, 10)
+                )
+            )
+
+            jdbcTemplate.update(
+                "INSERT INTO reminder_outbox (appointment_id, phone_number, appointment_date, appointment_time, status) " +
+                        "VALUES (?, ?, ?, ?, 'SENT')",
+                oldAppointment.id, patient1.phoneNumber, oldDate, oldAppointment.appointmentTime
+            )
+
+            // When
+            val archived = appointmentArchiver.archiveClosedYears()
+
+            // Then
+            assertThat(archived).isEqualTo(1)
+            assertThat(appointmentRepository.findById(oldAppointment.id!!)).isEmpty
+            assertThat(visitRepository.existsByAppointmentId(oldAppointment.id!!)).isFalse
+            assertThat(
+                jdbcTemplate.queryForObject("SELECT COUNT(*) FROM reminder_outbox", Int::class.java)
+            ).isZero()
+            assertThat(
+                mockMvcTester
+                    .get()
+                    .uri("/api/appointments/patient/${patient1.id}")
+                    .header("Authorization", "Bearer $token")
+            )
+                .hasStatus(HttpStatus.OK)
+                .bodyJson()
+                .extractingPath("$.length()")
+                .isEqualTo(1)
+            assertThat(
+                mockMvcTester
+                    .get()
+                    .uri("/api/appointments/patient/${patient1.id}?fullHistory=true")
+                    .header("Authorization", "Bearer $token")
+            )
+                .hasStatus(HttpStatus.OK)
+                .bodyJson()
+                .extractingPath("[1].id")
+                .isEqualTo(oldAppointment.id!!.toInt())
+        }
+    }
+
+    @Nested
+    inner class MarkNoShowsTests {
+
+        private fun scheduledAppointment(date: LocalDate, time: LocalTime = LocalTime.of(10, 0)): Appointment {
+            return appointmentRepository.save(
+                Appointment(
+                    patientId = patient2.id!!,
+                    doctorId = doctor.id!!,
+                    appointmentDate = date,
+                    appointmentTime = time,
+                    status = AppointmentStatus.SCHEDULED
+                )
+            )
+        }
+
+        @Test
+        fun `receptionist should mark past scheduled appointments as no-show in bulk`() {
+            // Given
+            val token = loginAndGetToken("receptionist1", "receptionist-pass")
+            val missed = listOf(1L, 2L, 3L).map { scheduledAppointment(LocalDate.now().minusDays(it)) }
+            val upcoming = scheduledAppointment(LocalDate.now().plusDays(1))
+
+            // When
+            val response = assertThat(
+                mockMvcTester
+                    .post()
+                    .uri("/api/appointments/mark-no-shows")
+                    .header("Authorization", "Bearer $token")
+            )
+                .hasStatus(HttpStatus.OK)
+                .bodyJson()
+
+            // Then
+            response.extractingPath("transitioned").isEqualTo(3)
+            assertThat(missed.map { appointmentRepository.findById(it.id!!).get().status })
+                .containsOnly(AppointmentStatus.NO_SHOW)
+            assertThat(appointmentRepository.findById(upcoming.id!!).get().status)
+                .isEqualTo(AppointmentStatus.SCHEDULED)
+        }
+
+        @Test
+        fun `should page past scheduled appointments that already have a visit`() {
+            // Given
+            val token = loginAndGetToken("receptionist1", "receptionist-pass")
+            val day = LocalDate.now().minusDays(2)
+            // Booked out of slot order, so id order and keyset order differ
+            val late = scheduledAppointment(day, LocalTime.of(11, 0))
+            val visited = scheduledAppointment(day, LocalTime.of(9, 0))
+            val early = scheduledAppointment(day, LocalTime.of(8, 0))
+            val middle = scheduledAppointment(day, LocalTime.of(10, 0))
+            visitRepository.save(
+                Visit(
+                    appointmentId = visited.id!!,
+                    notes = "Visit recorded before the status was updated",
+                    completedByDoctorId = doctor.id!!,
+                    completedAt = day.atTime(9, 20)
+                )
+            )
+            val chunkSize = noShowSweeperProperties.chunkSize
+            noShowSweeperProperties.chunkSize = 2
+
+            // When
+            val response = try {
+                assertThat(
+                    mockMvcTester
+                        .post()
+                        .uri("/api/appointments/mark-no-shows")
+                        .header("Authorization", "Bearer $token")
+                )
+                    .hasStatus(HttpStatus.OK)
+                    .bodyJson()
+            } finally {
+                noShowSweeperProperties.chunkSize = chunkSize
+            }
+
+            // Then
+            response.extractingPath("transitioned").isEqualTo(3)
+            assertThat(listOf(early, middle, late).map { appointmentRepository.findById(it.id!!).get().status })
+                .containsOnly(AppointmentStatus.NO_SHOW)
+            assertThat(appointmentRepository.findById(visited.id!!).get().status)
+                .isEqualTo(AppointmentStatus.SCHEDULED)
+        }
+
+        @Test
+        fun `patient should not run the no-show sweep`() {
+            // Given
+            val token = loginAndGetToken("patient1", "patient-pass")
+
+            // Then
+            assertThat(
+                mockMvcTester
+                    .post()
+                    .uri("/api/appointments/mark-no-shows")
+                    .header("Authorization", "Bearer $token")
+            )
+                .hasStatus(HttpStatus.FORBIDDEN)
+        }
+    }
+
+    @Nested
+    inner class ConditionalScheduleTests {
+
+        @Test
+        fun `should answer not modified until the date changes`() {
+            // Given
+            val token = loginAndGetToken("patient1", "patient-pass")
+            val date = LocalDate.now().plusDays(6)
+            val firstResponse = mockMvcTester
+                .get()
+                .uri("/api/appointments/available?date=$date")
+                .header("Authorization", "Bearer $token")
+                .exchange()
+            assertThat(firstResponse).hasStatus(HttpStatus.OK)
+            val etag = firstResponse.mvcResult.response.getHeader("ETag")!!
+
+            // When
+            val unchangedResponse = mockMvcTester
+                .get()
+                .uri("/api/appointments/available?date=$date")
+                .header("Authorization", "Bearer $token")
+                .header("If-None-Match", etag)
+                .exchange()
+
+            val bookAppointmentRequest = """
+                {
+                    "patientId": %d,
+                    "date": "%s",
+                    "time": "%s"
+                }
+                """.format(patient1.id, date, LocalTime.of(9, 0)).trimIndent()
+            assertThat(
+                mockMvcTester
+                    .post()
+                    .uri("/api/appointments")
+                    .header("Authorization", "Bearer $token")
+                    .contentType("application/json")
+                    .content(bookAppointmentRequest)
+            ).hasStatus(HttpStatus.CREATED)
+
+            val changedResponse = mockMvcTester
+                .get()
+                .uri("/api/appointments/available?date=$date")
+                .header("Authorization", "Bearer $token")
+                .header("If-None-Match", etag)
+                .exchange()
+
+            // Then
+            assertThat(unchangedResponse).hasStatus(HttpStatus.NOT_MODIFIED)
+            assertThat(changedResponse).hasStatus(HttpStatus.OK)
+            assertThat(changedResponse.mvcResult.response.getHeader("ETag")).isNotEqualTo(etag)
+        }
+    }
+}
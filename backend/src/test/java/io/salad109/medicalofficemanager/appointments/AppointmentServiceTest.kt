@@ -1,16 +1,37 @@
 package io.salad109.medicalofficemanager.appointments
 
+import io.salad109.medicalofficemanager.appointments.AppointmentActivity
+import io.salad109.medicalofficemanager.appointments.AppointmentActivityEvent
 import io.salad109.medicalofficemanager.appointments.internal.Appointment
+import io.salad109.medicalofficemanager.appointments.internal.AppointmentCursor
 import io.salad109.medicalofficemanager.appointments.internal.AppointmentRepository
 import io.salad109.medicalofficemanager.appointments.internal.AppointmentService
 import io.salad109.medicalofficemanager.appointments.internal.AppointmentStatus
+import io.salad109.medicalofficemanager.appointments.internal.ArchivedAppointmentRepository
+import io.salad109.medicalofficemanager.appointments.internal.DoctorSchedule
+import io.salad109.medicalofficemanager.appointments.internal.DoctorScheduleRegistry
+import io.salad109.medicalofficemanager.appointments.internal.DoctorScheduleRepository
+import io.salad109.medicalofficemanager.appointments.internal.RecurrenceFrequency
+import io.salad109.medicalofficemanager.appointments.internal.ScheduleChangeType
+import io.salad109.medicalofficemanager.appointments.internal.ScheduleChangedEvent
+import io.salad109.medicalofficemanager.appointments.internal.ScheduleVersions
+import io.salad109.medicalofficemanager.appointments.internal.SeriesOccurrenceStatus
+import io.salad109.medicalofficemanager.appointments.internal.SlotAvailabilityIndex
+import io.salad109.medicalofficemanager.appointments.internal.SlotHoldProperties
+import io.salad109.medicalofficemanager.appointments.internal.SlotHolds
 import io.salad109.medicalofficemanager.appointments.internal.dto.AppointmentWithDetailsResponse
 import io.salad109.medicalofficemanager.appointments.internal.dto.BookAppointmentRequest
+import io.salad109.medicalofficemanager.appointments.internal.dto.BookAppointmentSeriesRequest
+import io.salad109.medicalofficemanager.appointments.internal.dto.HoldSlotRequest
+import io.salad109.medicalofficemanager.appointments.internal.dto.RescheduleAppointmentRequest
 import io.salad109.medicalofficemanager.exception.*
+import io.salad109.medicalofficemanager.infrastructure.OptimisticLockRetry
+import io.salad109.medicalofficemanager.infrastructure.SingleFlight
 import io.salad109.medicalofficemanager.users.Role
 import io.salad109.medicalofficemanager.users.UserManagement
 import io.salad109.medicalofficemanager.users.internal.User
 import io.salad109.medicalofficemanager.visits.VisitCompletedEvent
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
 import org.assertj.core.api.Assertions.assertThat
 import org.assertj.core.api.Assertions.assertThatThrownBy
 import org.junit.jupiter.api.BeforeEach
@@ -20,11 +41,16 @@ import org.junit.jupiter.api.extension.ExtendWith
 import org.junit.jupiter.params.ParameterizedTest
 import org.junit.jupiter.params.provider.CsvSource
 import org.mockito.ArgumentMatchers.any
-import org.mockito.InjectMocks
 import org.mockito.Mock
 import org.mockito.junit.jupiter.MockitoExtension
 import org.mockito.kotlin.*
+import org.springframework.context.ApplicationEventPublisher
+import org.springframework.dao.DataIntegrityViolationException
+import org.springframework.orm.ObjectOptimisticLockingFailureException
 import org.springframework.security.access.AccessDeniedException
+import org.springframework.transaction.support.TransactionOperations
+import java.sql.SQLIntegrityConstraintViolationException
+import java.time.DayOfWeek
 import java.time.LocalDate
 import java.time.LocalDateTime
 import java.time.LocalTime
@@ -36,10 +62,26 @@ class AppointmentServiceTest {
     @Mock
     private lateinit var appointmentRepository: AppointmentRepository
 
+    @Mock
+    private lateinit var archivedAppointmentRepository: ArchivedAppointmentRepository
+
     @Mock
     private lateinit var userManagement: UserManagement
 
-    @InjectMocks
+    @Mock
+    private lateinit var applicationEventPublisher: ApplicationEventPublisher
+
+    @Mock(strictness = Mock.Strictness.LENIENT)
+    private lateinit var doctorScheduleRepository: DoctorScheduleRepository
+
+    private lateinit var doctorScheduleRegistry: DoctorScheduleRegistry
+
+    private lateinit var slotAvailabilityIndex: SlotAvailabilityIndex
+
+    private lateinit var scheduleVersions: ScheduleVersions
+
+    private lateinit var slotHolds: SlotHolds
+
     private lateinit var appointmentService: AppointmentService
 
     private lateinit var patientUser: User
@@ -50,6 +92,16 @@ class AppointmentServiceTest {
 
     @BeforeEach
     fun setUp() {
+        doctorScheduleRegistry = DoctorScheduleRegistry(doctorScheduleRepository)
+        scheduleVersions = ScheduleVersions()
+        slotHolds = SlotHolds(doctorScheduleRegistry, scheduleVersions, SlotHoldProperties(), SimpleMeterRegistry())
+        slotAvailabilityIndex = SlotAvailabilityIndex(appointmentRepository, doctorScheduleRegistry, slotHolds)
+        appointmentService = AppointmentService(
+            appointmentRepository, archivedAppointmentRepository, userManagement, slotAvailabilityIndex, doctorScheduleRegistry, applicationEventPublisher,
+            OptimisticLockRetry(TransactionOperations.withoutTransaction(), SimpleMeterRegistry()),
+            SingleFlight(SimpleMeterRegistry()), scheduleVersions, slotHolds
+        )
+
         // Create test users
         patientUser = User(
             id = 1L,
@@ -82,10 +134,14 @@ class AppointmentServiceTest {
             role = Role.RECEPTIONIST
         )
 
+        // The doctor works every day, 9:00 to 17:00 in 30-minute slots
+        whenever(doctorScheduleRepository.findAll()).thenReturn(officeHours(doctorUser.id!!))
+
         // Create test appointment
         testAppointment = Appointment(
             id = 1L,
             patientId = patientUser.id!!,
+            doctorId = doctorUser.id!!,
             appointmentDate = LocalDate.now().plusDays(1),
             appointmentTime = LocalTime.of(9, 0),
             status = AppointmentStatus.SCHEDULED
@@ -100,9 +156,22 @@ class AppointmentServiceTest {
             testAppointment.appointmentDate,
             testAppointment.appointmentTime,
             testAppointment.status,
+            testAppointment.doctorId
         )
     }
 
+    private fun officeHours(doctorId: Long): List<DoctorSchedule> {
+        return DayOfWeek.entries.map { day ->
+            DoctorSchedule(
+                doctorId = doctorId,
+                dayOfWeek = day,
+                startTime = LocalTime.of(9, 0),
+                endTime = LocalTime.of(17, 0),
+                slotMinutes = 30
+            )
+        }
+    }
+
     @Nested
     inner class GetAvailableSlotsTests {
 
@@ -110,14 +179,14 @@ class AppointmentServiceTest {
         fun `should return all slots when no appointments exist`() {
             // Given
             val testDate = LocalDate.now().plusDays(1)
-            whenever(appointmentRepository.findByAppointmentDate(testDate)).thenReturn(emptyList())
+            whenever(appointmentRepository.findBookedTimesByDoctorAndDate(doctorUser.id!!, testDate)).thenReturn(emptyList())
 
             // When
             val availableSlots = appointmentService.getAvailableSlots(testDate)
 
             // Then
             assertThat(availableSlots)
-                .isNotEmpty()
+                .hasSize(16)
                 .contains("09:00", "09:30", "10:00", "16:00", "16:30")
                 .doesNotContain("17:00")
         }
@@ -126,12 +195,8 @@ class AppointmentServiceTest {
         fun `should handle booked slots`() {
             // Given
             val testDate = LocalDate.now().plusDays(1)
-            val bookedAppointments = listOf(
-                Appointment(1L, 1L, testDate, LocalTime.of(9, 0), AppointmentStatus.SCHEDULED),
-                Appointment(2L, 2L, testDate, LocalTime.of(10, 0), AppointmentStatus.SCHEDULED),
-                Appointment(3L, 3L, testDate, LocalTime.of(14, 0), AppointmentStatus.SCHEDULED)
-            )
-            whenever(appointmentRepository.findByAppointmentDate(testDate)).thenReturn(bookedAppointments)
+            val bookedTimes = listOf(LocalTime.of(9, 0), LocalTime.of(10, 0), LocalTime.of(14, 0))
+            whenever(appointmentRepository.findBookedTimesByDoctorAndDate(doctorUser.id!!, testDate)).thenReturn(bookedTimes)
 
             // When
             val availableSlots = appointmentService.getAvailableSlots(testDate)
@@ -141,6 +206,45 @@ class AppointmentServiceTest {
                 .doesNotContain("09:00", "10:00", "14:00")
                 .contains("09:30", "10:30", "14:30")
         }
+
+        @Test
+        fun `should answer repeated lookups from the index`() {
+            // Given
+            val testDate = LocalDate.now().plusDays(1)
+            whenever(appointmentRepository.findBookedTimesByDoctorAndDate(doctorUser.id!!, testDate)).thenReturn(listOf(LocalTime.of(9, 0)))
+
+            // When
+            appointmentService.getAvailableSlots(testDate)
+            val availableSlots = appointmentService.getAvailableSlots(testDate)
+
+            // Then
+            assertThat(availableSlots).hasSize(15).doesNotContain("09:00")
+            verify(appointmentRepository, times(1)).findBookedTimesByDoctorAndDate(doctorUser.id!!, testDate)
+        }
+
+        @Test
+        fun `should apply committed schedule changes to cached dates`() {
+            // Given
+            val testDate = LocalDate.now().plusDays(1)
+            whenever(appointmentRepository.findBookedTimesByDoctorAndDate(doctorUser.id!!, testDate)).thenReturn(listOf(LocalTime.of(9, 0)))
+            appointmentService.getAvailableSlots(testDate)
+
+            // When
+            slotAvailabilityIndex.onScheduleChanged(
+                ScheduleChangedEvent(ScheduleChangeType.SLOT_FREED, 1L, doctorUser.id!!, testDate, LocalTime.of(9, 0), null)
+            )
+            slotAvailabilityIndex.onScheduleChanged(
+                ScheduleChangedEvent(
+                    ScheduleChangeType.SLOT_BOOKED, 2L, doctorUser.id!!, testDate, LocalTime.of(11, 30),
+                    AppointmentStatus.SCHEDULED
+                )
+            )
+            val availableSlots = appointmentService.getAvailableSlots(testDate)
+
+            // Then
+            assertThat(availableSlots).contains("09:00").doesNotContain("11:30")
+            verify(appointmentRepository, times(1)).findBookedTimesByDoctorAndDate(doctorUser.id!!, testDate)
+        }
     }
 
     @Nested
@@ -177,6 +281,84 @@ class AppointmentServiceTest {
             assertThat(appointments[0].id).isEqualTo(testAppointment.id)
             assertThat(appointments[0].patientId).isEqualTo(testAppointment.patientId)
         }
+
+        @Test
+        fun `should share a recent load until the date version changes`() {
+            // Given
+            val testDate = LocalDate.now().plusDays(1)
+            whenever(appointmentRepository.findAppointmentsWithDetailsByDate(testDate)).thenReturn(
+                listOf(testAppointmentWithDetails)
+            )
+
+            // When
+            appointmentService.getAppointmentsWithDetailsByDate(testDate)
+            appointmentService.getAppointmentsWithDetailsByDate(testDate, doctorUser.id!!)
+            scheduleVersions.onScheduleChanged(
+                ScheduleChangedEvent(
+                    ScheduleChangeType.SLOT_BOOKED, 2L, doctorUser.id!!, testDate, LocalTime.of(11, 30),
+                    AppointmentStatus.SCHEDULED
+                )
+            )
+            appointmentService.getAppointmentsWithDetailsByDate(testDate)
+
+            // Then
+            verify(appointmentRepository, times(2)).findAppointmentsWithDetailsByDate(testDate)
+        }
+    }
+
+    @Nested
+    inner class GetCalendarTests {
+
+        @Test
+        fun `should group free slots and appointments by day`() {
+            // Given
+            val from = testAppointment.appointmentDate
+            val to = from.plusDays(2)
+            whenever(appointmentRepository.findAppointmentsWithDetailsBetween(from, to)).thenReturn(
+                listOf(testAppointmentWithDetails)
+            )
+
+            // When
+            val calendar = appointmentService.getCalendar(from, to, receptionistUser.id!!, Role.RECEPTIONIST)
+
+            // Then
+            assertThat(calendar).hasSize(3)
+            assertThat(calendar[0].date).isEqualTo(from)
+            assertThat(calendar[0].appointments).containsExactly(testAppointmentWithDetails)
+            assertThat(calendar[0].availableSlots).hasSize(15).doesNotContain("09:00")
+            assertThat(calendar[1].appointments).isEmpty()
+            assertThat(calendar[1].availableSlots).hasSize(16)
+        }
+
+        @Test
+        fun `should hide other patients appointments from patients`() {
+            // Given
+            val from = testAppointment.appointmentDate
+            whenever(appointmentRepository.findAppointmentsWithDetailsBetween(from, from)).thenReturn(
+                listOf(testAppointmentWithDetails)
+            )
+
+            // When
+            val calendar = appointmentService.getCalendar(from, from, 999L, Role.PATIENT)
+
+            // Then
+            assertThat(calendar).hasSize(1)
+            assertThat(calendar[0].appointments).isEmpty()
+            assertThat(calendar[0].availableSlots).doesNotContain("09:00")
+        }
+
+        @Test
+        fun `should reject ranges longer than the cap`() {
+            // Given
+            val from = LocalDate.now()
+
+            // Then
+            assertThatThrownBy {
+                appointmentService.getCalendar(from, from.plusDays(60), receptionistUser.id!!, Role.RECEPTIONIST)
+            }.isInstanceOf(IllegalArgumentException::class.java)
+                .hasMessageContaining("cannot exceed")
+            verify(appointmentRepository, never()).findAppointmentsWithDetailsBetween(any(), any())
+        }
     }
 
     @Nested
@@ -210,6 +392,82 @@ class AppointmentServiceTest {
             assertThat(appointments).hasSize(1)
             assertThat(appointments[0].id).isEqualTo(testAppointment.id)
             assertThat(appointments[0].patientId).isEqualTo(testAppointment.patientId)
+            verify(archivedAppointmentRepository, never()).findAppointmentsByPatientId(any())
+        }
+
+        @Test
+        fun `should append archived appointments when full history is requested`() {
+            // Given
+            val archivedAppointment = AppointmentWithDetailsResponse(
+                2L, patientUser.id, patientUser.firstName, patientUser.lastName, patientUser.phoneNumber,
+                testAppointment.appointmentDate.minusYears(3), LocalTime.of(10, 0), AppointmentStatus.COMPLETED,
+                doctorUser.id
+            )
+            whenever(appointmentRepository.findAppointmentsByPatientId(patientUser.id!!)).thenReturn(
+                listOf(testAppointmentWithDetails)
+            )
+            whenever(archivedAppointmentRepository.findAppointmentsByPatientId(patientUser.id!!)).thenReturn(
+                listOf(archivedAppointment)
+            )
+
+            // When
+            val appointments = appointmentService.getAppointmentsByPatientId(patientUser.id!!, fullHistory = true)
+
+            // Then
+            assertThat(appointments.map { it.id }).containsExactly(testAppointment.id, 2L)
+        }
+    }
+
+    @Nested
+    inner class GetAppointmentsPageByPatientIdTests {
+
+        @Test
+        fun `should return continuation token when more rows exist`() {
+            // Given
+            val olderAppointment = AppointmentWithDetailsResponse(
+                2L, patientUser.id, patientUser.firstName, patientUser.lastName, patientUser.phoneNumber,
+                testAppointment.appointmentDate.minusDays(7), LocalTime.of(10, 0), AppointmentStatus.COMPLETED,
+                doctorUser.id
+            )
+            whenever(appointmentRepository.findPatientAppointmentsFirstPage(eq(patientUser.id!!), any()))
+                .thenReturn(listOf(testAppointmentWithDetails, olderAppointment))
+
+            // When
+            val page = appointmentService.getAppointmentsPageByPatientId(patientUser.id!!, null, 1)
+
+            // Then
+            assertThat(page.items).containsExactly(testAppointmentWithDetails)
+            assertThat(page.nextCursor).isNotNull()
+            assertThat(AppointmentCursor.decode(page.nextCursor!!)).isEqualTo(
+                AppointmentCursor(testAppointment.appointmentDate, testAppointment.appointmentTime, testAppointment.id!!)
+            )
+        }
+
+        @Test
+        fun `should seek past the cursor position`() {
+            // Given
+            val cursor = AppointmentCursor(testAppointment.appointmentDate, testAppointment.appointmentTime, 1L)
+            whenever(
+                appointmentRepository.findPatientAppointmentsAfter(
+                    eq(patientUser.id!!), eq(cursor.date), eq(cursor.time), eq(cursor.id), any()
+                )
+            ).thenReturn(emptyList())
+
+            // When
+            val page = appointmentService.getAppointmentsPageByPatientId(patientUser.id!!, cursor.encode(), 20)
+
+            // Then
+            assertThat(page.items).isEmpty()
+            assertThat(page.nextCursor).isNull()
+        }
+
+        @Test
+        fun `should reject malformed cursor`() {
+            // Then
+            assertThatThrownBy {
+                appointmentService.getAppointmentsPageByPatientId(patientUser.id!!, "not-a-cursor", 20)
+            }.isInstanceOf(IllegalArgumentException::class.java)
+                .hasMessageContaining("Invalid pagination cursor")
         }
     }
 
@@ -221,11 +479,10 @@ class AppointmentServiceTest {
             // Given
             val futureDate = LocalDate.now().plusDays(1)
             val validTime = LocalTime.of(9, 0)
-            val request = BookAppointmentRequest(patientUser.id, futureDate, validTime)
+            val request = BookAppointmentRequest(patientUser.id, futureDate, validTime, null, null)
 
             doNothing().whenever(userManagement).validatePatient(patientUser.id!!)
-            whenever(appointmentRepository.findByAppointmentDate(futureDate)).thenReturn(emptyList())
-            whenever(appointmentRepository.save(any(Appointment::class.java))).thenAnswer { invocation ->
+            whenever(appointmentRepository.saveAndFlush(any(Appointment::class.java))).thenAnswer { invocation ->
                 (invocation.arguments[0] as Appointment).apply { id = 1L }
             }
 
@@ -236,6 +493,7 @@ class AppointmentServiceTest {
             assertThat(response).isNotNull
             assertThat(response.id).isEqualTo(1L)
             assertThat(response.patientId).isEqualTo(patientUser.id)
+            assertThat(response.doctorId).isEqualTo(doctorUser.id)
             assertThat(response.date).isEqualTo(futureDate)
             assertThat(response.time).isEqualTo(validTime)
             assertThat(response.status).isEqualTo(AppointmentStatus.SCHEDULED)
@@ -245,7 +503,7 @@ class AppointmentServiceTest {
         fun `should throw exception when user is not a patient`() {
             // Given
             val futureDate = LocalDate.now().plusDays(1)
-            val request = BookAppointmentRequest(doctorUser.id, futureDate, LocalTime.of(9, 0))
+            val request = BookAppointmentRequest(doctorUser.id, futureDate, LocalTime.of(9, 0), null, null)
 
             whenever(userManagement.validatePatient(doctorUser.id!!)).thenThrow(
                 InvalidRoleException("User with ID ${doctorUser.id} is not a patient")
@@ -255,14 +513,14 @@ class AppointmentServiceTest {
             assertThatThrownBy { appointmentService.bookAppointment(request) }
                 .isInstanceOf(InvalidRoleException::class.java)
                 .hasMessageContaining("is not a patient")
-            verify(appointmentRepository, never()).save(any()) // make sure save is never called
+            verify(appointmentRepository, never()).saveAndFlush(any()) // make sure save is never called
         }
 
         @Test
         fun `should throw exception when user does not exist`() {
             // Given
             val futureDate = LocalDate.now().plusDays(1)
-            val request = BookAppointmentRequest(999L, futureDate, LocalTime.of(9, 0))
+            val request = BookAppointmentRequest(999L, futureDate, LocalTime.of(9, 0), null, null)
 
             whenever(userManagement.validatePatient(999L)).thenThrow(
                 ResourceNotFoundException("Patient with ID 999 not found")
@@ -272,14 +530,14 @@ class AppointmentServiceTest {
             assertThatThrownBy { appointmentService.bookAppointment(request) }
                 .isInstanceOf(ResourceNotFoundException::class.java)
                 .hasMessageContaining("Patient with ID 999 not found")
-            verify(appointmentRepository, never()).save(any())
+            verify(appointmentRepository, never()).saveAndFlush(any())
         }
 
         @Test
         fun `should throw exception when booking in the past`() {
             // Given
             val pastDate = LocalDate.now().minusDays(1)
-            val request = BookAppointmentRequest(patientUser.id, pastDate, LocalTime.of(9, 0))
+            val request = BookAppointmentRequest(patientUser.id, pastDate, LocalTime.of(9, 0), null, null)
 
             doNothing().whenever(userManagement).validatePatient(patientUser.id!!)
 
@@ -287,7 +545,7 @@ class AppointmentServiceTest {
             assertThatThrownBy { appointmentService.bookAppointment(request) }
                 .isInstanceOf(InvalidTimeSlotException::class.java)
                 .hasMessageContaining("Cannot book appointment in the past")
-            verify(appointmentRepository, never()).save(any())
+            verify(appointmentRepository, never()).saveAndFlush(any())
         }
 
         @Test
@@ -295,7 +553,7 @@ class AppointmentServiceTest {
             // Given
             val today = LocalDate.now()
             val pastTime = LocalTime.now().minusHours(1)
-            val request = BookAppointmentRequest(patientUser.id, today, pastTime)
+            val request = BookAppointmentRequest(patientUser.id, today, pastTime, null, null)
 
             doNothing().whenever(userManagement).validatePatient(patientUser.id!!)
 
@@ -303,7 +561,7 @@ class AppointmentServiceTest {
             assertThatThrownBy { appointmentService.bookAppointment(request) }
                 .isInstanceOf(InvalidTimeSlotException::class.java)
                 .hasMessageContaining("Cannot book appointment in the past")
-            verify(appointmentRepository, never()).save(any())
+            verify(appointmentRepository, never()).saveAndFlush(any())
         }
 
         @ParameterizedTest
@@ -316,7 +574,7 @@ class AppointmentServiceTest {
             // Given
             val futureDate = LocalDate.now().plusDays(1)
             val time = LocalTime.of(hour.toInt(), minute.toInt())
-            val request = BookAppointmentRequest(patientUser.id, futureDate, time)
+            val request = BookAppointmentRequest(patientUser.id, futureDate, time, null, null)
 
             doNothing().whenever(userManagement).validatePatient(patientUser.id!!)
 
@@ -324,7 +582,7 @@ class AppointmentServiceTest {
             assertThatThrownBy { appointmentService.bookAppointment(request) }
                 .isInstanceOf(InvalidTimeSlotException::class.java)
                 .hasMessageContaining("Invalid time slot")
-            verify(appointmentRepository, never()).save(any())
+            verify(appointmentRepository, never()).saveAndFlush(any())
         }
 
         @Test
@@ -332,17 +590,235 @@ class AppointmentServiceTest {
             // Given
             val futureDate = LocalDate.now().plusDays(1)
             val time = LocalTime.of(9, 0)
-            val request = BookAppointmentRequest(patientUser.id, futureDate, time)
-            val existingAppointment = Appointment(2L, 2L, futureDate, time, AppointmentStatus.SCHEDULED)
+            val request = BookAppointmentRequest(patientUser.id, futureDate, time, null, null)
+            val duplicateEntry = SQLIntegrityConstraintViolationException("Duplicate entry", "23000", 1062)
 
             doNothing().whenever(userManagement).validatePatient(patientUser.id!!)
-            whenever(appointmentRepository.findByAppointmentDate(futureDate)).thenReturn(listOf(existingAppointment))
+            whenever(appointmentRepository.saveAndFlush(any(Appointment::class.java))).thenThrow(
+                DataIntegrityViolationException("could not execute statement", duplicateEntry)
+            )
 
             // Then
             assertThatThrownBy { appointmentService.bookAppointment(request) }
                 .isInstanceOf(ResourceAlreadyExistsException::class.java)
                 .hasMessageContaining("already booked")
-            verify(appointmentRepository, never()).save(any())
+            verify(applicationEventPublisher, never()).publishEvent(any<Any>())
+        }
+
+        @Test
+        fun `should not translate other integrity violations`() {
+            // Given
+            val futureDate = LocalDate.now().plusDays(1)
+            val request = BookAppointmentRequest(patientUser.id, futureDate, LocalTime.of(9, 0), null, null)
+            val foreignKeyViolation = SQLIntegrityConstraintViolationException("Cannot add row", "23000", 1452)
+
+            doNothing().whenever(userManagement).validatePatient(patientUser.id!!)
+            whenever(appointmentRepository.saveAndFlush(any(Appointment::class.java))).thenThrow(
+                DataIntegrityViolationException("could not execute statement", foreignKeyViolation)
+            )
+
+            // Then
+            assertThatThrownBy { appointmentService.bookAppointment(request) }
+                .isInstanceOf(DataIntegrityViolationException::class.java)
+        }
+    }
+
+    @Nested
+    inner class DoctorAssignmentTests {
+
+        private val otherDoctorId = 4L
+
+        @Test
+        fun `should assign a doctor who still has the slot free`() {
+            // Given
+            val futureDate = LocalDate.now().plusDays(1)
+            val time = LocalTime.of(9, 0)
+            val request = BookAppointmentRequest(patientUser.id, futureDate, time, null, null)
+
+            whenever(doctorScheduleRepository.findAll()).thenReturn(officeHours(doctorUser.id!!) + officeHours(otherDoctorId))
+            whenever(appointmentRepository.findBookedTimesByDoctorAndDate(doctorUser.id!!, futureDate))
+                .thenReturn(listOf(time))
+            whenever(appointmentRepository.saveAndFlush(any(Appointment::class.java))).thenAnswer { invocation ->
+                (invocation.arguments[0] as Appointment).apply { id = 1L }
+            }
+
+            // When
+            val response = appointmentService.bookAppointment(request)
+
+            // Then
+            assertThat(response.doctorId).isEqualTo(otherDoctorId)
+        }
+
+        @Test
+        fun `should offer a slot while any doctor has it free`() {
+            // Given
+            val testDate = LocalDate.now().plusDays(1)
+            whenever(doctorScheduleRepository.findAll()).thenReturn(officeHours(doctorUser.id!!) + officeHours(otherDoctorId))
+            whenever(appointmentRepository.findBookedTimesByDoctorAndDate(doctorUser.id!!, testDate))
+                .thenReturn(listOf(LocalTime.of(9, 0)))
+            whenever(appointmentRepository.findBookedTimesByDoctorAndDate(otherDoctorId, testDate))
+                .thenReturn(listOf(LocalTime.of(9, 0), LocalTime.of(9, 30)))
+
+            // When
+            val officeSlots = appointmentService.getAvailableSlots(testDate)
+            val doctorSlots = appointmentService.getAvailableSlots(testDate, doctorUser.id!!)
+
+            // Then
+            assertThat(officeSlots).hasSize(15).doesNotContain("09:00").contains("09:30")
+            assertThat(doctorSlots).hasSize(15).doesNotContain("09:00").contains("09:30")
+        }
+
+        @Test
+        fun `should reject a doctor who does not work that day`() {
+            // Given
+            val futureDate = LocalDate.now().plusDays(1)
+            val request = BookAppointmentRequest(patientUser.id, futureDate, LocalTime.of(9, 0), otherDoctorId, null)
+
+            // Then
+            assertThatThrownBy { appointmentService.bookAppointment(request) }
+                .isInstanceOf(InvalidTimeSlotException::class.java)
+                .hasMessageContaining("does not work on")
+            verify(appointmentRepository, never()).saveAndFlush(any())
+        }
+    }
+
+    @Nested
+    inner class SlotHoldTests {
+
+        @Test
+        fun `should hide a held slot until the hold expires`() {
+            // Given
+            val testDate = LocalDate.now().plusDays(1)
+            whenever(appointmentRepository.findBookedTimesByDoctorAndDate(doctorUser.id!!, testDate)).thenReturn(emptyList())
+
+            // When
+            val hold = appointmentService.holdSlot(HoldSlotRequest(patientUser.id, testDate, LocalTime.of(9, 0), null))
+
+            // Then
+            assertThat(hold.doctorId).isEqualTo(doctorUser.id)
+            assertThat(appointmentService.getAvailableSlots(testDate)).doesNotContain("09:00")
+
+            // When
+            slotHolds.expireUntil(System.currentTimeMillis() + SlotHoldProperties().ttl.toMillis() + 1000)
+
+            // Then
+            assertThat(slotHolds.find(hold.id)).isNull()
+            assertThat(appointmentService.getAvailableSlots(testDate)).contains("09:00")
+        }
+
+        @Test
+        fun `should reject a hold on a slot another patient holds`() {
+            // Given
+            val testDate = LocalDate.now().plusDays(1)
+            slotHolds.tryHold(99L, doctorUser.id!!, testDate, LocalTime.of(9, 0))
+
+            // Then
+            assertThatThrownBy {
+                appointmentService.holdSlot(HoldSlotRequest(patientUser.id, testDate, LocalTime.of(9, 0), doctorUser.id))
+            }
+                .isInstanceOf(ResourceAlreadyExistsException::class.java)
+                .hasMessageContaining("held by another patient")
+        }
+
+        @Test
+        fun `should reject booking a slot another patient holds`() {
+            // Given
+            val testDate = LocalDate.now().plusDays(1)
+            slotHolds.tryHold(99L, doctorUser.id!!, testDate, LocalTime.of(9, 0))
+            val request = BookAppointmentRequest(patientUser.id, testDate, LocalTime.of(9, 0), doctorUser.id, null)
+
+            // Then
+            assertThatThrownBy { appointmentService.bookAppointment(request) }
+                .isInstanceOf(ResourceAlreadyExistsException::class.java)
+                .hasMessageContaining("held by another patient")
+            verify(appointmentRepository, never()).saveAndFlush(any())
+        }
+
+        @Test
+        fun `should convert a hold into a booking`() {
+            // Given
+            val testDate = LocalDate.now().plusDays(1)
+            val time = LocalTime.of(9, 0)
+            val hold = slotHolds.tryHold(patientUser.id!!, doctorUser.id!!, testDate, time)!!
+            whenever(appointmentRepository.saveAndFlush(any(Appointment::class.java))).thenAnswer { invocation ->
+                (invocation.arguments[0] as Appointment).apply { id = 1L }
+            }
+
+            // When
+            val response = appointmentService.bookAppointment(BookAppointmentRequest(patientUser.id, testDate, time, null, hold.id))
+            slotHolds.onScheduleChanged(
+                ScheduleChangedEvent(ScheduleChangeType.SLOT_BOOKED, 1L, doctorUser.id!!, testDate, time, AppointmentStatus.SCHEDULED)
+            )
+
+            // Then
+            assertThat(response.doctorId).isEqualTo(doctorUser.id)
+            assertThat(slotHolds.find(hold.id)).isNull()
+        }
+
+        @Test
+        fun `should not let a patient release another patient's hold`() {
+            // Given
+            val hold = slotHolds.tryHold(99L, doctorUser.id!!, LocalDate.now().plusDays(1), LocalTime.of(9, 0))!!
+
+            // Then
+            assertThatThrownBy { appointmentService.releaseHold(hold.id, patientUser.id!!, Role.PATIENT) }
+                .isInstanceOf(AccessDeniedException::class.java)
+            assertThat(slotHolds.find(hold.id)).isNotNull
+        }
+    }
+
+    @Nested
+    inner class BookAppointmentSeriesTests {
+
+        @Test
+        fun `should book free occurrences and report conflicts`() {
+            // Given
+            val startDate = LocalDate.now().plusDays(1)
+            val time = LocalTime.of(10, 0)
+            val request = BookAppointmentSeriesRequest(
+                patientUser.id, doctorUser.id, startDate, time, RecurrenceFrequency.WEEKLY, 3
+            )
+
+            doNothing().whenever(userManagement).validatePatient(patientUser.id!!)
+            whenever(appointmentRepository.findBookedDatesAtTime(doctorUser.id!!, time, startDate, startDate.plusWeeks(2)))
+                .thenReturn(listOf(startDate.plusWeeks(1)))
+            whenever(appointmentRepository.saveAllAndFlush(any<List<Appointment>>())).thenAnswer { invocation ->
+                (invocation.arguments[0] as List<*>).mapIndexed { index, appointment ->
+                    (appointment as Appointment).apply { id = 10L + index }
+                }
+            }
+
+            // When
+            val response = appointmentService.bookAppointmentSeries(request)
+
+            // Then
+            assertThat(response.booked).isEqualTo(2)
+            assertThat(response.conflicted).isEqualTo(1)
+            assertThat(response.occurrences.map { it.status }).containsExactly(
+                SeriesOccurrenceStatus.BOOKED, SeriesOccurrenceStatus.CONFLICT, SeriesOccurrenceStatus.BOOKED
+            )
+            assertThat(response.occurrences.map { it.date }).containsExactly(
+                startDate, startDate.plusWeeks(1), startDate.plusWeeks(2)
+            )
+            verify(userManagement, times(1)).validatePatient(patientUser.id!!)
+            verify(applicationEventPublisher, times(2)).publishEvent(isA<ScheduleChangedEvent>())
+            verify(applicationEventPublisher, times(2)).publishEvent(isA<AppointmentActivityEvent>())
+        }
+
+        @Test
+        fun `should reject series on an invalid time slot`() {
+            // Given
+            val request = BookAppointmentSeriesRequest(
+                patientUser.id, doctorUser.id, LocalDate.now().plusDays(1), LocalTime.of(11, 15), RecurrenceFrequency.DAILY, 5
+            )
+
+            doNothing().whenever(userManagement).validatePatient(patientUser.id!!)
+
+            // Then
+            assertThatThrownBy { appointmentService.bookAppointmentSeries(request) }
+                .isInstanceOf(InvalidTimeSlotException::class.java)
+                .hasMessageContaining("Invalid time slot")
+            verify(appointmentRepository, never()).saveAllAndFlush(any<List<Appointment>>())
         }
     }
 
@@ -363,6 +839,36 @@ class AppointmentServiceTest {
             verify(appointmentRepository).save(any(Appointment::class.java))
         }
 
+        @Test
+        fun `should retry after a concurrent modification`() {
+            // Given
+            whenever(appointmentRepository.findById(testAppointment.id!!)).thenReturn(Optional.of(testAppointment))
+            whenever(appointmentRepository.save(any(Appointment::class.java)))
+                .thenThrow(ObjectOptimisticLockingFailureException(Appointment::class.java, testAppointment.id!!))
+                .thenAnswer { invocation -> invocation.arguments[0] }
+
+            // When
+            val response = appointmentService.markAsNoShow(testAppointment.id!!)
+
+            // Then
+            assertThat(response.status).isEqualTo(AppointmentStatus.NO_SHOW)
+            verify(appointmentRepository, times(2)).findById(testAppointment.id!!)
+        }
+
+        @Test
+        fun `should give up after repeated concurrent modifications`() {
+            // Given
+            whenever(appointmentRepository.findById(testAppointment.id!!)).thenReturn(Optional.of(testAppointment))
+            whenever(appointmentRepository.save(any(Appointment::class.java)))
+                .thenThrow(ObjectOptimisticLockingFailureException(Appointment::class.java, testAppointment.id!!))
+
+            // Then
+            assertThatThrownBy {
+                appointmentService.markAsNoShow(testAppointment.id!!)
+            }.isInstanceOf(ObjectOptimisticLockingFailureException::class.java)
+            verify(appointmentRepository, times(OptimisticLockRetry.DEFAULT_MAX_ATTEMPTS)).save(any(Appointment::class.java))
+        }
+
         @Test
         fun `should throw exception when appointment does not exist`() {
             // Given
@@ -392,6 +898,90 @@ class AppointmentServiceTest {
         verify(appointmentRepository, never()).save(any())
     }
 
+    @Nested
+    inner class RescheduleAppointmentTests {
+
+        private val targetDate = LocalDate.now().plusDays(2)
+        private val targetTime = LocalTime.of(10, 0)
+
+        @Test
+        fun `should move appointment and publish both slot changes`() {
+            // Given
+            val originalDate = testAppointment.appointmentDate
+            testAppointment.version = 0L
+            whenever(appointmentRepository.findById(testAppointment.id!!)).thenReturn(Optional.of(testAppointment))
+            whenever(appointmentRepository.reschedule(1L, originalDate, 0L, doctorUser.id!!, targetDate, targetTime))
+                .thenReturn(1)
+
+            // When
+            val response = appointmentService.rescheduleAppointment(
+                testAppointment.id!!, RescheduleAppointmentRequest(targetDate, targetTime, null), patientUser.id!!, Role.PATIENT
+            )
+
+            // Then
+            assertThat(response.id).isEqualTo(1L)
+            assertThat(response.date).isEqualTo(targetDate)
+            assertThat(response.time).isEqualTo(targetTime)
+            verify(applicationEventPublisher).publishEvent(
+                ScheduleChangedEvent(ScheduleChangeType.SLOT_FREED, 1L, doctorUser.id!!, originalDate, LocalTime.of(9, 0), null)
+            )
+            verify(applicationEventPublisher).publishEvent(
+                ScheduleChangedEvent(ScheduleChangeType.SLOT_BOOKED, 1L, doctorUser.id!!, targetDate, targetTime, AppointmentStatus.SCHEDULED)
+            )
+        }
+
+        @Test
+        fun `should reject a target slot that is already booked`() {
+            // Given
+            val duplicateEntry = SQLIntegrityConstraintViolationException("Duplicate entry", "23000", 1062)
+            whenever(appointmentRepository.findById(testAppointment.id!!)).thenReturn(Optional.of(testAppointment))
+            whenever(appointmentRepository.reschedule(any(), any(), anyOrNull(), any(), any(), any())).thenThrow(
+                DataIntegrityViolationException("could not execute statement", duplicateEntry)
+            )
+
+            // Then
+            assertThatThrownBy {
+                appointmentService.rescheduleAppointment(
+                    testAppointment.id!!, RescheduleAppointmentRequest(targetDate, targetTime, null), receptionistUser.id!!, Role.RECEPTIONIST
+                )
+            }
+                .isInstanceOf(ResourceAlreadyExistsException::class.java)
+                .hasMessageContaining("already booked")
+            verify(applicationEventPublisher, never()).publishEvent(any<Any>())
+        }
+
+        @Test
+        fun `should report a concurrent change as a conflict`() {
+            // Given
+            whenever(appointmentRepository.findById(testAppointment.id!!)).thenReturn(Optional.of(testAppointment))
+            whenever(appointmentRepository.reschedule(any(), any(), anyOrNull(), any(), any(), any())).thenReturn(0)
+
+            // Then
+            assertThatThrownBy {
+                appointmentService.rescheduleAppointment(
+                    testAppointment.id!!, RescheduleAppointmentRequest(targetDate, targetTime, null), receptionistUser.id!!, Role.RECEPTIONIST
+                )
+            }
+                .isInstanceOf(ObjectOptimisticLockingFailureException::class.java)
+            verify(applicationEventPublisher, never()).publishEvent(any<Any>())
+        }
+
+        @Test
+        fun `should throw exception when patient reschedules another appointment`() {
+            // Given
+            whenever(appointmentRepository.findById(testAppointment.id!!)).thenReturn(Optional.of(testAppointment))
+
+            // Then
+            assertThatThrownBy {
+                appointmentService.rescheduleAppointment(
+                    testAppointment.id!!, RescheduleAppointmentRequest(targetDate, targetTime, null), 999L, Role.PATIENT
+                )
+            }
+                .isInstanceOf(AccessDeniedException::class.java)
+            verify(appointmentRepository, never()).reschedule(any(), any(), anyOrNull(), any(), any(), any())
+        }
+    }
+
     @Nested
     inner class CancelAppointmentTests {
 
@@ -407,6 +997,21 @@ class AppointmentServiceTest {
             verify(appointmentRepository).delete(testAppointment)
         }
 
+        @Test
+        fun `should throw exception when cancelling completed appointment`() {
+            // Given
+            val completedAppointment = testAppointment.apply { status = AppointmentStatus.COMPLETED }
+            whenever(appointmentRepository.findById(completedAppointment.id!!)).thenReturn(Optional.of(completedAppointment))
+
+            // Then
+            assertThatThrownBy {
+                appointmentService.cancelAppointment(completedAppointment.id!!, receptionistUser.id!!, Role.RECEPTIONIST)
+            }
+                .isInstanceOf(InvalidAppointmentStatusException::class.java)
+                .hasMessageContaining("Cannot cancel completed appointment")
+            verify(appointmentRepository, never()).delete(any())
+        }
+
         @Test
         fun `should throw exception when patient cancels another appointment`() {
             // Given
@@ -489,6 +1094,24 @@ class AppointmentServiceTest {
                 assertThat(it.id).isEqualTo(testAppointment.id)
                 assertThat(it.status).isEqualTo(AppointmentStatus.COMPLETED)
             })
+            verify(applicationEventPublisher).publishEvent(
+                ScheduleChangedEvent(
+                    ScheduleChangeType.STATUS_CHANGED,
+                    testAppointment.id!!,
+                    testAppointment.doctorId,
+                    testAppointment.appointmentDate,
+                    testAppointment.appointmentTime,
+                    AppointmentStatus.COMPLETED
+                )
+            )
+            verify(applicationEventPublisher).publishEvent(
+                AppointmentActivityEvent(
+                    AppointmentActivity.COMPLETED,
+                    testAppointment.id!!,
+                    testAppointment.doctorId,
+                    testAppointment.appointmentDate
+                )
+            )
         }
 
         @Test
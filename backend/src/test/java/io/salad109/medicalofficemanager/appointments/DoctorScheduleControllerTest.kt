@@ -0,0 +1,114 @@
+package io.salad109.medicalofficemanager.appointments
+
+import io.salad109.medicalofficemanager.BaseControllerTest
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.jupiter.api.Test
+import org.springframework.http.HttpStatus
+import java.time.LocalDate
+
+class DoctorScheduleControllerTest : BaseControllerTest() {
+
+    private fun singleDaySchedule(date: LocalDate, start: String, end: String, slotMinutes: Int): String {
+        return """
+            {
+                "days": [
+                    {
+                        "dayOfWeek": "%s",
+                        "startTime": "%s",
+                        "endTime": "%s",
+                        "slotMinutes": %d
+                    }
+                ]
+            }
+            """.format(date.dayOfWeek, start, end, slotMinutes).trimIndent()
+    }
+
+    @Test
+    fun `receptionist should replace schedule and availability should follow`() {
+        // Given
+        val token = loginAndGetToken("receptionist1", "receptionist-pass")
+        val date = LocalDate.now().plusDays(3)
+
+        // When
+        assertThat(
+            mockMvcTester
+                .put()
+                .uri("/api/doctors/${doctor.id}/schedule")
+                .header("Authorization", "Bearer $token")
+                .contentType("application/json")
+                .content(singleDaySchedule(date, "08:00", "10:00", 20))
+        )
+            .hasStatus(HttpStatus.OK)
+
+        // Then
+        assertThat(
+            mockMvcTester
+                .get()
+                .uri("/api/appointments/available?date=$date&doctorId=${doctor.id}")
+                .header("Authorization", "Bearer $token")
+        )
+            .hasStatus(HttpStatus.OK)
+            .bodyJson()
+            .isEqualTo("""["08:00","08:20","08:40","09:00","09:20","09:40"]""")
+        assertThat(
+            mockMvcTester
+                .get()
+                .uri("/api/appointments/available?date=${date.plusDays(1)}&doctorId=${doctor.id}")
+                .header("Authorization", "Bearer $token")
+        )
+            .hasStatus(HttpStatus.OK)
+            .bodyJson()
+            .isEqualTo("[]")
+    }
+
+    @Test
+    fun `should reject schedule that cannot be compiled into a slot grid`() {
+        // Given
+        val token = loginAndGetToken("receptionist1", "receptionist-pass")
+
+        // Then
+        assertThat(
+            mockMvcTester
+                .put()
+                .uri("/api/doctors/${doctor.id}/schedule")
+                .header("Authorization", "Bearer $token")
+                .contentType("application/json")
+                .content(singleDaySchedule(LocalDate.now(), "17:00", "09:00", 30))
+        )
+            .hasStatus(HttpStatus.BAD_REQUEST)
+    }
+
+    @Test
+    fun `should reject schedule for a user who is not a doctor`() {
+        // Given
+        val token = loginAndGetToken("receptionist1", "receptionist-pass")
+
+        // Then
+        assertThat(
+            mockMvcTester
+                .put()
+                .uri("/api/doctors/${patient1.id}/schedule")
+                .header("Authorization", "Bearer $token")
+                .contentType("application/json")
+                .content(singleDaySchedule(LocalDate.now(), "09:00", "17:00", 30))
+        )
+            .hasStatus(HttpStatus.BAD_REQUEST)
+    }
+
+    @Test
+    fun `patient should not change doctor schedule`() {
+        // Given
+        val token = loginAndGetToken("patient1", "patient-pass")
+
+        // Then
+        assertThat(
+            mockMvcTester
+                .put()
+                .uri("/api/doctors/${doctor.id}/schedule")
+                .header("Authorization", "Bearer $token")
+                .contentType("application/json")
+                .content(singleDaySchedule(LocalDate.now(), "09:00", "17:00", 30))
+        )
+            .hasStatus(HttpStatus.FORBIDDEN)
+    }
+}
@@ -0,0 +1,154 @@
+package io.salad109.medicalofficemanager.appointments
+
+import io.salad109.medicalofficemanager.BaseControllerTest
+import io.salad109.medicalofficemanager.appointments.internal.AppointmentStatus
+import io.salad109.medicalofficemanager.appointments.internal.ScheduleChangeType
+import io.salad109.medicalofficemanager.appointments.internal.ScheduleChangedEvent
+import io.salad109.medicalofficemanager.appointments.internal.ScheduleEventBroadcaster
+import io.salad109.medicalofficemanager.appointments.internal.dto.ScheduleChangeResponse
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.jupiter.api.Test
+import org.springframework.beans.factory.annotation.Autowired
+import org.springframework.context.ApplicationEventPublisher
+import org.springframework.transaction.support.TransactionTemplate
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter
+import java.time.LocalDate
+import java.time.LocalTime
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.LinkedBlockingQueue
+import java.util.concurrent.TimeUnit
+
+class ScheduleEventBroadcasterTest : BaseControllerTest() {
+
+    @Autowired
+    private lateinit var scheduleEventBroadcaster: ScheduleEventBroadcaster
+
+    @Autowired
+    private lateinit var applicationEventPublisher: ApplicationEventPublisher
+
+    @Autowired
+    private lateinit var transactionTemplate: TransactionTemplate
+
+    /**
+     * Records what the broadcaster sends; sends block until [gate] opens, like a client that stopped reading.
+     */
+    private class RecordingEmitter(private val gate: CountDownLatch = CountDownLatch(0)) : SseEmitter() {
+        val sent = LinkedBlockingQueue<Set<ResponseBodyEmitter.DataWithMediaType>>()
+        val completed = CountDownLatch(1)
+
+        override fun send(items: Set<ResponseBodyEmitter.DataWithMediaType>) {
+            gate.await()
+            sent.put(items)
+        }
+
+        override fun complete() {
+            completed.countDown()
+            super.complete()
+        }
+
+        // Skips heartbeats; null when nothing arrives in time
+        fun nextParts(): List<Any>? {
+            while (true) {
+                val parts = sent.poll(5, TimeUnit.SECONDS)?.map { it.data } ?: return null
+                if (parts.any { it is ScheduleChangeResponse }) {
+                    return parts
+                }
+            }
+        }
+
+        fun nextChange(): ScheduleChangeResponse? =
+            nextParts()?.filterIsInstance<ScheduleChangeResponse>()?.single()
+    }
+
+    private fun noShow(appointmentId: Long, date: LocalDate): ScheduleChangedEvent {
+        return ScheduleChangedEvent(
+            ScheduleChangeType.STATUS_CHANGED, appointmentId, doctor.id!!, date, LocalTime.of(10, 0),
+            AppointmentStatus.NO_SHOW
+        )
+    }
+
+    @Test
+    fun `should not stream changes of a rolled back transaction`() {
+        // Given
+        val date = LocalDate.of(2099, 1, 1)
+        val emitter = RecordingEmitter()
+        scheduleEventBroadcaster.subscribe(date, emitter)
+
+        // When
+        transactionTemplate.executeWithoutResult { status ->
+            applicationEventPublisher.publishEvent(noShow(1L, date))
+            status.setRollbackOnly()
+        }
+        transactionTemplate.executeWithoutResult {
+            applicationEventPublisher.publishEvent(noShow(2L, date))
+        }
+
+        // Then
+        // Changes reach a subscriber in commit order, so a leaked rollback would arrive first
+        assertThat(emitter.nextChange()?.appointmentId).isEqualTo(2L)
+    }
+
+    @Test
+    fun `should send every subscriber of a date the same complete event`() {
+        // Given
+        val date = LocalDate.of(2099, 1, 4)
+        val first = RecordingEmitter()
+        val second = RecordingEmitter()
+        scheduleEventBroadcaster.subscribe(date, first)
+        scheduleEventBroadcaster.subscribe(date, second)
+
+        // When
+        (1L..20L).forEach { applicationEventPublisher.publishEvent(noShow(it, date)) }
+
+        // Then
+        (1L..20L).forEach { appointmentId ->
+            val event = noShow(appointmentId, date)
+            val expected = SseEmitter.event()
+                .name(event.type.name)
+                .data(ScheduleChangeResponse(event.type, appointmentId, event.doctorId, date, event.time, event.status))
+                .build()
+                .map { it.data }
+            assertThat(first.nextParts()).isEqualTo(expected)
+            assertThat(second.nextParts()).isEqualTo(expected)
+        }
+    }
+
+    @Test
+    fun `should drop an overflowing subscriber without holding up the others`() {
+        // Given
+        val date = LocalDate.of(2099, 1, 2)
+        val gate = CountDownLatch(1)
+        val stalled = RecordingEmitter(gate)
+        val healthy = RecordingEmitter()
+        scheduleEventBroadcaster.subscribe(date, stalled)
+        scheduleEventBroadcaster.subscribe(date, healthy)
+
+        try {
+            // When
+            // More than the stalled buffer and the send it is stuck in can hold
+            (1L..70L).forEach { applicationEventPublisher.publishEvent(noShow(it, date)) }
+
+            // Then
+            assertThat(stalled.completed.await(5, TimeUnit.SECONDS)).isTrue()
+            assertThat((1..70).map { healthy.nextChange()?.appointmentId }).isEqualTo((1L..70L).toList())
+            assertThat(stalled.sent).isEmpty()
+        } finally {
+            gate.countDown()
+        }
+    }
+
+    @Test
+    fun `should send heartbeats to idle subscribers`() {
+        // Given
+        val emitter = RecordingEmitter()
+
+        // When
+        scheduleEventBroadcaster.subscribe(LocalDate.of(2099, 1, 3), emitter)
+
+        // Then
+        val heartbeat = emitter.sent.poll(5, TimeUnit.SECONDS)
+        assertThat(heartbeat).isNotNull()
+        assertThat(heartbeat!!.joinToString("") { it.data.toString() }).contains(":heartbeat")
+    }
+}
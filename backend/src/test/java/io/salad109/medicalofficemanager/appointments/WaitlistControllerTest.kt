@@ -0,0 +1,135 @@
+package io.salad109.medicalofficemanager.appointments
+
+import io.salad109.medicalofficemanager.BaseControllerTest
+import io.salad109.medicalofficemanager.appointments.internal.Appointment
+import io.salad109.medicalofficemanager.appointments.internal.AppointmentStatus
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.jupiter.api.Test
+import org.springframework.http.HttpStatus
+import java.time.LocalDate
+import java.time.LocalTime
+
+class WaitlistControllerTest : BaseControllerTest() {
+
+    private fun joinWaitlistRequest(patientId: Long?, date: LocalDate, windowStart: String, windowEnd: String): String {
+        return """
+            {
+                "patientId": %d,
+                "date": "%s",
+                "windowStart": "%s",
+                "windowEnd": "%s"
+            }
+            """.format(patientId, date, windowStart, windowEnd).trimIndent()
+    }
+
+    private fun bookedAppointment(date: LocalDate, time: LocalTime): Appointment {
+        return appointmentRepository.save(
+            Appointment(
+                patientId = patient1.id!!,
+                doctorId = doctor.id!!,
+                appointmentDate = date,
+                appointmentTime = time,
+                status = AppointmentStatus.SCHEDULED
+            )
+        )
+    }
+
+    @Test
+    fun `cancelled slot should go to the first waitlisted patient`() {
+        // Given
+        val date = LocalDate.now().plusDays(8)
+        val appointment = bookedAppointment(date, LocalTime.of(11, 0))
+        val patientToken = loginAndGetToken("patient2", "patient2-pass")
+        val receptionistToken = loginAndGetToken("receptionist1", "receptionist-pass")
+        assertThat(
+            mockMvcTester
+                .post()
+                .uri("/api/appointments/waitlist")
+                .header("Authorization", "Bearer $patientToken")
+                .contentType("application/json")
+                .content(joinWaitlistRequest(patient2.id, date, "10:00", "12:00"))
+        )
+            .hasStatus(HttpStatus.CREATED)
+
+        // When
+        assertThat(
+            mockMvcTester
+                .delete()
+                .uri("/api/appointments/${appointment.id}")
+                .header("Authorization", "Bearer $receptionistToken")
+        )
+            .hasStatus(HttpStatus.NO_CONTENT)
+
+        // Then
+        val appointments = appointmentRepository.findAppointmentsWithDetailsByDate(date)
+        assertThat(appointments).hasSize(1)
+        assertThat(appointments[0].patientId).isEqualTo(patient2.id)
+        assertThat(appointments[0].time).isEqualTo(LocalTime.of(11, 0))
+        assertThat(
+            mockMvcTester
+                .get()
+                .uri("/api/appointments/waitlist?date=$date")
+                .header("Authorization", "Bearer $receptionistToken")
+        )
+            .hasStatus(HttpStatus.OK)
+            .bodyJson()
+            .isEqualTo("[]")
+    }
+
+    @Test
+    fun `cancelled slot outside the waitlist window should stay free`() {
+        // Given
+        val date = LocalDate.now().plusDays(8)
+        val appointment = bookedAppointment(date, LocalTime.of(15, 0))
+        val patientToken = loginAndGetToken("patient2", "patient2-pass")
+        val receptionistToken = loginAndGetToken("receptionist1", "receptionist-pass")
+        assertThat(
+            mockMvcTester
+                .post()
+                .uri("/api/appointments/waitlist")
+                .header("Authorization", "Bearer $patientToken")
+                .contentType("application/json")
+                .content(joinWaitlistRequest(patient2.id, date, "10:00", "12:00"))
+        )
+            .hasStatus(HttpStatus.CREATED)
+
+        // When
+        assertThat(
+            mockMvcTester
+                .delete()
+                .uri("/api/appointments/${appointment.id}")
+                .header("Authorization", "Bearer $receptionistToken")
+        )
+            .hasStatus(HttpStatus.NO_CONTENT)
+
+        // Then
+        assertThat(appointmentRepository.findAppointmentsWithDetailsByDate(date)).isEmpty()
+        assertThat(
+            mockMvcTester
+                .get()
+                .uri("/api/appointments/waitlist?date=$date")
+                .header("Authorization", "Bearer $receptionistToken")
+        )
+            .hasStatus(HttpStatus.OK)
+            .bodyJson()
+            .extractingPath("$[0].patientId")
+            .isEqualTo(patient2.id!!.toInt())
+    }
+
+    @Test
+    fun `patient should not join the waitlist for someone else`() {
+        // Given
+        val patientToken = loginAndGetToken("patient1", "patient-pass")
+
+        // Then
+        assertThat(
+            mockMvcTester
+                .post()
+                .uri("/api/appointments/waitlist")
+                .header("Authorization", "Bearer $patientToken")
+                .contentType("application/json")
+                .content(joinWaitlistRequest(patient2.id, LocalDate.now().plusDays(8), "10:00", "12:00"))
+        )
+            .hasStatus(HttpStatus.FORBIDDEN)
+    }
+}
@@ -0,0 +1,172 @@
+package io.salad109.medicalofficemanager.reminders
+
+import io.salad109.medicalofficemanager.BaseControllerTest
+import io.salad109.medicalofficemanager.appointments.internal.Appointment
+import io.salad109.medicalofficemanager.appointments.internal.AppointmentStatus
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.jupiter.api.Test
+import org.springframework.http.HttpStatus
+import java.time.LocalDate
+import java.time.LocalTime
+
+class ReminderControllerTest : BaseControllerTest() {
+
+    private fun scheduledAppointment(date: LocalDate, time: LocalTime, status: AppointmentStatus): Appointment {
+        return appointmentRepository.save(
+            Appointment(
+                patientId = patient1.id!!,
+                doctorId = doctor.id!!,
+                appointmentDate = date,
+                appointmentTime = time,
+                status = status
+            )
+        )
+    }
+
+    @Test
+    fun `should send each reminder once across repeated dispatches`() {
+        // Given
+        val token = loginAndGetToken("receptionist1", "receptionist-pass")
+        val tomorrow = LocalDate.now().plusDays(1)
+        scheduledAppointment(tomorrow, LocalTime.of(9, 0), AppointmentStatus.SCHEDULED)
+        scheduledAppointment(tomorrow, LocalTime.of(9, 30), AppointmentStatus.SCHEDULED)
+        scheduledAppointment(tomorrow, LocalTime.of(10, 0), AppointmentStatus.NO_SHOW)
+
+        // When
+        val firstRun = assertThat(
+            mockMvcTester
+                .post()
+                .uri("/api/reminders/dispatch?date=$tomorrow")
+                .header("Authorization", "Bearer $token")
+        )
+            .hasStatus(HttpStatus.OK)
+            .bodyJson()
+        val secondRun = assertThat(
+            mockMvcTester
+                .post()
+                .uri("/api/reminders/dispatch?date=$tomorrow")
+                .header("Authorization", "Bearer $token")
+        )
+            .hasStatus(HttpStatus.OK)
+            .bodyJson()
+
+        // Then
+        firstRun.extractingPath("enqueued").isEqualTo(2)
+        firstRun.extractingPath("sent").isEqualTo(2)
+        secondRun.extractingPath("enqueued").isEqualTo(0)
+        secondRun.extractingPath("sent").isEqualTo(0)
+        assertThat(
+            jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM reminder_outbox WHERE status = 'SENT'", Int::class.java
+            )
+        ).isEqualTo(2)
+    }
+
+    @Test
+    fun `should count only rescheduled reminders as enqueued again`() {
+        // Given
+        val token = loginAndGetToken("receptionist1", "receptionist-pass")
+        val tomorrow = LocalDate.now().plusDays(1)
+        val unchanged = scheduledAppointment(tomorrow, LocalTime.of(9, 0), AppointmentStatus.SCHEDULED)
+        val moved = scheduledAppointment(tomorrow, LocalTime.of(9, 30), AppointmentStatus.SCHEDULED)
+        // The moved appointment was reminded about its earlier slot
+        mapOf(unchanged to unchanged.appointmentTime, moved to LocalTime.of(8, 0)).forEach { (appointment, remindedTime) ->
+            jdbcTemplate.update(
+                "INSERT INTO reminder_outbox (appointment_id, phone_number, appointment_date, appointment_time, status) " +
+                        "VALUES (?, ?, ?, ?, 'SENT')",
+                appointment.id, patient1.phoneNumber, tomorrow, remindedTime
+            )
+        }
+
+        // When
+        val run = assertThat(
+            mockMvcTester
+                .post()
+                .uri("/api/reminders/dispatch?date=$tomorrow")
+                .header("Authorization", "Bearer $token")
+        )
+            .hasStatus(HttpStatus.OK)
+            .bodyJson()
+
+        // Then
+        run.extractingPath("enqueued").isEqualTo(1)
+        run.extractingPath("sent").isEqualTo(1)
+    }
+
+    @Test
+    fun `should resend a reminder left claimed by an interrupted dispatch`() {
+        // Given
+        val token = loginAndGetToken("receptionist1", "receptionist-pass")
+        val tomorrow = LocalDate.now().plusDays(1)
+        val appointment = scheduledAppointment(tomorrow, LocalTime.of(9, 0), AppointmentStatus.SCHEDULED)
+        jdbcTemplate.update(
+            "INSERT INTO reminder_outbox " +
+                    "(appointment_id, phone_number, appointment_date, appointment_time, status, attempts, claimed_at) " +
+                    "VALUES (?, ?, ?, ?, 'SENDING', 1, CURRENT_TIMESTAMP - INTERVAL 1 HOUR)",
+            appointment.id, patient1.phoneNumber, tomorrow, appointment.appointmentTime
+        )
+
+        // When
+        val run = assertThat(
+            mockMvcTester
+                .post()
+                .uri("/api/reminders/dispatch?date=$tomorrow")
+                .header("Authorization", "Bearer $token")
+        )
+            .hasStatus(HttpStatus.OK)
+            .bodyJson()
+
+        // Then
+        run.extractingPath("enqueued").isEqualTo(0)
+        run.extractingPath("sent").isEqualTo(1)
+        assertThat(
+            jdbcTemplate.queryForObject(
+                "SELECT status FROM reminder_outbox WHERE appointment_id = ?", String::class.java, appointment.id
+            )
+        ).isEqualTo("SENT")
+    }
+
+    @Test
+    fun `should drop the queued reminder of a cancelled appointment`() {
+        // Given
+        val token = loginAndGetToken("receptionist1", "receptionist-pass")
+        val tomorrow = LocalDate.now().plusDays(1)
+        val appointment = scheduledAppointment(tomorrow, LocalTime.of(9, 0), AppointmentStatus.SCHEDULED)
+        jdbcTemplate.update(
+            "INSERT INTO reminder_outbox (appointment_id, phone_number, appointment_date, appointment_time) " +
+                    "VALUES (?, ?, ?, ?)",
+            appointment.id, patient1.phoneNumber, tomorrow, appointment.appointmentTime
+        )
+
+        // When
+        assertThat(
+            mockMvcTester
+                .delete()
+                .uri("/api/appointments/${appointment.id}")
+                .header("Authorization", "Bearer $token")
+        )
+            .hasStatus(HttpStatus.NO_CONTENT)
+
+        // Then
+        assertThat(
+            jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM reminder_outbox WHERE appointment_id = ?", Int::class.java, appointment.id
+            )
+        ).isZero()
+    }
+
+    @Test
+    fun `patient should not dispatch reminders`() {
+        // Given
+        val token = loginAndGetToken("patient1", "patient-pass")
+
+        // Then
+        assertThat(
+            mockMvcTester
+                .post()
+                .uri("/api/reminders/dispatch")
+                .header("Authorization", "Bearer $token")
+        )
+            .hasStatus(HttpStatus.FORBIDDEN)
+    }
+}
@@ -1,11 +1,14 @@
 package io.salad109.medicalofficemanager.visits
 
+import com.jayway.jsonpath.JsonPath
 import io.salad109.medicalofficemanager.BaseControllerTest
 import org.assertj.core.api.Assertions.assertThat
 import org.junit.jupiter.api.Nested
 import org.junit.jupiter.api.Test
 import org.springframework.http.HttpStatus
 import org.springframework.http.MediaType
+import java.io.ByteArrayInputStream
+import java.util.zip.ZipInputStream
 
 class VisitControllerTest : BaseControllerTest() {
 
@@ -31,6 +34,51 @@ class VisitControllerTest : BaseControllerTest() {
                 .isNotNull()
         }
 
+        @Test
+        fun `should stream full history visit report as a complete PDF`() {
+            // Given
+            val patientId = patient1.id
+            val token = loginAndGetToken("patient1", "patient-pass")
+
+            // Then
+            assertThat(
+                mockMvcTester
+                    .get()
+                    .uri("/api/visits/patient/$patientId/report?fullHistory=true")
+                    .header("Authorization", "Bearer $token")
+            )
+                .hasStatus(HttpStatus.OK)
+                .body()
+                .asString()
+                .startsWith("%PDF")
+                .contains("%%EOF")
+        }
+
+        @Test
+        fun `should serve the cached report until visit notes change`() {
+            // Given
+            val patientId = patient1.id
+            val visitId = visitRepository.findAll().first().id
+            val token = loginAndGetToken("doctor1", "doctor-pass")
+            val first = downloadReport(patientId!!, token)
+
+            // When
+            val second = downloadReport(patientId, token)
+            assertThat(
+                mockMvcTester
+                    .put()
+                    .uri("/api/visits/$visitId")
+                    .header("Authorization", "Bearer $token")
+                    .contentType("application/json")
+                    .content("""{"notes": "Follow-up in two weeks."}""")
+            ).hasStatus(HttpStatus.OK)
+            val third = downloadReport(patientId, token)
+
+            // Then
+            assertThat(second).isEqualTo(first)
+            assertThat(third).isNotEqualTo(first)
+        }
+
         @Test
         fun `should not generate visit report when patient has no visits`() {
             // Given
@@ -63,4 +111,270 @@ class VisitControllerTest : BaseControllerTest() {
                 .hasStatus(HttpStatus.BAD_REQUEST)
         }
     }
+
+    @Nested
+    inner class NotesSearchTests {
+
+        @Test
+        fun `should find visits by words in their notes`() {
+            // Given
+            val token = loginAndGetToken("doctor1", "doctor-pass")
+
+            // Then
+            val body = assertThat(
+                mockMvcTester
+                    .get()
+                    .uri("/api/visits/search?q=note&doctorId=${doctor.id}&from=2025-01-01&to=2025-12-31")
+                    .header("Authorization", "Bearer $token")
+            )
+                .hasStatus(HttpStatus.OK)
+                .bodyJson()
+            body.extractingPath("$.content[0].snippet").asString().isEqualTo("Test <mark>notes</mark> here.")
+            body.extractingPath("$.content[0].visit.notesPreview").asString().isEqualTo("Test notes here.")
+            body.extractingPath("$.content[0].visit.notes").isNull()
+        }
+
+        @Test
+        fun `should not find visits outside the date range`() {
+            // Given
+            val token = loginAndGetToken("doctor1", "doctor-pass")
+
+            // Then
+            assertThat(
+                mockMvcTester
+                    .get()
+                    .uri("/api/visits/search?q=notes&from=2026-01-01")
+                    .header("Authorization", "Bearer $token")
+            )
+                .hasStatus(HttpStatus.OK)
+                .bodyJson()
+                .extractingPath("$.content")
+                .asArray()
+                .isEmpty()
+        }
+
+        @Test
+        fun `should not let patients search visit notes`() {
+            // Given
+            val token = loginAndGetToken("patient1", "patient-pass")
+
+            // Then
+            assertThat(
+                mockMvcTester
+                    .get()
+                    .uri("/api/visits/search?q=notes")
+                    .header("Authorization", "Bearer $token")
+            )
+                .hasStatus(HttpStatus.FORBIDDEN)
+        }
+    }
+
+    @Nested
+    inner class VisitSummaryTests {
+
+        @Test
+        fun `should list visits with a preview of their notes`() {
+            // Given
+            val token = loginAndGetToken("doctor1", "doctor-pass")
+
+            // Then
+            val body = assertThat(
+                mockMvcTester
+                    .get()
+                    .uri("/api/visits/patient/${patient1.id}/summaries")
+                    .header("Authorization", "Bearer $token")
+            )
+                .hasStatus(HttpStatus.OK)
+                .bodyJson()
+            body.extractingPath("$[0].notesPreview").asString().isEqualTo("Test notes here.")
+            body.extractingPath("$[0].notesLength").isEqualTo(16)
+            body.extractingPath("$[0].notes").isNull()
+        }
+
+        @Test
+        fun `should fetch the full notes of a visit`() {
+            // Given
+            val visitId = visitRepository.findAll().first().id
+            val token = loginAndGetToken("doctor1", "doctor-pass")
+
+            // Then
+            assertThat(
+                mockMvcTester
+                    .get()
+                    .uri("/api/visits/$visitId/notes")
+                    .header("Authorization", "Bearer $token")
+            )
+                .hasStatus(HttpStatus.OK)
+                .bodyJson()
+                .extractingPath("$.notes")
+                .asString()
+                .isEqualTo("Test notes here.")
+        }
+
+        @Test
+        fun `should not fetch notes of a missing visit`() {
+            // Given
+            val token = loginAndGetToken("doctor1", "doctor-pass")
+
+            // Then
+            assertThat(
+                mockMvcTester
+                    .get()
+                    .uri("/api/visits/999999/notes")
+                    .header("Authorization", "Bearer $token")
+            )
+                .hasStatus(HttpStatus.NOT_FOUND)
+        }
+    }
+
+    @Nested
+    inner class ReportJobTests {
+
+        @Test
+        fun `should render a submitted report job and serve it once done`() {
+            // Given
+            val token = loginAndGetToken("doctor1", "doctor-pass")
+            val submitResponse = mockMvcTester
+                .post()
+                .uri("/api/visits/patient/${patient1.id}/report/jobs")
+                .header("Authorization", "Bearer $token")
+                .exchange()
+            assertThat(submitResponse).hasStatus(HttpStatus.ACCEPTED)
+            val jobId: String = JsonPath.read(submitResponse.mvcResult.response.contentAsString, "$.id")
+
+            // When
+            val status = awaitJob(jobId, token)
+
+            // Then
+            assertThat(status).isEqualTo("DONE")
+            assertThat(
+                mockMvcTester
+                    .get()
+                    .uri("/api/visits/report-jobs/$jobId/download")
+                    .header("Authorization", "Bearer $token")
+            )
+                .hasStatus(HttpStatus.OK)
+                .hasHeader("Content-Type", MediaType.APPLICATION_PDF.toString())
+                .body()
+                .asString()
+                .startsWith("%PDF")
+        }
+
+        @Test
+        fun `should not show a report job to another user`() {
+            // Given
+            val doctorToken = loginAndGetToken("doctor1", "doctor-pass")
+            val receptionistToken = loginAndGetToken("receptionist1", "receptionist-pass")
+            val submitResponse = mockMvcTester
+                .post()
+                .uri("/api/visits/patient/${patient1.id}/report/jobs")
+                .header("Authorization", "Bearer $doctorToken")
+                .exchange()
+            val jobId: String = JsonPath.read(submitResponse.mvcResult.response.contentAsString, "$.id")
+
+            // Then
+            assertThat(
+                mockMvcTester
+                    .get()
+                    .uri("/api/visits/report-jobs/$jobId")
+                    .header("Authorization", "Bearer $receptionistToken")
+            )
+                .hasStatus(HttpStatus.NOT_FOUND)
+            assertThat(awaitJob(jobId, doctorToken)).isEqualTo("DONE")
+        }
+
+        private fun awaitJob(jobId: String, token: String): String {
+            var status = "QUEUED"
+            var polls = 0
+            while (status != "DONE" && status != "FAILED" && polls++ < 50) {
+                Thread.sleep(100)
+                val pollResponse = mockMvcTester
+                    .get()
+                    .uri("/api/visits/report-jobs/$jobId")
+                    .header("Authorization", "Bearer $token")
+                    .exchange()
+                status = JsonPath.read(pollResponse.mvcResult.response.contentAsString, "$.status")
+            }
+            return status
+        }
+    }
+
+    @Nested
+    inner class ReportExportTests {
+
+        @Test
+        fun `should export reports for listed patients and skip those without visits`() {
+            // Given
+            val token = loginAndGetToken("receptionist1", "receptionist-pass")
+            val request = """{"patientIds": [${patient1.id}, ${patient2.id}, ${receptionist.id}]}"""
+
+            // When
+            val entries = exportReports(request, token)
+
+            // Then
+            assertThat(entries.keys).containsExactlyInAnyOrder("patient_${patient1.id}_visit_report.pdf", "skipped.txt")
+            assertThat(String(entries.getValue("patient_${patient1.id}_visit_report.pdf"))).startsWith("%PDF")
+            assertThat(String(entries.getValue("skipped.txt")).lines())
+                .anyMatch { it.startsWith("${patient2.id}:") }
+                .anyMatch { it.startsWith("${receptionist.id}:") }
+        }
+
+        @Test
+        fun `should export reports for patients with visits in a date range`() {
+            // Given
+            val token = loginAndGetToken("receptionist1", "receptionist-pass")
+            val request = """{"from": "2025-05-01", "to": "2025-05-31"}"""
+
+            // When
+            val entries = exportReports(request, token)
+
+            // Then
+            assertThat(entries.keys).containsExactly("patient_${patient1.id}_visit_report.pdf")
+        }
+
+        @Test
+        fun `should reject export with both patient IDs and a date range`() {
+            // Given
+            val token = loginAndGetToken("receptionist1", "receptionist-pass")
+
+            // Then
+            assertThat(
+                mockMvcTester
+                    .post()
+                    .uri("/api/visits/reports/export")
+                    .header("Authorization", "Bearer $token")
+                    .contentType("application/json")
+                    .content("""{"patientIds": [${patient1.id}], "from": "2025-05-01", "to": "2025-05-31"}""")
+            )
+                .hasStatus(HttpStatus.BAD_REQUEST)
+        }
+
+        private fun exportReports(request: String, token: String): Map<String, ByteArray> {
+            val response = mockMvcTester
+                .post()
+                .uri("/api/visits/reports/export")
+                .header("Authorization", "Bearer $token")
+                .contentType("application/json")
+                .content(request)
+                .exchange()
+
+            assertThat(response).hasStatus(HttpStatus.OK)
+            val entries = LinkedHashMap<String, ByteArray>()
+            ZipInputStream(ByteArrayInputStream(response.mvcResult.response.contentAsByteArray)).use { zip ->
+                generateSequence { zip.nextEntry }.forEach { entries[it.name] = zip.readAllBytes() }
+            }
+            return entries
+        }
+    }
+
+    private fun downloadReport(patientId: Long, token: String): ByteArray {
+        val response = mockMvcTester
+            .get()
+            .uri("/api/visits/patient/$patientId/report")
+            .header("Authorization", "Bearer $token")
+            .exchange()
+
+        assertThat(response).hasStatus(HttpStatus.OK)
+        return response.mvcResult.response.contentAsByteArray
+    }
 }
\ No newline at end of file
@@ -2,32 +2,63 @@ package io.salad109.medicalofficemanager.visits
 
 import io.salad109.medicalofficemanager.exception.ResourceAlreadyExistsException
 import io.salad109.medicalofficemanager.exception.ResourceNotFoundException
+import io.salad109.medicalofficemanager.exception.TooManyRequestsException
+import io.salad109.medicalofficemanager.infrastructure.OptimisticLockRetry
+import io.salad109.medicalofficemanager.infrastructure.SingleFlight
 import io.salad109.medicalofficemanager.users.Role
 import io.salad109.medicalofficemanager.users.UserManagement
 import io.salad109.medicalofficemanager.users.internal.User
+import io.salad109.medicalofficemanager.visits.internal.ArchivedVisitRepository
 import io.salad109.medicalofficemanager.visits.internal.Visit
 import io.salad109.medicalofficemanager.visits.internal.VisitPdfGenerator
+import io.salad109.medicalofficemanager.visits.internal.VisitReportCache
+import io.salad109.medicalofficemanager.visits.internal.VisitReportCacheProperties
+import io.salad109.medicalofficemanager.visits.internal.VisitReportExporter
+import io.salad109.medicalofficemanager.visits.internal.VisitReportJobProperties
+import io.salad109.medicalofficemanager.visits.internal.VisitReportJobStatus
+import io.salad109.medicalofficemanager.visits.internal.VisitReportJobs
 import io.salad109.medicalofficemanager.visits.internal.VisitRepository
 import io.salad109.medicalofficemanager.visits.internal.VisitService
 import io.salad109.medicalofficemanager.visits.internal.dto.VisitCreationRequest
+import io.salad109.medicalofficemanager.visits.internal.dto.VisitNotesResponse
+import io.salad109.medicalofficemanager.visits.internal.dto.VisitSummaryResponse
 import io.salad109.medicalofficemanager.visits.internal.dto.VisitUpdateRequest
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
 import org.assertj.core.api.Assertions.assertThat
 import org.assertj.core.api.Assertions.assertThatThrownBy
 import org.junit.jupiter.api.BeforeEach
 import org.junit.jupiter.api.Nested
 import org.junit.jupiter.api.Test
 import org.junit.jupiter.api.extension.ExtendWith
+import org.junit.jupiter.api.io.TempDir
 import org.mockito.Mock
 import org.mockito.junit.jupiter.MockitoExtension
 import org.mockito.kotlin.any
+import org.mockito.kotlin.anyOrNull
 import org.mockito.kotlin.check
+import org.mockito.kotlin.eq
+import org.mockito.kotlin.isNull
+import org.mockito.kotlin.never
+import org.mockito.kotlin.times
 import org.mockito.kotlin.verify
 import org.mockito.kotlin.whenever
 import org.springframework.context.ApplicationEventPublisher
+import org.springframework.data.domain.PageImpl
+import org.springframework.data.domain.PageRequest
+import org.springframework.transaction.PlatformTransactionManager
+import org.springframework.transaction.support.TransactionOperations
+import java.io.ByteArrayInputStream
+import java.io.ByteArrayOutputStream
+import java.io.OutputStream
+import java.nio.file.Files
+import java.nio.file.Path
 import java.time.LocalDate
 import java.time.LocalDateTime
 import java.time.LocalTime
 import java.util.*
+import java.util.concurrent.CountDownLatch
+import java.util.stream.Stream
+import java.util.zip.ZipInputStream
 
 @ExtendWith(MockitoExtension::class)
 class VisitServiceTest {
@@ -35,6 +66,9 @@ class VisitServiceTest {
     @Mock
     private lateinit var visitRepository: VisitRepository
 
+    @Mock
+    private lateinit var archivedVisitRepository: ArchivedVisitRepository
+
     @Mock
     private lateinit var applicationEventPublisher: ApplicationEventPublisher
 
@@ -44,6 +78,14 @@ class VisitServiceTest {
     @Mock
     private lateinit var userManagement: UserManagement
 
+    @Mock
+    private lateinit var transactionManager: PlatformTransactionManager
+
+    @TempDir
+    lateinit var reportDirectory: Path
+
+    private lateinit var reportCache: VisitReportCache
+
     private lateinit var visitService: VisitService
 
     private lateinit var patientUser: User
@@ -54,7 +96,18 @@ class VisitServiceTest {
 
     @BeforeEach
     fun setUp() {
-        visitService = VisitService(visitRepository, applicationEventPublisher, pdfGenerator, userManagement)
+        reportCache = VisitReportCache(
+            VisitReportCacheProperties().apply { directory = reportDirectory.toString() },
+            SingleFlight(SimpleMeterRegistry()),
+            SimpleMeterRegistry()
+        )
+        visitService = VisitService(
+            visitRepository, archivedVisitRepository, applicationEventPublisher, pdfGenerator, userManagement,
+            OptimisticLockRetry(TransactionOperations.withoutTransaction(), SimpleMeterRegistry()),
+            SingleFlight(SimpleMeterRegistry()),
+            reportCache,
+            transactionManager
+        )
 
         // Create test users
         patientUser = User(
@@ -110,6 +163,64 @@ class VisitServiceTest {
             assertThat(visits[0].id).isEqualTo(1L)
             assertThat(visits[0].notes).isEqualTo("Visit notes.")
         }
+
+        @Test
+        fun `should list live visit summaries before archived ones`() {
+            // Given
+            whenever(visitRepository.findVisitSummariesByPatientId(patientUser.id!!))
+                .thenReturn(listOf(visitSummary(2L, "Live notes.")))
+            whenever(archivedVisitRepository.findVisitSummariesByPatientId(patientUser.id!!))
+                .thenReturn(listOf(visitSummary(1L, "Archived notes.")))
+
+            // When
+            val summaries = visitService.findVisitSummariesByPatient(patientUser.id!!, fullHistory = true)
+
+            // Then
+            assertThat(summaries.map { it.id }).containsExactly(2L, 1L)
+            assertThat(summaries[1].notesPreview).isEqualTo("Archived notes.")
+        }
+
+        @Test
+        fun `should fetch notes of an archived visit`() {
+            // Given
+            whenever(visitRepository.findNotesById(1L)).thenReturn(Optional.empty())
+            whenever(archivedVisitRepository.findNotesById(1L))
+                .thenReturn(Optional.of(VisitNotesResponse(1L, "Archived notes.")))
+
+            // When
+            val notes = visitService.getVisitNotes(1L)
+
+            // Then
+            assertThat(notes.notes).isEqualTo("Archived notes.")
+        }
+
+        @Test
+        fun `should throw exception when visit notes not found`() {
+            // Given
+            whenever(visitRepository.findNotesById(999L)).thenReturn(Optional.empty())
+            whenever(archivedVisitRepository.findNotesById(999L)).thenReturn(Optional.empty())
+
+            // Then
+            assertThatThrownBy { visitService.getVisitNotes(999L) }
+                .isInstanceOf(ResourceNotFoundException::class.java)
+                .hasMessageContaining("Visit not found")
+        }
+
+        private fun visitSummary(id: Long, notes: String) = VisitSummaryResponse(
+            id,
+            notes,
+            notes.length,
+            LocalDateTime.now(),
+            testAppointmentId,
+            testAppointmentDate,
+            testAppointmentTime,
+            doctorUser.id!!,
+            doctorUser.firstName,
+            doctorUser.lastName,
+            patientUser.id!!,
+            patientUser.firstName,
+            patientUser.lastName
+        )
     }
 
     @Nested
@@ -260,4 +371,257 @@ class VisitServiceTest {
                 .hasMessageContaining("Visit not found")
         }
     }
-}
\ No newline at end of file
+
+    @Nested
+    inner class NotesSearchTests {
+
+        @Test
+        fun `should search all words as prefixes and mark them in the snippet`() {
+            // Given
+            val notes = "Blood pressure <high>, recheck in 2 weeks & lower salt."
+            val visit = VisitSummaryResponse(
+                1L,
+                notes,
+                notes.length,
+                LocalDateTime.now(),
+                testAppointmentId,
+                testAppointmentDate,
+                testAppointmentTime,
+                doctorUser.id!!,
+                doctorUser.firstName,
+                doctorUser.lastName,
+                patientUser.id!!,
+                patientUser.firstName,
+                patientUser.lastName
+            )
+            whenever(visitRepository.searchVisitSummariesByNotes(any(), anyOrNull(), anyOrNull(), anyOrNull(), any()))
+                .thenAnswer { PageImpl(listOf(visit), it.getArgument(4), 1) }
+            whenever(visitRepository.findNotesByIds(listOf(1L))).thenReturn(listOf(VisitNotesResponse(1L, notes)))
+
+            // When
+            val hits = visitService.searchVisitNotes("pressure, to salt", null, null, null, PageRequest.of(0, 20))
+
+            // Then
+            verify(visitRepository).searchVisitSummariesByNotes(
+                eq("+pressure* +salt*"), isNull(), isNull(), isNull(), eq(PageRequest.of(0, 20))
+            )
+            assertThat(hits.content.single().visit).isSameAs(visit)
+            assertThat(hits.content.single().snippet).isEqualTo(
+                "Blood <mark>pressure</mark> &lt;high&gt;, recheck in 2 weeks &amp; lower <mark>salt</mark>."
+            )
+        }
+
+        @Test
+        fun `should reject search without a word long enough to be indexed`() {
+            // Then
+            assertThatThrownBy { visitService.searchVisitNotes("a b", null, null, null, PageRequest.of(0, 20)) }
+                .isInstanceOf(IllegalArgumentException::class.java)
+            verify(visitRepository, never()).searchVisitSummariesByNotes(any(), anyOrNull(), anyOrNull(), anyOrNull(), any())
+        }
+    }
+
+    @Nested
+    inner class ReportGenerationTests {
+
+        @Test
+        fun `should stream live visits before archived ones into the report`() {
+            // Given
+            val liveVisit = visitResponse(1L, LocalDate.of(2025, 5, 25))
+            val archivedVisit = visitResponse(2L, LocalDate.of(2023, 3, 14))
+            whenever(visitRepository.existsByPatientId(patientUser.id!!)).thenReturn(true)
+            whenever(visitRepository.streamVisitResponsesByPatientId(patientUser.id!!))
+                .thenReturn(Stream.of(liveVisit))
+            whenever(archivedVisitRepository.streamVisitResponsesByPatientId(patientUser.id!!))
+                .thenReturn(Stream.of(archivedVisit))
+            val written = mutableListOf<VisitResponse>()
+            whenever(pdfGenerator.writePatientVisitReport(any(), any())).thenAnswer { invocation ->
+                invocation.getArgument<Iterator<VisitResponse>>(0).forEach { written.add(it) }
+                written.size
+            }
+
+            // When
+            val report = visitService.getPatientVisitReport(patientUser.id!!, fullHistory = true)
+
+            // Then
+            assertThat(written).containsExactly(liveVisit, archivedVisit)
+            assertThat(report.path).startsWith(reportDirectory).exists()
+        }
+
+        @Test
+        fun `should only clear its own files from the cache directory on startup`() {
+            // Given
+            val shared = Files.createDirectories(reportDirectory.resolve("shared"))
+            val foreign = Files.writeString(shared.resolve("notes.txt"), "not a report")
+            Files.createDirectories(shared.resolve("nested")).resolve("file.txt").let { Files.writeString(it, "x") }
+            val own = Files.createDirectories(shared.resolve("visit-reports"))
+            val stale = Files.writeString(own.resolve("a".repeat(64) + ".pdf"), "stale")
+            val leftover = Files.writeString(own.resolve("report-123.tmp"), "partial")
+            val unrelated = Files.writeString(own.resolve("readme.txt"), "keep")
+
+            // When
+            VisitReportCache(
+                VisitReportCacheProperties().apply { directory = shared.toString() },
+                SingleFlight(SimpleMeterRegistry()),
+                SimpleMeterRegistry()
+            )
+
+            // Then
+            assertThat(foreign).exists()
+            assertThat(shared.resolve("nested/file.txt")).exists()
+            assertThat(unrelated).exists()
+            assertThat(stale).doesNotExist()
+            assertThat(leftover).doesNotExist()
+        }
+
+        @Test
+        fun `should serve cached report until the patient's history changes`() {
+            // Given
+            whenever(visitRepository.existsByPatientId(patientUser.id!!)).thenReturn(true)
+            whenever(visitRepository.streamVisitResponsesByPatientId(patientUser.id!!))
+                .thenAnswer { Stream.of(visitResponse(1L, testAppointmentDate)) }
+            whenever(pdfGenerator.writePatientVisitReport(any(), any())).thenAnswer { invocation ->
+                invocation.getArgument<OutputStream>(1).write("%PDF".toByteArray())
+                1
+            }
+
+            // When
+            val first = visitService.getPatientVisitReport(patientUser.id!!)
+            val second = visitService.getPatientVisitReport(patientUser.id!!)
+            reportCache.invalidate(patientUser.id!!)
+            val third = visitService.getPatientVisitReport(patientUser.id!!)
+
+            // Then
+            assertThat(second.path).isEqualTo(first.path)
+            assertThat(third.path).isNotEqualTo(first.path)
+            assertThat(third.size).isEqualTo(4L)
+            verify(pdfGenerator, times(2)).writePatientVisitReport(any(), any())
+        }
+
+        @Test
+        fun `should reject report before streaming when patient has no visits`() {
+            // Given
+            whenever(visitRepository.existsByPatientId(patientUser.id!!)).thenReturn(false)
+            whenever(archivedVisitRepository.existsByPatientId(patientUser.id!!)).thenReturn(false)
+
+            // Then
+            assertThatThrownBy { visitService.getPatientVisitReport(patientUser.id!!, fullHistory = true) }
+                .isInstanceOf(IllegalArgumentException::class.java)
+                .hasMessageContaining("no visits")
+            verify(visitRepository, never()).streamVisitResponsesByPatientId(any())
+        }
+
+        @Test
+        fun `should turn reports away once the render queue is full`() {
+            // Given
+            val rendering = CountDownLatch(1)
+            val release = CountDownLatch(1)
+            whenever(visitRepository.existsByPatientId(patientUser.id!!)).thenReturn(true)
+            whenever(visitRepository.streamVisitResponsesByPatientId(patientUser.id!!))
+                .thenAnswer { Stream.of(visitResponse(1L, testAppointmentDate)) }
+            whenever(pdfGenerator.writePatientVisitReport(any(), any())).thenAnswer {
+                rendering.countDown()
+                release.await()
+                1
+            }
+            val reportJobs = VisitReportJobs(
+                visitService,
+                reportCache,
+                VisitReportJobProperties().apply {
+                    workers = 1
+                    queueCapacity = 1
+                },
+                SimpleMeterRegistry()
+            )
+
+            try {
+                // When
+                val running = reportJobs.submit(patientUser.id!!, false, doctorUser.id!!)
+                rendering.await()
+                val queued = reportJobs.submit(patientUser.id!!, false, patientUser.id!!)
+
+                // Then
+                assertThat(running.status).isEqualTo(VisitReportJobStatus.RUNNING)
+                assertThat(queued.status).isEqualTo(VisitReportJobStatus.QUEUED)
+                assertThatThrownBy { reportJobs.submit(patientUser.id!!, false, 3L) }
+                    .isInstanceOf(TooManyRequestsException::class.java)
+
+                release.countDown()
+                assertThat(running.result.join().path).isEqualTo(queued.result.join().path)
+            } finally {
+                release.countDown()
+                reportJobs.shutdown()
+            }
+        }
+
+        @Test
+        fun `should hand out the same job until the patient's history changes`() {
+            // Given
+            whenever(visitRepository.existsByPatientId(patientUser.id!!)).thenReturn(true)
+            whenever(visitRepository.streamVisitResponsesByPatientId(patientUser.id!!))
+                .thenAnswer { Stream.of(visitResponse(1L, testAppointmentDate)) }
+            whenever(pdfGenerator.writePatientVisitReport(any(), any())).thenReturn(1)
+            val reportJobs = VisitReportJobs(visitService, reportCache, VisitReportJobProperties(), SimpleMeterRegistry())
+
+            try {
+                // When
+                val first = reportJobs.submit(patientUser.id!!, false, doctorUser.id!!)
+                first.result.join()
+                val repeated = reportJobs.submit(patientUser.id!!, false, doctorUser.id!!)
+                reportCache.invalidate(patientUser.id!!)
+                val afterChange = reportJobs.submit(patientUser.id!!, false, doctorUser.id!!)
+
+                // Then
+                assertThat(repeated.id).isEqualTo(first.id)
+                assertThat(afterChange.id).isNotEqualTo(first.id)
+                afterChange.result.join()
+            } finally {
+                reportJobs.shutdown()
+            }
+        }
+
+        @Test
+        fun `should list reports that failed to render as skipped in the export`() {
+            // Given
+            whenever(visitRepository.existsByPatientId(patientUser.id!!)).thenReturn(true)
+            whenever(visitRepository.streamVisitResponsesByPatientId(patientUser.id!!))
+                .thenAnswer { Stream.of(visitResponse(1L, testAppointmentDate)) }
+            whenever(pdfGenerator.writePatientVisitReport(any(), any())).thenThrow(RuntimeException("Font missing"))
+            val reportJobs = VisitReportJobs(visitService, reportCache, VisitReportJobProperties(), SimpleMeterRegistry())
+            val exporter = VisitReportExporter(reportJobs, VisitReportJobProperties(), visitRepository, archivedVisitRepository)
+            val output = ByteArrayOutputStream()
+
+            try {
+                // When
+                exporter.export(listOf(patientUser.id!!, 3L), false, output)
+            } finally {
+                reportJobs.shutdown()
+            }
+
+            // Then
+            val entries = LinkedHashMap<String, String>()
+            ZipInputStream(ByteArrayInputStream(output.toByteArray())).use { zip ->
+                generateSequence { zip.nextEntry }.forEach { entries[it.name] = String(zip.readBytes()) }
+            }
+            assertThat(entries.keys).containsExactly("skipped.txt")
+            assertThat(entries.getValue("skipped.txt").lines().filter { it.isNotEmpty() }).containsExactlyInAnyOrder(
+                "${patientUser.id}: rendering failed",
+                "3: Cannot generate report with no visits"
+            )
+        }
+
+        private fun visitResponse(id: Long, date: LocalDate) = VisitResponse(
+            id,
+            "Notes.",
+            date.atTime(9, 30),
+            id,
+            date,
+            testAppointmentTime,
+            doctorUser.id!!,
+            doctorUser.firstName,
+            doctorUser.lastName,
+            patientUser.id!!,
+            patientUser.firstName,
+            patientUser.lastName
+        )
+    }
+}
@@ -1,7 +1,7 @@
 import {useCallback, useEffect, useState} from 'react';
 import ErrorAlert from '../components/ErrorAlert';
 import LoadingSpinner from '../components/LoadingSpinner';
-import {createVisit, getAppointments, getPatientWithVisits, updateVisitNotes} from '../services/api';
+import {createVisit, getAppointments, getPatientWithVisits, getVisitNotes, updateVisitNotes} from '../services/api';
 
 const DoctorDashboard = () => {
     const [view, setView] = useState('appointments'); // 'appointments' or 'patient'
@@ -15,6 +15,7 @@ const DoctorDashboard = () => {
     const [success, setSuccess] = useState('');
     const [visitNotes, setVisitNotes] = useState('');
     const [editingVisit, setEditingVisit] = useState(null);
+    const [fullNotes, setFullNotes] = useState({});
 
     useEffect(() => {
         const today = new Date().toISOString().split('T')[0];
@@ -48,6 +49,7 @@ const DoctorDashboard = () => {
             const data = await getPatientWithVisits(appointment.patientId);
             setPatientData(data);
             setVisitNotes('');
+            setFullNotes({});
             setView('patient');
         } catch (err) {
             setError(err.message || 'Failed to load patient data.');
@@ -86,9 +88,35 @@ const DoctorDashboard = () => {
         }
     };
 
-    const handleEditVisit = (visit) => {
-        setEditingVisit(visit);
-        setVisitNotes(visit.notes || '');
+    // The visit list only carries a preview, so full notes are fetched when they are needed
+    const loadFullNotes = async (visit) => {
+        if (fullNotes[visit.id] !== undefined) return fullNotes[visit.id];
+        const {notes} = await getVisitNotes(visit.id);
+        setFullNotes((current) => ({...current, [visit.id]: notes || ''}));
+        return notes || '';
+    };
+
+    const isTruncated = (visit) =>
+        (visit.notesLength || 0) > (visit.notesPreview || '').length;
+
+    const handleShowFullNotes = async (visit) => {
+        setError('');
+        try {
+            await loadFullNotes(visit);
+        } catch (err) {
+            setError(err.message || 'Failed to load visit notes.');
+        }
+    };
+
+    const handleEditVisit = async (visit) => {
+        setError('');
+        try {
+            const notes = await loadFullNotes(visit);
+            setEditingVisit(visit);
+            setVisitNotes(notes);
+        } catch (err) {
+            setError(err.message || 'Failed to load visit notes.');
+        }
     };
 
     const handleSaveVisitNotes = async () => {
@@ -100,6 +128,10 @@ const DoctorDashboard = () => {
             setSuccess('Visit notes updated successfully!');
             setEditingVisit(null);
             setVisitNotes('');
+            setFullNotes((current) => {
+                const {[editingVisit.id]: _, ...rest} = current;
+                return rest;
+            });
             // Reload patient data
             const data = await getPatientWithVisits(selectedAppointment.patientId);
             setPatientData(data);
@@ -302,8 +334,20 @@ const DoctorDashboard = () => {
                                                                     onChange={(e) => setVisitNotes(e.target.value)}
                                                                 />
                                                             ) : (
-                                                                <div
-                                                                    style={{whiteSpace: 'pre-wrap'}}>{visit.notes || 'No notes'}</div>
+                                                                <div style={{whiteSpace: 'pre-wrap'}}>
+                                                                    {fullNotes[visit.id] !== undefined
+                                                                        ? fullNotes[visit.id] || 'No notes'
+                                                                        : visit.notesPreview
+                                                                            ? visit.notesPreview + (isTruncated(visit) ? '…' : '')
+                                                                            : 'No notes'}
+                                                                    {fullNotes[visit.id] === undefined && isTruncated(visit) && (
+                                                                        <button type="button"
+                                                                                className="btn btn-link btn-sm p-0 ms-2 align-baseline"
+                                                                                onClick={() => handleShowFullNotes(visit)}>
+                                                                            Show full notes
+                                                                        </button>
+                                                                    )}
+                                                                </div>
                                                             )}
                                                         </td>
                                                         <td className="text-end">
@@ -2,6 +2,8 @@ const API_BASE_URL = import.meta.env.VITE_API_BASE_URL || '';
 
 const buildUrl = (path) => `${API_BASE_URL}${path}`;
 
+const MAX_RETRIES = 2;
+
 async function apiFetch(path, options = {}) {
     const token = localStorage.getItem('token');
     const headers = {
@@ -13,10 +15,10 @@ async function apiFetch(path, options = {}) {
         headers.Authorization = `Bearer ${token}`;
     }
 
-    const response = await fetch(buildUrl(path), {
+    const response = await fetchWithRetry(buildUrl(path), {
         ...options,
         headers,
-    });
+    }, options.idempotent ? MAX_RETRIES : 0);
 
     const payload = await parsePayload(response);
 
@@ -28,6 +30,27 @@ async function apiFetch(path, options = {}) {
     return payload;
 }
 
+// Only network failures are retried; the Idempotency-Key makes a repeated POST safe to replay
+async function fetchWithRetry(url, init, retries) {
+    for (let attempt = 0; ; attempt++) {
+        try {
+            return await fetch(url, init);
+        } catch (error) {
+            if (attempt >= retries) {
+                throw error;
+            }
+        }
+    }
+}
+
+const idempotentPost = (path, data) =>
+    apiFetch(path, {
+        method: 'POST',
+        body: JSON.stringify(data),
+        headers: {'Idempotency-Key': crypto.randomUUID()},
+        idempotent: true,
+    });
+
 async function parsePayload(response) {
     const text = await response.text();
     if (!text) {
@@ -54,10 +77,7 @@ export const getAvailableAppointments = (date) =>
     apiFetch(`/api/appointments/available?date=${date}`);
 
 export const bookAppointment = (appointmentData) =>
-    apiFetch('/api/appointments', {
-        method: 'POST',
-        body: JSON.stringify(appointmentData),
-    });
+    idempotentPost('/api/appointments', appointmentData);
 
 export const getAppointments = (date) =>
     apiFetch(`/api/appointments/existing?date=${date}`);
@@ -77,10 +97,7 @@ export const cancelAppointment = (id) =>
 
 // Visits API (Doctor)
 export const createVisit = (visitData) =>
-    apiFetch('/api/visits', {
-        method: 'POST',
-        body: JSON.stringify(visitData),
-    });
+    idempotentPost('/api/visits', visitData);
 
 export const updateVisitNotes = (visitId, notes) =>
     apiFetch(`/api/visits/${visitId}`, {
@@ -95,7 +112,10 @@ export const getUserById = (userId) =>
     apiFetch(`/api/users/${userId}`);
 
 export const getPatientVisits = (patientId) =>
-    apiFetch(`/api/visits/patient/${patientId}`);
+    apiFetch(`/api/visits/patient/${patientId}/summaries`);
+
+export const getVisitNotes = (visitId) =>
+    apiFetch(`/api/visits/${visitId}/notes`);
 
 export const getPatientWithVisits = async (patientId) => {
     const [patient, visits] = await Promise.all([
@@ -130,6 +150,7 @@ export default {
     getUsers,
     getUserById,
     getPatientVisits,
+    getVisitNotes,
     getPatientWithVisits,
     createUser,
     updateUser,